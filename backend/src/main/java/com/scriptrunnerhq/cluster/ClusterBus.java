@@ -0,0 +1,25 @@
+package com.scriptrunnerhq.cluster;
+
+/**
+ * Short text messages between the nodes of a Data Center cluster.
+ * A message is delivered to the receivers registered for its channel on every other node, never on the sender.
+ * Delivery is asynchronous and may take seconds, so receivers must cope with late, repeated and lost messages.
+ */
+public interface ClusterBus {
+
+    int MAX_CHANNEL_LENGTH = 20;
+    int MAX_MESSAGE_LENGTH = 200;
+
+    void register(String channel, Receiver receiver);
+
+    void unregister(String channel, Receiver receiver);
+
+    /**
+     * Sends the message to the other nodes. Throws IllegalArgumentException when the channel or message is too long.
+     */
+    void send(String channel, String message);
+
+    interface Receiver {
+        void receive(String channel, String message, String senderNodeId);
+    }
+}
@@ -0,0 +1,315 @@
+package com.scriptrunnerhq.cluster;
+
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RecentRequestsCache;
+import com.scriptrunnerhq.service.RecentRequestsView;
+import com.scriptrunnerhq.service.RequestChangeBroadcaster;
+import com.scriptrunnerhq.service.RequestChangeLog;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the per-node portal caches of a Data Center cluster in line with changes made on other nodes.
+ * <p>
+ * A settings save is announced with its scope, settings epoch and version, and the other nodes drop the snapshots
+ * it outdates (see {@link PortalSettingsStore#onRemoteSave}). Every {@value #EPOCH_CHECK_PROPERTY} seconds each node
+ * also compares its epoch with the stored one, which bounds staleness when a message is lost.
+ * <p>
+ * Issue events are only raised on the node that made the change, so they are forwarded in batches collected over
+ * {@value #FLUSH_PROPERTY} milliseconds. Receiving nodes mark the cached pages of the issues and all cached summaries
+ * stale at once, and again after {@value #INDEX_LAG_PROPERTY} milliseconds, when index replication has caught up
+ * with the change. At that point the issues are also re-checked in their views, numbered in their change logs and
+ * pushed to the event streams open on the node.
+ */
+@Named
+public class ClusterInvalidator implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterInvalidator.class);
+
+    public static final String FLUSH_PROPERTY = "wmpr.cluster.flushMillis";
+    public static final String INDEX_LAG_PROPERTY = "wmpr.cluster.indexLagMillis";
+    public static final String EPOCH_CHECK_PROPERTY = "wmpr.cluster.epochCheckSeconds";
+    private static final long DEFAULT_FLUSH_MILLIS = 500;
+    private static final long DEFAULT_INDEX_LAG_MILLIS = 5000;
+    private static final int DEFAULT_EPOCH_CHECK_SECONDS = 30;
+    // Beyond this many issues per batch the other nodes drop everything instead
+    private static final int MAX_BATCHED_ISSUES = 100;
+
+    static final String CHANNEL = "wmpr-invalidate";
+    private static final char SETTINGS = 'S';
+    private static final char UPDATED = 'I';
+    private static final char CREATED = 'C';
+    private static final char ALL = 'A';
+
+    private final ClusterBus clusterBus;
+    private final PortalSettingsStore settingsStore;
+    private final RecentRequestsCache recentRequestsCache;
+    private final RecentRequestsView recentRequestsView;
+    private final RequestSummaryCache requestSummaryCache;
+    private final RequestChangeLog changeLog;
+    private final RequestChangeBroadcaster requestChangeBroadcaster;
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final long flushMillis;
+    private final long indexLagMillis;
+    private final long epochCheckMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ClusterBus.Receiver receiver;
+
+    private final Map<Long, String> pendingIssues = new LinkedHashMap<>();
+    private boolean pendingCreated;
+    private boolean flushScheduled;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+
+    @Inject
+    public ClusterInvalidator(ClusterBus clusterBus, PortalSettingsStore settingsStore,
+                              RecentRequestsCache recentRequestsCache, RecentRequestsView recentRequestsView,
+                              RequestSummaryCache requestSummaryCache, RequestChangeLog changeLog,
+                              RequestChangeBroadcaster requestChangeBroadcaster, JiraThreadLocalUtil jiraThreadLocalUtil) {
+        this.clusterBus = clusterBus;
+        this.settingsStore = settingsStore;
+        this.recentRequestsCache = recentRequestsCache;
+        this.recentRequestsView = recentRequestsView;
+        this.requestSummaryCache = requestSummaryCache;
+        this.changeLog = changeLog;
+        this.requestChangeBroadcaster = requestChangeBroadcaster;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.flushMillis = Math.max(0, Long.getLong(FLUSH_PROPERTY, DEFAULT_FLUSH_MILLIS));
+        this.indexLagMillis = Math.max(0, Long.getLong(INDEX_LAG_PROPERTY, DEFAULT_INDEX_LAG_MILLIS));
+        this.epochCheckMillis = Math.max(1, Integer.getInteger(EPOCH_CHECK_PROPERTY, DEFAULT_EPOCH_CHECK_SECONDS)) * 1000L;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-cluster-invalidator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.receiver = new ClusterBus.Receiver() {
+            @Override
+            public void receive(String channel, String message, String senderNodeId) {
+                handle(message, senderNodeId);
+            }
+        };
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        clusterBus.register(CHANNEL, receiver);
+        scheduler.scheduleWithFixedDelay(new Task() {
+            @Override
+            void runTask() {
+                settingsStore.refreshIfBehind();
+            }
+        }, epochCheckMillis, epochCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        clusterBus.unregister(CHANNEL, receiver);
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Tells the other nodes that the settings were saved on this node
+     */
+    public void settingsSaved(PortalSettings saved) {
+        String scope = saved.getProjectKey() != null ? saved.getProjectKey() : "global";
+        send(SETTINGS + " " + settingsStore.getEpoch() + " " + saved.getVersion() + " " + scope);
+    }
+
+    /**
+     * Queues an issue change raised on this node for the next batch to the other nodes
+     */
+    public void issueChanged(long issueId, String issueKey, boolean created) {
+        synchronized (pendingIssues) {
+            pendingIssues.put(issueId, issueKey);
+            pendingCreated |= created;
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            scheduler.schedule(new Task() {
+                @Override
+                void runTask() {
+                    flush();
+                }
+            }, flushMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    private void flush() {
+        Map<Long, String> issues;
+        boolean created;
+        synchronized (pendingIssues) {
+            issues = new LinkedHashMap<>(pendingIssues);
+            created = pendingCreated;
+            pendingIssues.clear();
+            pendingCreated = false;
+            flushScheduled = false;
+        }
+        if (issues.isEmpty()) {
+            return;
+        }
+        if (issues.size() > MAX_BATCHED_ISSUES) {
+            send(String.valueOf(ALL));
+            return;
+        }
+
+        char type = created ? CREATED : UPDATED;
+        StringBuilder message = new StringBuilder().append(type);
+        for (Map.Entry<Long, String> issue : issues.entrySet()) {
+            String item = " " + issue.getKey() + ":" + issue.getValue();
+            if (message.length() + item.length() > ClusterBus.MAX_MESSAGE_LENGTH) {
+                send(message.toString());
+                message = new StringBuilder().append(type);
+            }
+            message.append(item);
+        }
+        send(message.toString());
+    }
+
+    private void send(String message) {
+        try {
+            clusterBus.send(CHANNEL, message);
+            sent.incrementAndGet();
+        } catch (RuntimeException e) {
+            // Other nodes catch up through the epoch check, the cache TTL and the view rebuilds
+            log.warn("Failed to notify other nodes: {}", e.getMessage());
+        }
+    }
+
+    private void handle(String message, String senderNodeId) {
+        received.incrementAndGet();
+        log.debug("Invalidation from node {}: {}", senderNodeId, message);
+        try {
+            switch (message.charAt(0)) {
+                case SETTINGS:
+                    String[] parts = message.split(" ");
+                    settingsStore.onRemoteSave(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                    break;
+                case ALL:
+                    recentRequestsCache.invalidateAll();
+                    requestSummaryCache.invalidateAll();
+                    later(new Task() {
+                        @Override
+                        void runTask() {
+                            recentRequestsCache.invalidateAll();
+                            requestSummaryCache.invalidateAll();
+                            recentRequestsView.invalidateAll();
+                            // The changed issues are unknown, so delta clients reload in full
+                            changeLog.truncate();
+                        }
+                    });
+                    break;
+                case UPDATED:
+                case CREATED:
+                    applyIssues(message.charAt(0) == CREATED, parseIssues(message));
+                    break;
+                default:
+                    log.debug("Ignoring unknown invalidation: {}", message);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed invalidation {}: {}", message, e.getMessage());
+        }
+    }
+
+    private void applyIssues(final boolean created, final Map<Long, String> issues) {
+        invalidatePages(created, issues);
+        // The search index of this node may not hold the change yet, so look again once it should
+        later(new Task() {
+            @Override
+            void runTask() {
+                invalidatePages(created, issues);
+                for (Map.Entry<Long, String> issue : issues.entrySet()) {
+                    recentRequestsView.onIssueChanged(issue.getKey(), issue.getValue());
+                    // Deletions arrive as updates; the delta search finds they no longer match
+                    changeLog.record(issue.getValue(), created ? RequestChangeLog.ChangeType.CREATED
+                            : RequestChangeLog.ChangeType.UPDATED);
+                    // A batch holding a created issue is marked created as a whole; streams replace known rows
+                    requestChangeBroadcaster.onIssueChanged(issue.getKey(), created);
+                }
+            }
+        });
+    }
+
+    private void invalidatePages(boolean created, Map<Long, String> issues) {
+        // Any change may move a request between statuses
+        requestSummaryCache.invalidateAll();
+        // A created issue may enter any cached result
+        if (created) {
+            recentRequestsCache.invalidateAll();
+            return;
+        }
+        for (String issueKey : issues.values()) {
+            recentRequestsCache.invalidateIssue(issueKey);
+        }
+    }
+
+    private static Map<Long, String> parseIssues(String message) {
+        Map<Long, String> issues = new LinkedHashMap<>();
+        for (String item : message.substring(1).trim().split(" ")) {
+            int colon = item.indexOf(':');
+            issues.put(Long.parseLong(item.substring(0, colon)), item.substring(colon + 1));
+        }
+        return issues;
+    }
+
+    private void later(Task task) {
+        try {
+            scheduler.schedule(task, indexLagMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Background work with Jira's thread-local state set up and released around it
+     */
+    private abstract class Task implements Runnable {
+        @Override
+        public final void run() {
+            jiraThreadLocalUtil.preCall();
+            try {
+                runTask();
+            } catch (RuntimeException e) {
+                log.warn("Cluster invalidation failed: {}", e.getMessage());
+            } finally {
+                jiraThreadLocalUtil.postCall(log);
+            }
+        }
+
+        abstract void runTask();
+    }
+}
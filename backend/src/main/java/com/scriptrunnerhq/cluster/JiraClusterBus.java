@@ -0,0 +1,65 @@
+package com.scriptrunnerhq.cluster;
+
+import com.atlassian.jira.cluster.ClusterMessageConsumer;
+import com.atlassian.jira.cluster.ClusterMessagingService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link ClusterBus} on Jira's cluster messaging. On a server without clustering nothing is sent.
+ */
+@Named
+public class JiraClusterBus implements ClusterBus {
+
+    @JiraImport
+    private final ClusterMessagingService clusterMessagingService;
+
+    // Consumers stay reachable here for as long as they are registered
+    private final ConcurrentMap<List<Object>, ClusterMessageConsumer> consumers = new ConcurrentHashMap<>();
+
+    @Inject
+    public JiraClusterBus(ClusterMessagingService clusterMessagingService) {
+        this.clusterMessagingService = clusterMessagingService;
+    }
+
+    @Override
+    public void register(String channel, final Receiver receiver) {
+        checkLength("channel", channel, MAX_CHANNEL_LENGTH);
+        ClusterMessageConsumer consumer = new ClusterMessageConsumer() {
+            @Override
+            public void receive(String channel, String message, String senderId) {
+                receiver.receive(channel, message, senderId);
+            }
+        };
+        if (consumers.putIfAbsent(Arrays.<Object>asList(channel, receiver), consumer) == null) {
+            clusterMessagingService.registerListener(channel, consumer);
+        }
+    }
+
+    @Override
+    public void unregister(String channel, Receiver receiver) {
+        ClusterMessageConsumer consumer = consumers.remove(Arrays.<Object>asList(channel, receiver));
+        if (consumer != null) {
+            clusterMessagingService.unregisterListener(channel, consumer);
+        }
+    }
+
+    @Override
+    public void send(String channel, String message) {
+        checkLength("channel", channel, MAX_CHANNEL_LENGTH);
+        checkLength("message", message, MAX_MESSAGE_LENGTH);
+        clusterMessagingService.sendRemote(channel, message);
+    }
+
+    private static void checkLength(String name, String value, int max) {
+        if (value.length() > max) {
+            throw new IllegalArgumentException("Cluster " + name + " longer than " + max + " characters: " + value);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.applinks.api.ApplicationLinkService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.google.gson.annotations.SerializedName;
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * {@link PageSource} reading pages through the CQL search of the primary Confluence application link.
+ * Requests run without impersonation, so only pages the link's configured user may see are indexed.
+ */
+@Named
+public class ApplinkPageSource implements PageSource {
+
+    private static final String SEARCH_PATH = "/rest/api/search?cql=";
+    private static final String CONTENT_SEARCH_PATH = "/rest/api/content/search?cql=";
+    // CQL compares dates to the minute in the time zone of Confluence, which this side does not know
+    private static final long SINCE_OVERLAP_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final Pattern HIGHLIGHT = Pattern.compile("@@@(end)?hl@@@");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    @JiraImport
+    private final ApplicationLinkService applicationLinkService;
+
+    private final ConfluenceLink confluenceLink;
+
+    @Inject
+    public ApplinkPageSource(ApplicationLinkService applicationLinkService) {
+        this.applicationLinkService = applicationLinkService;
+        this.confluenceLink = new ConfluenceLink(applicationLinkService);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return confluenceLink.isAvailable();
+    }
+
+    @Override
+    public Batch<KnowledgeBasePage> fetchModified(String spaceKey, long since, int start, int limit)
+            throws IOException {
+        String cql = spaceCql(spaceKey);
+        if (since > 0) {
+            SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd HH:mm", Locale.ROOT);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+            cql += " and lastmodified >= \"" + format.format(new Date(since - SINCE_OVERLAP_MILLIS)) + "\"";
+        }
+        ConfluenceLink.Response<SearchList> response = confluenceLink.get(
+                SEARCH_PATH + encode(cql + " order by lastmodified asc") + "&start=" + start + "&limit=" + limit,
+                SearchList.class, "search pages of space " + spaceKey);
+        SearchList list = response != null ? response.getBody() : null;
+        if (list == null || list.results == null) {
+            return new Batch<>(Collections.<KnowledgeBasePage>emptyList(), false);
+        }
+
+        String baseUrl = response.getBaseUrl();
+        List<KnowledgeBasePage> pages = new ArrayList<>(list.results.size());
+        for (SearchResult result : list.results) {
+            if (result.content == null || result.content.id == null) {
+                continue;
+            }
+            String title = result.content.title != null ? result.content.title : result.title;
+            String url = result.url != null ? baseUrl + result.url : null;
+            pages.add(new KnowledgeBasePage(result.content.id, spaceKey, clean(title), clean(result.excerpt), url,
+                    parseTime(result.lastModified)));
+        }
+        return new Batch<>(pages, list.links != null && list.links.next != null);
+    }
+
+    @Override
+    public Batch<String> fetchIds(String spaceKey, int start, int limit) throws IOException {
+        ConfluenceLink.Response<ContentList> response = confluenceLink.get(
+                CONTENT_SEARCH_PATH + encode(spaceCql(spaceKey)) + "&start=" + start + "&limit=" + limit,
+                ContentList.class, "list pages of space " + spaceKey);
+        ContentList list = response != null ? response.getBody() : null;
+        if (list == null || list.results == null) {
+            return new Batch<>(Collections.<String>emptyList(), false);
+        }
+
+        List<String> ids = new ArrayList<>(list.results.size());
+        for (Content content : list.results) {
+            if (content.id != null) {
+                ids.add(content.id);
+            }
+        }
+        return new Batch<>(ids, list.links != null && list.links.next != null);
+    }
+
+    private static String spaceCql(String spaceKey) {
+        return "space = \"" + spaceKey.replace("\"", "") + "\" and type = page";
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Drops the search highlight markers and collapses the whitespace of Confluence's excerpts
+     */
+    private static String clean(String text) {
+        if (text == null) {
+            return null;
+        }
+        return WHITESPACE.matcher(HIGHLIGHT.matcher(text).replaceAll("")).replaceAll(" ").trim();
+    }
+
+    private static long parseTime(String time) {
+        if (time == null) {
+            return 0;
+        }
+        try {
+            return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The parts of Confluence's search results that are read
+     */
+    private static final class SearchList {
+        List<SearchResult> results;
+        @SerializedName("_links")
+        Links links;
+    }
+
+    private static final class SearchResult {
+        Content content;
+        String title;
+        String excerpt;
+        String url;
+        String lastModified;
+    }
+
+    private static final class ContentList {
+        List<Content> results;
+        @SerializedName("_links")
+        Links links;
+    }
+
+    private static final class Content {
+        String id;
+        String title;
+    }
+
+    private static final class Links {
+        String next;
+    }
+}
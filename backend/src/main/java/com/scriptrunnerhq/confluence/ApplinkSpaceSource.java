@@ -0,0 +1,82 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.applinks.api.ApplicationLinkService;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.google.gson.annotations.SerializedName;
+import com.scriptrunnerhq.model.ConfluenceSpace;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link SpaceSource} reading the global spaces of the primary Confluence application link through its REST API.
+ * Requests run without impersonation, so the listing is what the link's configured user may see.
+ */
+@Named
+public class ApplinkSpaceSource implements SpaceSource {
+
+    private static final String SPACES_PATH = "/rest/api/space?type=global&status=current";
+
+    @JiraImport
+    private final ApplicationLinkService applicationLinkService;
+
+    private final ConfluenceLink confluenceLink;
+
+    @Inject
+    public ApplinkSpaceSource(ApplicationLinkService applicationLinkService) {
+        this.applicationLinkService = applicationLinkService;
+        this.confluenceLink = new ConfluenceLink(applicationLinkService);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return confluenceLink.isAvailable();
+    }
+
+    @Override
+    public Page fetch(int start, int limit) throws IOException {
+        ConfluenceLink.Response<SpaceList> response = confluenceLink.get(
+                SPACES_PATH + "&start=" + start + "&limit=" + limit, SpaceList.class, "list spaces");
+        SpaceList list = response != null ? response.getBody() : null;
+        if (list == null || list.results == null) {
+            return new Page(Collections.<ConfluenceSpace>emptyList(), false);
+        }
+
+        String baseUrl = response.getBaseUrl();
+        List<ConfluenceSpace> spaces = new ArrayList<>(list.results.size());
+        for (SpaceResult result : list.results) {
+            if (result.key == null) {
+                continue;
+            }
+            String webui = result.links != null ? result.links.webui : null;
+            spaces.add(new ConfluenceSpace(result.key, result.name, webui != null ? baseUrl + webui : null));
+        }
+        boolean more = list.links != null && list.links.next != null;
+        return new Page(spaces, more);
+    }
+
+    /**
+     * The parts of Confluence's space listing that are read
+     */
+    private static final class SpaceList {
+        List<SpaceResult> results;
+        @SerializedName("_links")
+        Links links;
+    }
+
+    private static final class SpaceResult {
+        String key;
+        String name;
+        @SerializedName("_links")
+        Links links;
+    }
+
+    private static final class Links {
+        String webui;
+        String next;
+    }
+}
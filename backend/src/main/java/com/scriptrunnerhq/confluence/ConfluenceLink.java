@@ -0,0 +1,88 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.applinks.api.ApplicationLink;
+import com.atlassian.applinks.api.ApplicationLinkRequest;
+import com.atlassian.applinks.api.ApplicationLinkRequestFactory;
+import com.atlassian.applinks.api.ApplicationLinkService;
+import com.atlassian.applinks.api.CredentialsRequiredException;
+import com.atlassian.applinks.api.application.confluence.ConfluenceApplicationType;
+import com.atlassian.sal.api.net.Request;
+import com.atlassian.sal.api.net.ResponseException;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+
+/**
+ * JSON GETs against the REST API of the primary Confluence application link, shared by the applink sources.
+ * Requests run without impersonation where the link allows it, so results are what the link's configured user sees.
+ */
+final class ConfluenceLink {
+
+    private final ApplicationLinkService applicationLinkService;
+    private final Gson gson = new Gson();
+
+    ConfluenceLink(ApplicationLinkService applicationLinkService) {
+        this.applicationLinkService = applicationLinkService;
+    }
+
+    boolean isAvailable() {
+        return applicationLinkService.getPrimaryApplicationLink(ConfluenceApplicationType.class) != null;
+    }
+
+    /**
+     * Reads the path, relative to the Confluence base URL, as the given type. Returns null when no link is configured.
+     * The {@code what} names the request in error messages.
+     */
+    <T> Response<T> get(String path, Class<T> type, String what) throws IOException {
+        ApplicationLink link = applicationLinkService.getPrimaryApplicationLink(ConfluenceApplicationType.class);
+        if (link == null) {
+            return null;
+        }
+        ApplicationLinkRequestFactory requestFactory = link.createNonImpersonatingAuthenticatedRequestFactory();
+        if (requestFactory == null) {
+            requestFactory = link.createAuthenticatedRequestFactory();
+        }
+
+        String body;
+        try {
+            ApplicationLinkRequest request = requestFactory.createRequest(Request.MethodType.GET, path);
+            request.setHeader("Accept", "application/json");
+            body = request.execute();
+        } catch (CredentialsRequiredException e) {
+            throw new IOException("Confluence link " + link.getName() + " needs credentials to " + what, e);
+        } catch (ResponseException e) {
+            throw new IOException("Failed to " + what + ": " + e.getMessage(), e);
+        }
+
+        try {
+            return new Response<>(gson.fromJson(body, type), link.getDisplayUrl().toString());
+        } catch (JsonParseException e) {
+            throw new IOException("Unexpected Confluence response to " + what + ": " + e.getMessage(), e);
+        }
+    }
+
+    static final class Response<T> {
+        private final T body;
+        private final String baseUrl;
+
+        Response(T body, String baseUrl) {
+            this.body = body;
+            this.baseUrl = baseUrl;
+        }
+
+        /**
+         * The parsed body, null for an empty response
+         */
+        T getBody() {
+            return body;
+        }
+
+        /**
+         * Base URL under which Confluence's relative web links resolve
+         */
+        String getBaseUrl() {
+            return baseUrl;
+        }
+    }
+}
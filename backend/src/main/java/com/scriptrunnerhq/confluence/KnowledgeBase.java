@@ -0,0 +1,445 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.jira.config.util.JiraHome;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Knowledge base search over the pages of the Confluence spaces configured for the portals, answered from an
+ * in-memory {@link KnowledgeBaseIndex}.
+ * <p>
+ * The spaces of the default scope are indexed from startup, and any other space from the first search that asks for
+ * it; a space no search asked for in {@value #UNUSED_SPACE_DAYS} days is dropped. A background thread fetches the
+ * pages modified since the previous pass every {@value #REFRESH_MINUTES_PROPERTY} minutes (default
+ * {@value #DEFAULT_REFRESH_MINUTES}), and lists every space in full every {@value #RECONCILE_HOURS_PROPERTY} hours
+ * (default {@value #DEFAULT_RECONCILE_HOURS}) to drop deleted pages.
+ * <p>
+ * The pages are saved to the local home directory after each pass that changed them and read back at startup, so a
+ * restart resumes from the last pass instead of fetching every page again. Pages are analysed again when loaded, so a
+ * change to the analysis needs no migration.
+ */
+@Named
+public class KnowledgeBase implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeBase.class);
+
+    public static final String REFRESH_MINUTES_PROPERTY = "wmpr.kb.refreshMinutes";
+    public static final String RECONCILE_HOURS_PROPERTY = "wmpr.kb.reconcileHours";
+    private static final int DEFAULT_REFRESH_MINUTES = 15;
+    private static final int DEFAULT_RECONCILE_HOURS = 24;
+    private static final int UNUSED_SPACE_DAYS = 7;
+    private static final int PAGE_SIZE = 50;
+    private static final int ID_PAGE_SIZE = 200;
+    private static final long RETRY_MILLIS = 60_000;
+
+    static final String DIRECTORY = "caches/wmpr-kb";
+    static final String FILE_NAME = "pages.json.gz";
+    private static final int FORMAT = 1;
+
+    private final PageSource pageSource;
+    private final PortalSettingsStore settingsStore;
+
+    @JiraImport
+    private final JiraHome jiraHome;
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final long refreshMillis;
+    private final long reconcileMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson = new Gson();
+
+    // Space key to the last time a search asked for it
+    private final ConcurrentMap<String, Long> requested = new ConcurrentHashMap<>();
+    // Owned by the scheduler thread
+    private final Map<String, SpaceState> spaceStates = new HashMap<>();
+    private final Map<String, KnowledgeBaseIndex.Document> documents = new HashMap<>();
+    private boolean loaded;
+
+    private volatile KnowledgeBaseIndex index = KnowledgeBaseIndex.EMPTY;
+    private volatile long nextPassAt;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong pagesFetched = new AtomicLong();
+
+    @Inject
+    public KnowledgeBase(PageSource pageSource, PortalSettingsStore settingsStore, JiraHome jiraHome,
+                         JiraThreadLocalUtil jiraThreadLocalUtil) {
+        this.pageSource = pageSource;
+        this.settingsStore = settingsStore;
+        this.jiraHome = jiraHome;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.refreshMillis = Math.max(1, Integer.getInteger(REFRESH_MINUTES_PROPERTY, DEFAULT_REFRESH_MINUTES)) * 60_000L;
+        this.reconcileMillis = Math.max(1, Integer.getInteger(RECONCILE_HOURS_PROPERTY, DEFAULT_RECONCILE_HOURS))
+                * 3_600_000L;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-knowledge-base");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // Checked every retry interval; a pass only runs once it is due
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (System.currentTimeMillis() >= nextPassAt) {
+                    runPass();
+                }
+            }
+        }, 0, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Up to {@code limit} pages of the spaces matching the query, best first. Spaces not indexed yet are queued for
+     * the next pass and contribute nothing to this search.
+     */
+    public List<KnowledgeBaseIndex.Hit> search(String query, Collection<String> spaceKeys, int limit) {
+        track(spaceKeys);
+        return index.search(query, spaceKeys, limit);
+    }
+
+    public KnowledgeBaseIndex getIndex() {
+        return index;
+    }
+
+    public int getSpaceCount() {
+        return requested.size();
+    }
+
+    public long getPasses() {
+        return passes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getPagesFetched() {
+        return pagesFetched.get();
+    }
+
+    private void track(Collection<String> spaceKeys) {
+        long now = System.currentTimeMillis();
+        boolean added = false;
+        for (String spaceKey : spaceKeys) {
+            if (requested.put(spaceKey, now) == null) {
+                added = true;
+            }
+        }
+        if (added) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runPass();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+            }
+        }
+    }
+
+    private void runPass() {
+        jiraThreadLocalUtil.preCall();
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            nextPassAt = System.currentTimeMillis() + RETRY_MILLIS;
+            log.warn("Knowledge base refresh failed: {}", e.getMessage());
+        } finally {
+            jiraThreadLocalUtil.postCall(log);
+        }
+    }
+
+    /**
+     * One pass over the tracked spaces. Runs on the knowledge base thread; visible for the benchmarks.
+     */
+    void refresh() {
+        if (!loaded) {
+            loaded = true;
+            load();
+            long now = System.currentTimeMillis();
+            for (String spaceKey : settingsStore.get().getConfluenceSpaces()) {
+                requested.putIfAbsent(spaceKey, now);
+            }
+        }
+        if (!pageSource.isAvailable()) {
+            nextPassAt = System.currentTimeMillis() + refreshMillis;
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        boolean changed = false;
+        boolean dropped = false;
+        boolean failed = false;
+        for (String spaceKey : new ArrayList<>(requested.keySet())) {
+            Long requestedAt = requested.get(spaceKey);
+            if (requestedAt != null && requestedAt < start - UNUSED_SPACE_DAYS * 86_400_000L
+                    && requested.remove(spaceKey, requestedAt)) {
+                spaceStates.remove(spaceKey);
+                dropped |= removePages(spaceKey, null);
+                continue;
+            }
+
+            SpaceState state = spaceStates.get(spaceKey);
+            if (state == null) {
+                state = new SpaceState();
+                spaceStates.put(spaceKey, state);
+            }
+            boolean spaceChanged;
+            try {
+                spaceChanged = fetchModified(spaceKey, state);
+                if (start - state.reconciledAt >= reconcileMillis) {
+                    spaceChanged |= reconcile(spaceKey, state, start);
+                }
+            } catch (IOException e) {
+                failures.incrementAndGet();
+                failed = true;
+                log.warn("Failed to fetch pages of Confluence space {}: {}", spaceKey, e.getMessage());
+                continue;
+            }
+            // Publish space by space, so the first spaces are searchable while later ones are fetched
+            if (spaceChanged) {
+                index = KnowledgeBaseIndex.build(documents.values());
+                changed = true;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+
+        if (dropped) {
+            index = KnowledgeBaseIndex.build(documents.values());
+        }
+        if (changed || dropped) {
+            save();
+        }
+        passes.incrementAndGet();
+        nextPassAt = System.currentTimeMillis() + (failed ? RETRY_MILLIS : refreshMillis);
+        log.debug("Knowledge base pass over {} spaces in {}ms, {} pages, index {}", requested.size(),
+                System.currentTimeMillis() - start, documents.size(), changed || dropped ? "rebuilt" : "unchanged");
+    }
+
+    /**
+     * Applies the pages modified since the space's previous pass and advances its high-water mark
+     */
+    private boolean fetchModified(String spaceKey, SpaceState state) throws IOException {
+        boolean changed = false;
+        long highWater = state.highWater;
+        int offset = 0;
+        while (true) {
+            PageSource.Batch<KnowledgeBasePage> batch = pageSource.fetchModified(spaceKey, state.highWater, offset,
+                    PAGE_SIZE);
+            for (KnowledgeBasePage page : batch.getItems()) {
+                KnowledgeBaseIndex.Document current = documents.get(page.getId());
+                if (current == null || !current.getPage().equals(page)) {
+                    documents.put(page.getId(), new KnowledgeBaseIndex.Document(page));
+                    changed = true;
+                }
+                highWater = Math.max(highWater, page.getLastModified());
+            }
+            pagesFetched.addAndGet(batch.getItems().size());
+            if (!batch.hasMore() || batch.getItems().isEmpty()) {
+                break;
+            }
+            offset += batch.getItems().size();
+        }
+        state.highWater = highWater;
+        return changed;
+    }
+
+    /**
+     * Drops the pages of the space that a full listing no longer contains
+     */
+    private boolean reconcile(String spaceKey, SpaceState state, long now) throws IOException {
+        Set<String> listed = new HashSet<>();
+        int offset = 0;
+        while (true) {
+            PageSource.Batch<String> batch = pageSource.fetchIds(spaceKey, offset, ID_PAGE_SIZE);
+            listed.addAll(batch.getItems());
+            if (!batch.hasMore() || batch.getItems().isEmpty()) {
+                break;
+            }
+            offset += batch.getItems().size();
+        }
+        state.reconciledAt = now;
+        return removePages(spaceKey, listed);
+    }
+
+    /**
+     * Removes the pages of the space, except those kept
+     */
+    private boolean removePages(String spaceKey, Set<String> kept) {
+        boolean removed = false;
+        Iterator<KnowledgeBaseIndex.Document> it = documents.values().iterator();
+        while (it.hasNext()) {
+            KnowledgeBasePage page = it.next().getPage();
+            if (page.getSpaceKey().equals(spaceKey) && (kept == null || !kept.contains(page.getId()))) {
+                it.remove();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    private File file() {
+        return new File(new File(jiraHome.getLocalHome(), DIRECTORY), FILE_NAME);
+    }
+
+    /**
+     * Reads the pages of the previous run; a missing or unreadable file starts from nothing
+     */
+    private void load() {
+        File file = file();
+        if (!file.isFile()) {
+            return;
+        }
+        StoredIndex stored;
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)),
+                StandardCharsets.UTF_8)) {
+            stored = gson.fromJson(reader, StoredIndex.class);
+        } catch (IOException | JsonParseException e) {
+            log.warn("Ignoring unreadable knowledge base file {}: {}", file, e.getMessage());
+            return;
+        }
+        if (stored == null || stored.format != FORMAT || stored.spaces == null || stored.pages == null) {
+            return;
+        }
+
+        for (Map.Entry<String, StoredSpace> space : stored.spaces.entrySet()) {
+            SpaceState state = new SpaceState();
+            state.highWater = space.getValue().highWater;
+            state.reconciledAt = space.getValue().reconciledAt;
+            spaceStates.put(space.getKey(), state);
+            requested.putIfAbsent(space.getKey(), space.getValue().requestedAt);
+        }
+        for (StoredPage page : stored.pages) {
+            if (page.id != null && page.space != null) {
+                documents.put(page.id, new KnowledgeBaseIndex.Document(new KnowledgeBasePage(page.id, page.space,
+                        page.title, page.excerpt, page.url, page.modified)));
+            }
+        }
+        index = KnowledgeBaseIndex.build(documents.values());
+        log.info("Loaded {} knowledge base pages of {} spaces", documents.size(), spaceStates.size());
+    }
+
+    /**
+     * Writes the pages to a temporary file that replaces the previous one, so a crash never leaves a partial file
+     */
+    private void save() {
+        StoredIndex stored = new StoredIndex();
+        stored.format = FORMAT;
+        stored.spaces = new HashMap<>();
+        for (Map.Entry<String, SpaceState> space : spaceStates.entrySet()) {
+            StoredSpace storedSpace = new StoredSpace();
+            storedSpace.highWater = space.getValue().highWater;
+            storedSpace.reconciledAt = space.getValue().reconciledAt;
+            Long requestedAt = requested.get(space.getKey());
+            storedSpace.requestedAt = requestedAt != null ? requestedAt : System.currentTimeMillis();
+            stored.spaces.put(space.getKey(), storedSpace);
+        }
+        stored.pages = new ArrayList<>(documents.size());
+        for (KnowledgeBaseIndex.Document document : documents.values()) {
+            KnowledgeBasePage page = document.getPage();
+            StoredPage storedPage = new StoredPage();
+            storedPage.id = page.getId();
+            storedPage.space = page.getSpaceKey();
+            storedPage.title = page.getTitle();
+            storedPage.excerpt = page.getExcerpt();
+            storedPage.url = page.getUrl();
+            storedPage.modified = page.getLastModified();
+            stored.pages.add(storedPage);
+        }
+
+        File file = file();
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)),
+                    StandardCharsets.UTF_8)) {
+                gson.toJson(stored, writer);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // The index in memory is unaffected; the next restart fetches more pages
+            log.warn("Failed to save the knowledge base to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class SpaceState {
+        // Latest modification seen in the space, where the next pass continues
+        long highWater;
+        long reconciledAt;
+    }
+
+    /**
+     * Layout of the saved file
+     */
+    private static final class StoredIndex {
+        int format;
+        Map<String, StoredSpace> spaces;
+        List<StoredPage> pages;
+    }
+
+    private static final class StoredSpace {
+        long highWater;
+        long reconciledAt;
+        long requestedAt;
+    }
+
+    private static final class StoredPage {
+        String id;
+        String space;
+        String title;
+        String excerpt;
+        String url;
+        long modified;
+    }
+}
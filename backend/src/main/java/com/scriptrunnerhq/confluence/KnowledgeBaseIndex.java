@@ -0,0 +1,239 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+
+import java.util.*;
+
+/**
+ * Immutable inverted index over knowledge base pages, ranked with Okapi BM25.
+ * A title term counts {@value #TITLE_WEIGHT} times, so pages about a topic rank above pages that mention it. Postings
+ * hold precomputed term frequencies and every page its length normalisation, so a query is a walk over the postings
+ * of its terms and a heap of the best {@code limit} pages.
+ */
+public final class KnowledgeBaseIndex {
+
+    static final KnowledgeBaseIndex EMPTY = build(Collections.<Document>emptyList());
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int TITLE_WEIGHT = 2;
+
+    private final KnowledgeBasePage[] pages;
+    private final int[] spaceOf;
+    private final Map<String, Integer> spaceOrdinals;
+    private final Map<String, Postings> postings;
+    private final float[] lengthNorm;
+    private final long builtAt;
+
+    private KnowledgeBaseIndex(KnowledgeBasePage[] pages, int[] spaceOf, Map<String, Integer> spaceOrdinals,
+                               Map<String, Postings> postings, float[] lengthNorm) {
+        this.pages = pages;
+        this.spaceOf = spaceOf;
+        this.spaceOrdinals = spaceOrdinals;
+        this.postings = postings;
+        this.lengthNorm = lengthNorm;
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Indexes the documents
+     */
+    public static KnowledgeBaseIndex build(Collection<Document> documents) {
+        int count = documents.size();
+        KnowledgeBasePage[] pages = new KnowledgeBasePage[count];
+        int[] spaceOf = new int[count];
+        Map<String, Integer> spaceOrdinals = new HashMap<>();
+        int[] lengths = new int[count];
+        long totalLength = 0;
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+
+        int doc = 0;
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Document document : documents) {
+            pages[doc] = document.page;
+            Integer space = spaceOrdinals.get(document.page.getSpaceKey());
+            if (space == null) {
+                space = spaceOrdinals.size();
+                spaceOrdinals.put(document.page.getSpaceKey(), space);
+            }
+            spaceOf[doc] = space;
+
+            frequencies.clear();
+            count(frequencies, document.titleTerms, TITLE_WEIGHT);
+            count(frequencies, document.excerptTerms, 1);
+            int length = document.titleTerms.length * TITLE_WEIGHT + document.excerptTerms.length;
+            lengths[doc] = length;
+            totalLength += length;
+            for (Map.Entry<String, Integer> frequency : frequencies.entrySet()) {
+                PostingsBuilder builder = builders.get(frequency.getKey());
+                if (builder == null) {
+                    builder = new PostingsBuilder();
+                    builders.put(frequency.getKey(), builder);
+                }
+                builder.add(doc, frequency.getValue());
+            }
+            doc++;
+        }
+
+        float averageLength = count > 0 ? Math.max(1f, (float) totalLength / count) : 1f;
+        float[] lengthNorm = new float[count];
+        for (int i = 0; i < count; i++) {
+            lengthNorm[i] = K1 * (1 - B + B * lengths[i] / averageLength);
+        }
+        Map<String, Postings> postings = new HashMap<>(builders.size() * 2);
+        for (Map.Entry<String, PostingsBuilder> builder : builders.entrySet()) {
+            postings.put(builder.getKey(), builder.getValue().build(count));
+        }
+        return new KnowledgeBaseIndex(pages, spaceOf, spaceOrdinals, postings, lengthNorm);
+    }
+
+    /**
+     * Up to {@code limit} pages of the given spaces matching any term of the query, best first
+     */
+    public List<Hit> search(String query, Collection<String> spaceKeys, int limit) {
+        boolean[] allowed = new boolean[spaceOrdinals.size()];
+        boolean any = false;
+        for (String spaceKey : spaceKeys) {
+            Integer space = spaceOrdinals.get(spaceKey);
+            if (space != null) {
+                allowed[space] = true;
+                any = true;
+            }
+        }
+        if (!any || limit < 1) {
+            return Collections.emptyList();
+        }
+
+        final float[] scores = new float[pages.length];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+        for (String term : new LinkedHashSet<>(Arrays.asList(TextAnalyzer.analyze(query)))) {
+            Postings termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            for (int i = 0; i < termPostings.docs.length; i++) {
+                int doc = termPostings.docs[i];
+                if (!allowed[spaceOf[doc]]) {
+                    continue;
+                }
+                if (scores[doc] == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = doc;
+                }
+                float tf = termPostings.frequencies[i];
+                scores[doc] += termPostings.idf * tf * (K1 + 1) / (tf + lengthNorm[doc]);
+            }
+        }
+
+        // Worst of the best pages on top; ties go to the page indexed first
+        Comparator<Integer> worstFirst = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int byScore = Float.compare(scores[a], scores[b]);
+                return byScore != 0 ? byScore : Integer.compare(b, a);
+            }
+        };
+        PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, Math.max(1, touchedCount)), worstFirst);
+        for (int i = 0; i < touchedCount; i++) {
+            best.add(touched[i]);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Hit[] hits = new Hit[best.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            int doc = best.poll();
+            hits[i] = new Hit(pages[doc], scores[doc]);
+        }
+        return Arrays.asList(hits);
+    }
+
+    public int size() {
+        return pages.length;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    private static void count(Map<String, Integer> frequencies, String[] terms, int weight) {
+        for (String term : terms) {
+            Integer frequency = frequencies.get(term);
+            frequencies.put(term, frequency != null ? frequency + weight : weight);
+        }
+    }
+
+    /**
+     * A page with its analysed title and excerpt, kept between index builds so pages are analysed once
+     */
+    public static final class Document {
+        private final KnowledgeBasePage page;
+        private final String[] titleTerms;
+        private final String[] excerptTerms;
+
+        public Document(KnowledgeBasePage page) {
+            this.page = page;
+            this.titleTerms = TextAnalyzer.analyze(page.getTitle());
+            this.excerptTerms = TextAnalyzer.analyze(page.getExcerpt());
+        }
+
+        public KnowledgeBasePage getPage() {
+            return page;
+        }
+    }
+
+    public static final class Hit {
+        private final KnowledgeBasePage page;
+        private final float score;
+
+        Hit(KnowledgeBasePage page, float score) {
+            this.page = page;
+            this.score = score;
+        }
+
+        public KnowledgeBasePage getPage() {
+            return page;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    private static final class Postings {
+        private final int[] docs;
+        private final float[] frequencies;
+        private final float idf;
+
+        Postings(int[] docs, float[] frequencies, float idf) {
+            this.docs = docs;
+            this.frequencies = frequencies;
+            this.idf = idf;
+        }
+    }
+
+    private static final class PostingsBuilder {
+        private int[] docs = new int[4];
+        private float[] frequencies = new float[4];
+        private int count;
+
+        void add(int doc, int frequency) {
+            if (count == docs.length) {
+                docs = Arrays.copyOf(docs, count * 2);
+                frequencies = Arrays.copyOf(frequencies, count * 2);
+            }
+            docs[count] = doc;
+            frequencies[count] = frequency;
+            count++;
+        }
+
+        Postings build(int documentCount) {
+            // Lucene's form of the idf, which stays positive for terms found in most pages
+            float idf = (float) Math.log(1 + (documentCount - count + 0.5) / (count + 0.5));
+            return new Postings(Arrays.copyOf(docs, count), Arrays.copyOf(frequencies, count), idf);
+        }
+    }
+}
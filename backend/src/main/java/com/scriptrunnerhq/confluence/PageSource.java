@@ -0,0 +1,53 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Supplies the pages of Confluence spaces to the {@link KnowledgeBase}, one batch at a time.
+ */
+public interface PageSource {
+
+    /**
+     * False when no Confluence instance is configured; nothing is fetched then
+     */
+    boolean isAvailable();
+
+    /**
+     * Returns up to {@code limit} pages of the space modified at or after {@code since} (epoch milliseconds, 0 for
+     * all), from the offset, in an order that is stable between calls. A source may return pages modified somewhat
+     * earlier. Throws IOException when Confluence cannot be reached or refuses the request.
+     */
+    Batch<KnowledgeBasePage> fetchModified(String spaceKey, long since, int start, int limit) throws IOException;
+
+    /**
+     * Returns up to {@code limit} ids of the current pages of the space from the offset, so that deleted pages can be
+     * dropped. Throws IOException when Confluence cannot be reached or refuses the request.
+     */
+    Batch<String> fetchIds(String spaceKey, int start, int limit) throws IOException;
+
+    final class Batch<T> {
+        private final List<T> items;
+        private final boolean more;
+
+        public Batch(List<T> items, boolean more) {
+            this.items = Collections.unmodifiableList(new ArrayList<>(items));
+            this.more = more;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * True when items follow this batch
+         */
+        public boolean hasMore() {
+            return more;
+        }
+    }
+}
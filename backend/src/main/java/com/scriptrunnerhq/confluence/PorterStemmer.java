@@ -0,0 +1,410 @@
+package com.scriptrunnerhq.confluence;
+
+import java.util.Arrays;
+
+/**
+ * Martin Porter's stemming algorithm for lower-case English words, after his reference implementation.
+ * An instance reuses its buffer between words and must not be shared between threads.
+ */
+final class PorterStemmer {
+
+    private char[] b = new char[32];
+    // Offset of the last character of the word, and the end of the stem the current suffix test left
+    private int k;
+    private int j;
+
+    /**
+     * The stem of the word; words of up to two letters and words with other characters than a-z are kept as they are
+     */
+    String stem(String word) {
+        int length = word.length();
+        if (length <= 2) {
+            return word;
+        }
+        if (b.length < length + 1) {
+            b = Arrays.copyOf(b, length + 1);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = word.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return word;
+            }
+            b[i] = c;
+        }
+        k = length - 1;
+        step1ab();
+        if (k > 0) {
+            step1c();
+            step2();
+            step3();
+            step4();
+            step5();
+        }
+        return new String(b, 0, k + 1);
+    }
+
+    private boolean cons(int i) {
+        switch (b[i]) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+                return false;
+            case 'y':
+                return i == 0 || !cons(i - 1);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * The number of vowel-consonant sequences in the stem b[0..j]
+     */
+    private int m() {
+        int n = 0;
+        int i = 0;
+        while (true) {
+            if (i > j) {
+                return n;
+            }
+            if (!cons(i)) {
+                break;
+            }
+            i++;
+        }
+        i++;
+        while (true) {
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (cons(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+            n++;
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (!cons(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+        }
+    }
+
+    private boolean vowelInStem() {
+        for (int i = 0; i <= j; i++) {
+            if (!cons(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean doubleConsonant(int i) {
+        return i >= 1 && b[i] == b[i - 1] && cons(i);
+    }
+
+    /**
+     * True when b[i-2..i] is consonant-vowel-consonant and the last consonant is not w, x or y
+     */
+    private boolean cvc(int i) {
+        if (i < 2 || !cons(i) || cons(i - 1) || !cons(i - 2)) {
+            return false;
+        }
+        char c = b[i];
+        return c != 'w' && c != 'x' && c != 'y';
+    }
+
+    private boolean ends(String suffix) {
+        int length = suffix.length();
+        int offset = k - length + 1;
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (b[offset + i] != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        j = k - length;
+        return true;
+    }
+
+    private void setTo(String suffix) {
+        int length = suffix.length();
+        for (int i = 0; i < length; i++) {
+            b[j + 1 + i] = suffix.charAt(i);
+        }
+        k = j + length;
+    }
+
+    private void replace(String suffix) {
+        if (m() > 0) {
+            setTo(suffix);
+        }
+    }
+
+    /**
+     * Plurals and -ed or -ing
+     */
+    private void step1ab() {
+        if (b[k] == 's') {
+            if (ends("sses")) {
+                k -= 2;
+            } else if (ends("ies")) {
+                setTo("i");
+            } else if (b[k - 1] != 's') {
+                k--;
+            }
+        }
+        if (ends("eed")) {
+            if (m() > 0) {
+                k--;
+            }
+        } else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+            k = j;
+            if (ends("at")) {
+                setTo("ate");
+            } else if (ends("bl")) {
+                setTo("ble");
+            } else if (ends("iz")) {
+                setTo("ize");
+            } else if (doubleConsonant(k)) {
+                k--;
+                char c = b[k];
+                if (c == 'l' || c == 's' || c == 'z') {
+                    k++;
+                }
+            } else {
+                j = k;
+                if (m() == 1 && cvc(k)) {
+                    setTo("e");
+                }
+            }
+        }
+    }
+
+    /**
+     * Terminal y to i when there is another vowel in the stem
+     */
+    private void step1c() {
+        if (ends("y") && vowelInStem()) {
+            b[k] = 'i';
+        }
+    }
+
+    /**
+     * Double suffixes to single ones
+     */
+    private void step2() {
+        switch (b[k - 1]) {
+            case 'a':
+                if (ends("ational")) {
+                    replace("ate");
+                } else if (ends("tional")) {
+                    replace("tion");
+                }
+                break;
+            case 'c':
+                if (ends("enci")) {
+                    replace("ence");
+                } else if (ends("anci")) {
+                    replace("ance");
+                }
+                break;
+            case 'e':
+                if (ends("izer")) {
+                    replace("ize");
+                }
+                break;
+            case 'l':
+                if (ends("bli")) {
+                    replace("ble");
+                } else if (ends("alli")) {
+                    replace("al");
+                } else if (ends("entli")) {
+                    replace("ent");
+                } else if (ends("eli")) {
+                    replace("e");
+                } else if (ends("ousli")) {
+                    replace("ous");
+                }
+                break;
+            case 'o':
+                if (ends("ization")) {
+                    replace("ize");
+                } else if (ends("ation")) {
+                    replace("ate");
+                } else if (ends("ator")) {
+                    replace("ate");
+                }
+                break;
+            case 's':
+                if (ends("alism")) {
+                    replace("al");
+                } else if (ends("iveness")) {
+                    replace("ive");
+                } else if (ends("fulness")) {
+                    replace("ful");
+                } else if (ends("ousness")) {
+                    replace("ous");
+                }
+                break;
+            case 't':
+                if (ends("aliti")) {
+                    replace("al");
+                } else if (ends("iviti")) {
+                    replace("ive");
+                } else if (ends("biliti")) {
+                    replace("ble");
+                }
+                break;
+            case 'g':
+                if (ends("logi")) {
+                    replace("log");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * -ic-, -full, -ness and the like
+     */
+    private void step3() {
+        switch (b[k]) {
+            case 'e':
+                if (ends("icate")) {
+                    replace("ic");
+                } else if (ends("ative")) {
+                    replace("");
+                } else if (ends("alize")) {
+                    replace("al");
+                }
+                break;
+            case 'i':
+                if (ends("iciti")) {
+                    replace("ic");
+                }
+                break;
+            case 'l':
+                if (ends("ical")) {
+                    replace("ic");
+                } else if (ends("ful")) {
+                    replace("");
+                }
+                break;
+            case 's':
+                if (ends("ness")) {
+                    replace("");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * -ant, -ence and the like, in context m > 1
+     */
+    private void step4() {
+        if (k < 1) {
+            return;
+        }
+        switch (b[k - 1]) {
+            case 'a':
+                if (ends("al")) {
+                    break;
+                }
+                return;
+            case 'c':
+                if (ends("ance") || ends("ence")) {
+                    break;
+                }
+                return;
+            case 'e':
+                if (ends("er")) {
+                    break;
+                }
+                return;
+            case 'i':
+                if (ends("ic")) {
+                    break;
+                }
+                return;
+            case 'l':
+                if (ends("able") || ends("ible")) {
+                    break;
+                }
+                return;
+            case 'n':
+                if (ends("ant") || ends("ement") || ends("ment") || ends("ent")) {
+                    break;
+                }
+                return;
+            case 'o':
+                if (ends("ion") && j >= 0 && (b[j] == 's' || b[j] == 't')) {
+                    break;
+                }
+                if (ends("ou")) {
+                    break;
+                }
+                return;
+            case 's':
+                if (ends("ism")) {
+                    break;
+                }
+                return;
+            case 't':
+                if (ends("ate") || ends("iti")) {
+                    break;
+                }
+                return;
+            case 'u':
+                if (ends("ous")) {
+                    break;
+                }
+                return;
+            case 'v':
+                if (ends("ive")) {
+                    break;
+                }
+                return;
+            case 'z':
+                if (ends("ize")) {
+                    break;
+                }
+                return;
+            default:
+                return;
+        }
+        if (m() > 1) {
+            k = j;
+        }
+    }
+
+    /**
+     * Final -e, and -ll to -l, in context m > 1
+     */
+    private void step5() {
+        j = k;
+        if (b[k] == 'e') {
+            int a = m();
+            if (a > 1 || a == 1 && !cvc(k - 1)) {
+                k--;
+            }
+        }
+        if (b[k] == 'l' && doubleConsonant(k) && m() > 1) {
+            k--;
+        }
+    }
+}
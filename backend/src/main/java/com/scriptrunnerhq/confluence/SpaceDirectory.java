@@ -0,0 +1,170 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.model.ConfluenceSpace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Directory of Confluence spaces for the settings page typeahead, answered from an in-memory {@link SpaceIndex}.
+ * A background thread pages through the {@link SpaceSource} every {@value #REFRESH_MINUTES_PROPERTY} minutes
+ * (default {@value #DEFAULT_REFRESH_MINUTES}), so requests never wait on Confluence. A new index is published only
+ * when the listing changed; during the first pass it is published after every page so typeahead works early.
+ * A failed pass keeps the current index and is retried after a minute.
+ */
+@Named
+public class SpaceDirectory implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SpaceDirectory.class);
+
+    public static final String REFRESH_MINUTES_PROPERTY = "wmpr.confluence.spaces.refreshMinutes";
+    private static final int DEFAULT_REFRESH_MINUTES = 30;
+    private static final int PAGE_SIZE = 100;
+    private static final long RETRY_MILLIS = 60_000;
+
+    private final SpaceSource spaceSource;
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final long refreshMillis;
+    private final ScheduledExecutorService scheduler;
+    private volatile SpaceIndex index = SpaceIndex.EMPTY;
+    private volatile long nextPassAt;
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Inject
+    public SpaceDirectory(SpaceSource spaceSource, JiraThreadLocalUtil jiraThreadLocalUtil) {
+        this.spaceSource = spaceSource;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.refreshMillis = Math.max(1, Integer.getInteger(REFRESH_MINUTES_PROPERTY, DEFAULT_REFRESH_MINUTES)) * 60_000L;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-confluence-spaces");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // Checked every retry interval; a pass only runs once it is due
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (System.currentTimeMillis() < nextPassAt) {
+                    return;
+                }
+                jiraThreadLocalUtil.preCall();
+                try {
+                    refresh();
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    nextPassAt = System.currentTimeMillis() + RETRY_MILLIS;
+                    log.warn("Confluence space refresh failed: {}", e.getMessage());
+                } finally {
+                    jiraThreadLocalUtil.postCall(log);
+                }
+            }
+        }, 0, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Spaces matching the typeahead query; see {@link SpaceIndex#search}
+     */
+    public List<ConfluenceSpace> search(String query, int limit) {
+        return index.search(query, limit);
+    }
+
+    public SpaceIndex getIndex() {
+        return index;
+    }
+
+    public long getPasses() {
+        return passes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * One pass over the source. Runs on the directory thread; visible for the benchmarks.
+     */
+    void refresh() {
+        if (!spaceSource.isAvailable()) {
+            if (index.size() > 0) {
+                index = SpaceIndex.EMPTY;
+            }
+            nextPassAt = System.currentTimeMillis() + refreshMillis;
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        boolean firstPass = !index.isComplete();
+        Map<String, ConfluenceSpace> spaces = index.spacesByKey();
+        Set<String> listed = new HashSet<>();
+        boolean changed = false;
+        int offset = 0;
+        try {
+            while (true) {
+                SpaceSource.Page page = spaceSource.fetch(offset, PAGE_SIZE);
+                for (ConfluenceSpace space : page.getSpaces()) {
+                    listed.add(space.getKey());
+                    if (!space.equals(spaces.put(space.getKey(), space))) {
+                        changed = true;
+                    }
+                }
+                if (!page.hasMore() || page.getSpaces().isEmpty()) {
+                    break;
+                }
+                offset += page.getSpaces().size();
+                if (firstPass && changed) {
+                    index = SpaceIndex.build(spaces.values(), false);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            nextPassAt = System.currentTimeMillis() + RETRY_MILLIS;
+            log.warn("Failed to list Confluence spaces, keeping {} known spaces: {}", index.size(), e.getMessage());
+            return;
+        }
+
+        // Spaces missing from a full listing were deleted or archived
+        if (spaces.keySet().retainAll(listed)) {
+            changed = true;
+        }
+        if (changed || firstPass) {
+            index = SpaceIndex.build(spaces.values(), true);
+        }
+        passes.incrementAndGet();
+        nextPassAt = System.currentTimeMillis() + refreshMillis;
+        log.debug("Listed {} Confluence spaces in {}ms, index {}", spaces.size(),
+                System.currentTimeMillis() - start, changed ? "rebuilt" : "unchanged");
+    }
+}
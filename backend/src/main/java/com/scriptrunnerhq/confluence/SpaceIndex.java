@@ -0,0 +1,228 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.ConfluenceSpace;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable prefix index over Confluence spaces for typeahead.
+ * Spaces are ranked by name, and each space is indexed under its key and every word of its name. A trie node holds
+ * the ranks of the first {@value #IDS_PER_NODE} spaces below it, so a query walks one path per word and reads its
+ * answer from the node; only a query with several words that filter out most of a full node scans further.
+ */
+public final class SpaceIndex {
+
+    static final SpaceIndex EMPTY = build(Collections.<ConfluenceSpace>emptyList(), false);
+
+    private static final int IDS_PER_NODE = 64;
+    private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<ConfluenceSpace> BY_NAME = new Comparator<ConfluenceSpace>() {
+        @Override
+        public int compare(ConfluenceSpace a, ConfluenceSpace b) {
+            int byName = a.getName().compareToIgnoreCase(b.getName());
+            return byName != 0 ? byName : a.getKey().compareTo(b.getKey());
+        }
+    };
+
+    private final ConfluenceSpace[] spaces;
+    private final String[][] terms;
+    private final Node root;
+    private final boolean complete;
+    private final long builtAt;
+
+    private SpaceIndex(ConfluenceSpace[] spaces, String[][] terms, Node root, boolean complete) {
+        this.spaces = spaces;
+        this.terms = terms;
+        this.root = root;
+        this.complete = complete;
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Indexes the spaces. An incomplete index was built from part of a listing and may lack spaces.
+     */
+    public static SpaceIndex build(Collection<ConfluenceSpace> spaces, boolean complete) {
+        ConfluenceSpace[] ranked = spaces.toArray(new ConfluenceSpace[0]);
+        Arrays.sort(ranked, BY_NAME);
+
+        String[][] terms = new String[ranked.length][];
+        NodeBuilder root = new NodeBuilder();
+        for (int rank = 0; rank < ranked.length; rank++) {
+            Set<String> spaceTerms = new LinkedHashSet<>();
+            spaceTerms.add(ranked[rank].getKey().toLowerCase(Locale.ROOT));
+            spaceTerms.addAll(Arrays.asList(words(ranked[rank].getName())));
+            terms[rank] = spaceTerms.toArray(new String[0]);
+            // Ranks are added in ascending order, so every node's list stays sorted
+            for (String term : terms[rank]) {
+                NodeBuilder node = root;
+                for (int i = 0; i < term.length(); i++) {
+                    node = node.child(term.charAt(i));
+                    node.add(rank);
+                }
+            }
+        }
+        return new SpaceIndex(ranked, terms, root.build(), complete);
+    }
+
+    /**
+     * Up to {@code limit} spaces, in name order, having a key or name word starting with each word of the query.
+     * A blank query returns the first spaces.
+     */
+    public List<ConfluenceSpace> search(String query, int limit) {
+        String[] words = query != null ? words(query) : new String[0];
+        List<ConfluenceSpace> result = new ArrayList<>(Math.min(limit, spaces.length));
+        if (words.length == 0) {
+            for (int rank = 0; rank < spaces.length && result.size() < limit; rank++) {
+                result.add(spaces[rank]);
+            }
+            return result;
+        }
+
+        // The node of the most selective word supplies the candidates; the other words filter them
+        Node candidates = null;
+        for (String word : words) {
+            Node node = root.find(word);
+            if (node == null) {
+                return result;
+            }
+            if (candidates == null || node.ids.length < candidates.ids.length) {
+                candidates = node;
+            }
+        }
+        for (int rank : candidates.ids) {
+            if (matchesAll(rank, words)) {
+                result.add(spaces[rank]);
+                if (result.size() == limit) {
+                    return result;
+                }
+            }
+        }
+        if (candidates.truncated) {
+            for (int rank = candidates.ids[candidates.ids.length - 1] + 1; rank < spaces.length; rank++) {
+                if (matchesAll(rank, words)) {
+                    result.add(spaces[rank]);
+                    if (result.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return spaces.length;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * The indexed spaces by key
+     */
+    Map<String, ConfluenceSpace> spacesByKey() {
+        Map<String, ConfluenceSpace> byKey = new HashMap<>(spaces.length * 2);
+        for (ConfluenceSpace space : spaces) {
+            byKey.put(space.getKey(), space);
+        }
+        return byKey;
+    }
+
+    private boolean matchesAll(int rank, String[] words) {
+        for (String word : words) {
+            boolean found = false;
+            for (String term : terms[rank]) {
+                if (term.startsWith(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static final class Node {
+        private final char[] labels;
+        private final Node[] children;
+        private final int[] ids;
+        private final boolean truncated;
+
+        Node(char[] labels, Node[] children, int[] ids, boolean truncated) {
+            this.labels = labels;
+            this.children = children;
+            this.ids = ids;
+            this.truncated = truncated;
+        }
+
+        Node find(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                int index = Arrays.binarySearch(node.labels, prefix.charAt(i));
+                node = index >= 0 ? node.children[index] : null;
+            }
+            return node;
+        }
+    }
+
+    private static final class NodeBuilder {
+        private final TreeMap<Character, NodeBuilder> children = new TreeMap<>();
+        private int[] ids = new int[4];
+        private int count;
+        private boolean truncated;
+
+        NodeBuilder child(char c) {
+            NodeBuilder child = children.get(c);
+            if (child == null) {
+                child = new NodeBuilder();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        void add(int rank) {
+            // Several terms of one space can share a prefix
+            if (count > 0 && ids[count - 1] == rank) {
+                return;
+            }
+            if (count == IDS_PER_NODE) {
+                truncated = true;
+                return;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, Math.min(ids.length * 2, IDS_PER_NODE));
+            }
+            ids[count++] = rank;
+        }
+
+        Node build() {
+            char[] labels = new char[children.size()];
+            Node[] built = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, NodeBuilder> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                built[i] = child.getValue().build();
+                i++;
+            }
+            return new Node(labels, built, Arrays.copyOf(ids, count), truncated);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.ConfluenceSpace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the spaces of a Confluence instance one page at a time, for the {@link SpaceDirectory}.
+ */
+public interface SpaceSource {
+
+    /**
+     * False when no Confluence instance is configured; the directory is then empty
+     */
+    boolean isAvailable();
+
+    /**
+     * Returns up to {@code limit} spaces from the offset, in an order that is stable between calls.
+     * Throws IOException when Confluence cannot be reached or refuses the request.
+     */
+    Page fetch(int start, int limit) throws IOException;
+
+    final class Page {
+        private final List<ConfluenceSpace> spaces;
+        private final boolean more;
+
+        public Page(List<ConfluenceSpace> spaces, boolean more) {
+            this.spaces = Collections.unmodifiableList(new ArrayList<>(spaces));
+            this.more = more;
+        }
+
+        public List<ConfluenceSpace> getSpaces() {
+            return spaces;
+        }
+
+        /**
+         * True when spaces follow this page
+         */
+        public boolean hasMore() {
+            return more;
+        }
+    }
+}
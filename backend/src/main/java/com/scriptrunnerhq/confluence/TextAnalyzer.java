@@ -0,0 +1,51 @@
+package com.scriptrunnerhq.confluence;
+
+import java.util.*;
+
+/**
+ * Turns text into index terms for the knowledge base: lower-cased letter and digit runs, without common English
+ * words, reduced to their Porter stems. Queries and pages go through the same analysis, so "resetting passwords"
+ * finds a page titled "Password reset".
+ */
+public final class TextAnalyzer {
+
+    private static final int MAX_TERM_LENGTH = 40;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "can", "do", "does", "for", "from", "how", "i",
+            "if", "in", "into", "is", "it", "its", "me", "my", "no", "not", "of", "on", "or", "our", "should", "so",
+            "such", "that", "the", "their", "then", "there", "these", "they", "this", "to", "was", "we", "what",
+            "when", "where", "which", "who", "why", "will", "with", "you", "your"));
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * The terms of the text in order, repeats included
+     */
+    public static String[] analyze(String text) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        PorterStemmer stemmer = new PorterStemmer();
+        List<String> terms = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(lower.charAt(i))) {
+                i++;
+            }
+            if (i > start && i - start <= MAX_TERM_LENGTH) {
+                String word = lower.substring(start, i);
+                if (!STOP_WORDS.contains(word)) {
+                    terms.add(stemmer.stem(word));
+                }
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+}
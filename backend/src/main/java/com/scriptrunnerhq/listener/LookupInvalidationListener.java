@@ -0,0 +1,83 @@
+package com.scriptrunnerhq.listener;
+
+import com.atlassian.crowd.event.directory.RemoteDirectorySynchronisedEvent;
+import com.atlassian.crowd.event.user.UserDeletedEvent;
+import com.atlassian.crowd.event.user.UserEditedEvent;
+import com.atlassian.crowd.event.user.UserRenamedEvent;
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.ClearCacheEvent;
+import com.atlassian.jira.event.workflow.WorkflowUpdatedEvent;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.service.StatusTable;
+import com.scriptrunnerhq.service.UserDisplayNames;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Drops the reporter names of {@link UserDisplayNames} when users change, and reloads the {@link StatusTable} when
+ * workflows change, so new pages pick the change up without waiting for either to expire. Cached pages keep the
+ * names and statuses they were mapped with until they are refreshed.
+ */
+@Named
+public class LookupInvalidationListener implements InitializingBean, DisposableBean {
+
+    @JiraImport
+    private final EventPublisher eventPublisher;
+
+    private final UserDisplayNames userDisplayNames;
+
+    private final StatusTable statusTable;
+
+    @Inject
+    public LookupInvalidationListener(EventPublisher eventPublisher, UserDisplayNames userDisplayNames,
+                                      StatusTable statusTable) {
+        this.eventPublisher = eventPublisher;
+        this.userDisplayNames = userDisplayNames;
+        this.statusTable = statusTable;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        eventPublisher.register(this);
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    @EventListener
+    public void onUserEdited(UserEditedEvent event) {
+        userDisplayNames.invalidateAll();
+    }
+
+    @EventListener
+    public void onUserRenamed(UserRenamedEvent event) {
+        userDisplayNames.invalidateAll();
+    }
+
+    @EventListener
+    public void onUserDeleted(UserDeletedEvent event) {
+        userDisplayNames.invalidateAll();
+    }
+
+    @EventListener
+    public void onDirectorySynchronised(RemoteDirectorySynchronisedEvent event) {
+        userDisplayNames.invalidateAll();
+    }
+
+    @EventListener
+    public void onWorkflowUpdated(WorkflowUpdatedEvent event) {
+        statusTable.invalidate();
+    }
+
+    @EventListener
+    public void onClearCache(ClearCacheEvent event) {
+        userDisplayNames.invalidateAll();
+        statusTable.invalidate();
+    }
+}
@@ -0,0 +1,132 @@
+package com.scriptrunnerhq.listener;
+
+import com.atlassian.event.api.EventListener;
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.jira.event.issue.IssueEvent;
+import com.atlassian.jira.event.type.EventType;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.cluster.ClusterInvalidator;
+import com.scriptrunnerhq.service.RecentRequestsCache;
+import com.scriptrunnerhq.service.RecentRequestsView;
+import com.scriptrunnerhq.service.RequestChangeBroadcaster;
+import com.scriptrunnerhq.service.RequestChangeLog;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import org.ofbiz.core.entity.GenericEntityException;
+import org.ofbiz.core.entity.GenericValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Keeps the portal caches in line with issue changes.
+ * A created issue may enter any cached result, so all entries are marked stale. Updates, transitions and deletes
+ * mark the entries that contain the issue; an update that newly matches a query shows up once the TTL expires.
+ * Stale entries are refreshed by the next request and only served while the index is too slow to answer.
+ * Any event may move a request between statuses, so it marks every cached {@link RequestSummaryCache} entry stale.
+ * Each event is numbered in the {@link RequestChangeLog}, from which /recent answers delta requests.
+ * Every event also updates the {@link RecentRequestsView} rows of the issue, and is forwarded to the other nodes
+ * of a cluster by the {@link ClusterInvalidator}, as Jira raises it on this node only.
+ * Creations and status changes are also handed to the {@link RequestChangeBroadcaster} for open portal pages.
+ */
+@Named
+public class PortalIssueEventListener implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalIssueEventListener.class);
+
+    @JiraImport
+    private final EventPublisher eventPublisher;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final RecentRequestsView recentRequestsView;
+
+    private final RequestSummaryCache requestSummaryCache;
+
+    private final RequestChangeLog changeLog;
+
+    private final RequestChangeBroadcaster requestChangeBroadcaster;
+
+    private final ClusterInvalidator clusterInvalidator;
+
+    @Inject
+    public PortalIssueEventListener(EventPublisher eventPublisher, RecentRequestsCache recentRequestsCache,
+                                    RecentRequestsView recentRequestsView,
+                                    RequestSummaryCache requestSummaryCache, RequestChangeLog changeLog,
+                                    RequestChangeBroadcaster requestChangeBroadcaster,
+                                    ClusterInvalidator clusterInvalidator) {
+        this.eventPublisher = eventPublisher;
+        this.recentRequestsCache = recentRequestsCache;
+        this.recentRequestsView = recentRequestsView;
+        this.requestSummaryCache = requestSummaryCache;
+        this.changeLog = changeLog;
+        this.requestChangeBroadcaster = requestChangeBroadcaster;
+        this.clusterInvalidator = clusterInvalidator;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        eventPublisher.register(this);
+    }
+
+    @Override
+    public void destroy() {
+        eventPublisher.unregister(this);
+    }
+
+    @EventListener
+    public void onIssueEvent(IssueEvent issueEvent) {
+        Issue issue = issueEvent.getIssue();
+        if (issue == null) {
+            return;
+        }
+
+        Long eventTypeId = issueEvent.getEventTypeId();
+        log.debug("Issue event {} for {}", eventTypeId, issue.getKey());
+
+        boolean created = EventType.ISSUE_CREATED_ID.equals(eventTypeId);
+        if (EventType.ISSUE_DELETED_ID.equals(eventTypeId)) {
+            recentRequestsView.onIssueDeleted(issue.getId());
+            changeLog.record(issue.getKey(), RequestChangeLog.ChangeType.DELETED);
+        } else {
+            recentRequestsView.onIssueChanged(issue);
+            changeLog.record(issue.getKey(), created ? RequestChangeLog.ChangeType.CREATED
+                    : RequestChangeLog.ChangeType.UPDATED);
+        }
+
+        requestSummaryCache.invalidateAll();
+
+        clusterInvalidator.issueChanged(issue.getId(), issue.getKey(), created);
+
+        if (created) {
+            recentRequestsCache.invalidateAll();
+            requestChangeBroadcaster.onIssueChanged(issue, true);
+        } else {
+            recentRequestsCache.invalidateIssue(issue.getKey());
+            if (isStatusChange(issueEvent)) {
+                requestChangeBroadcaster.onIssueChanged(issue, false);
+            }
+        }
+    }
+
+    private static boolean isStatusChange(IssueEvent issueEvent) {
+        GenericValue changeLog = issueEvent.getChangeLog();
+        if (changeLog == null) {
+            return false;
+        }
+        try {
+            for (GenericValue item : changeLog.getRelated("ChildChangeItem")) {
+                if ("status".equalsIgnoreCase(item.getString("field"))) {
+                    return true;
+                }
+            }
+        } catch (GenericEntityException e) {
+            log.debug("Could not read change items: {}", e.getMessage());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,172 @@
+package com.scriptrunnerhq.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in microseconds.
+ * Each power of two is split into {@value #SUB_BUCKETS} linear buckets, so reported percentiles are within
+ * about 12% of the true value. Recording is a handful of atomic increments and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Covers up to 2^40 microseconds, about 12 days; larger values land in the last bucket
+    private static final int BUCKETS = (40 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private volatile long resetAt = System.currentTimeMillis();
+
+    public void record(long durationNanos) {
+        long micros = Math.max(0, durationNanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        totalMicros.add(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // retry until this value is recorded or a larger one wins
+        }
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Starts a new measurement window. Concurrent recordings may land on either side of the reset.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        errors.reset();
+        totalMicros.reset();
+        maxMicros.set(0);
+        resetAt = System.currentTimeMillis();
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - resetAt);
+        long max = maxMicros.get();
+        // Bucket bounds can overshoot the largest recorded value
+        return new Snapshot(total, errors.sum(), totalMicros.sum(), max,
+                Math.min(max, percentile(copy, total, 0.50)),
+                Math.min(max, percentile(copy, total, 0.95)),
+                Math.min(max, percentile(copy, total, 0.99)),
+                total * 1000.0 / elapsedMillis, elapsedMillis);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub);
+    }
+
+    /**
+     * Largest value that maps to the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length - 1);
+    }
+
+    /**
+     * Point-in-time view of a histogram; latencies are in microseconds
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final long errors;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+        private final double throughputPerSecond;
+        private final long windowMillis;
+
+        Snapshot(long count, long errors, long totalMicros, long maxMicros, long p50Micros, long p95Micros,
+                 long p99Micros, double throughputPerSecond, long windowMillis) {
+            this.count = count;
+            this.errors = errors;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.throughputPerSecond = throughputPerSecond;
+            this.windowMillis = windowMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getMeanMicros() {
+            return count > 0 ? totalMicros / count : 0;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        /**
+         * Recordings per second since the histogram was created or last reset
+         */
+        public double getThroughputPerSecond() {
+            return throughputPerSecond;
+        }
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+    }
+}
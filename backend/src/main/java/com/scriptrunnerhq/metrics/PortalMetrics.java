@@ -0,0 +1,123 @@
+package com.scriptrunnerhq.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.inject.Named;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of per-stage latency histograms for the portal endpoints.
+ * The set of stages is fixed, so lookups are array reads and recording never locks. Snapshots are served by the
+ * admin metrics resource and over JMX.
+ */
+@Named
+public class PortalMetrics implements PortalMetricsMXBean, InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalMetrics.class);
+
+    public static final String OBJECT_NAME = "com.scriptrunnerhq.wmpr:type=PortalMetrics";
+
+    /**
+     * Measured stages; the name is the key used in REST and JMX output
+     */
+    public enum Stage {
+        RECENT_TOTAL("recent.total"),
+        RECENT_PARSE("recent.parse"),
+        RECENT_SEARCH("recent.search"),
+        RECENT_MAPPING("recent.mapping"),
+        RECENT_SERIALIZATION("recent.serialization"),
+        RECENT_VIEW("recent.view"),
+        SUMMARY_TOTAL("summary.total"),
+        SUMMARY_SEARCH("summary.search"),
+        BOOTSTRAP_TOTAL("bootstrap.total"),
+        EXPORT_TOTAL("export.total"),
+        EXPORT_BATCH("export.batch"),
+        SETTINGS_READ("settings.read"),
+        SETTINGS_WRITE("settings.write"),
+        SPACES_SEARCH("spaces.search"),
+        KB_SEARCH("kb.search");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final LatencyHistogram[] histograms;
+
+    public PortalMetrics() {
+        histograms = new LatencyHistogram[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, taken from {@link System#nanoTime()}
+     */
+    public void record(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void recordError(Stage stage) {
+        histograms[stage.ordinal()].recordError();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getStages() {
+        Map<String, LatencyHistogram.Snapshot> stages = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            stages.put(stage.getKey(), histograms[stage.ordinal()].snapshot());
+        }
+        return stages;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        log.info("Portal metrics reset");
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // A previous plugin instance may not have unregistered, e.g. after a failed disable
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Could not register portal metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Could not unregister portal metrics MBean: {}", e.getMessage());
+        }
+    }
+}
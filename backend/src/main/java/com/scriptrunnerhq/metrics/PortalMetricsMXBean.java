@@ -0,0 +1,16 @@
+package com.scriptrunnerhq.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link PortalMetrics}, registered as {@value PortalMetrics#OBJECT_NAME}
+ */
+public interface PortalMetricsMXBean {
+
+    /**
+     * Latency snapshot per stage, keyed by stage name
+     */
+    Map<String, LatencyHistogram.Snapshot> getStages();
+
+    void reset();
+}
@@ -0,0 +1,61 @@
+package com.scriptrunnerhq.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A Confluence space as listed in the space directory.
+ */
+public final class ConfluenceSpace {
+
+    private final String key;
+    private final String name;
+    private final String url;
+
+    public ConfluenceSpace(String key, String name, String url) {
+        this.key = key;
+        this.name = name != null ? name : key;
+        this.url = url;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Link to the space in Confluence, or null when unknown
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("key", key);
+        map.put("name", name);
+        map.put("url", url);
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConfluenceSpace)) {
+            return false;
+        }
+        ConfluenceSpace other = (ConfluenceSpace) o;
+        return key.equals(other.key) && name.equals(other.name)
+                && (url != null ? url.equals(other.url) : other.url == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode() * 31 + name.hashCode();
+    }
+}
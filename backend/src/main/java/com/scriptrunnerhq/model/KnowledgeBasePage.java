@@ -0,0 +1,85 @@
+package com.scriptrunnerhq.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A Confluence page as held in the knowledge base index: what is searched and what is shown for a hit.
+ */
+public final class KnowledgeBasePage {
+
+    private final String id;
+    private final String spaceKey;
+    private final String title;
+    private final String excerpt;
+    private final String url;
+    private final long lastModified;
+
+    public KnowledgeBasePage(String id, String spaceKey, String title, String excerpt, String url, long lastModified) {
+        this.id = id;
+        this.spaceKey = spaceKey;
+        this.title = title != null ? title : "";
+        this.excerpt = excerpt != null ? excerpt : "";
+        this.url = url;
+        this.lastModified = lastModified;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getSpaceKey() {
+        return spaceKey;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getExcerpt() {
+        return excerpt;
+    }
+
+    /**
+     * Link to the page in Confluence, or null when unknown
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Last modification in epoch milliseconds, 0 when unknown
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", id);
+        map.put("title", title);
+        map.put("excerpt", excerpt);
+        map.put("url", url);
+        map.put("space", spaceKey);
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KnowledgeBasePage)) {
+            return false;
+        }
+        KnowledgeBasePage other = (KnowledgeBasePage) o;
+        return id.equals(other.id) && spaceKey.equals(other.spaceKey) && title.equals(other.title)
+                && excerpt.equals(other.excerpt) && lastModified == other.lastModified
+                && (url != null ? url.equals(other.url) : other.url == null);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode() * 31 + title.hashCode();
+    }
+}
@@ -0,0 +1,285 @@
+package com.scriptrunnerhq.model;
+
+import com.google.gson.Gson;
+
+import java.util.*;
+
+/**
+ * Immutable, versioned snapshot of the settings of one project, or of the default scope when the project key is null.
+ * The JSON served by GET /settings is rendered once when the snapshot is built.
+ */
+public final class PortalSettings {
+
+    public static final String DEFAULT_JQL = "project = HELP ORDER BY created DESC";
+    public static final int BUTTON_COUNT = 5;
+    public static final int DEFAULT_MAX_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE_LIMIT = 500;
+    public static final int DEFAULT_REQUESTS_PER_MINUTE = 60;
+    public static final int MAX_REQUESTS_PER_MINUTE_LIMIT = 6000;
+    public static final int DEFAULT_REQUEST_BURST = 20;
+    public static final int MAX_REQUEST_BURST_LIMIT = 1000;
+    public static final int DEFAULT_MAX_CONCURRENT_SEARCHES = 8;
+    public static final int MAX_CONCURRENT_SEARCHES_LIMIT = 256;
+
+    private final String projectKey;
+    private final boolean inherited;
+    private final long version;
+    private final String jql;
+    private final List<String> buttonLabels;
+    private final List<String> buttonUrls;
+    private final List<String> confluenceSpaces;
+    private final int maxPageSize;
+    private final List<String> portalIds;
+    private final int requestsPerMinute;
+    private final int requestBurst;
+    private final int maxConcurrentSearches;
+    private final String json;
+
+    private PortalSettings(Builder builder) {
+        this.projectKey = builder.projectKey;
+        this.inherited = builder.inherited;
+        this.version = builder.version;
+        this.jql = builder.jql != null && !builder.jql.trim().isEmpty() ? builder.jql.trim() : null;
+        this.buttonLabels = Collections.unmodifiableList(new ArrayList<>(builder.buttonLabels));
+        this.buttonUrls = Collections.unmodifiableList(new ArrayList<>(builder.buttonUrls));
+        this.confluenceSpaces = Collections.unmodifiableList(new ArrayList<>(builder.confluenceSpaces));
+        this.maxPageSize = builder.maxPageSize;
+        this.portalIds = Collections.unmodifiableList(new ArrayList<>(builder.portalIds));
+        this.requestsPerMinute = builder.requestsPerMinute;
+        this.requestBurst = builder.requestBurst;
+        this.maxConcurrentSearches = builder.maxConcurrentSearches;
+        this.json = new Gson().toJson(toMap());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .projectKey(projectKey)
+                .inherited(inherited)
+                .version(version)
+                .jql(jql)
+                .buttonLabels(buttonLabels)
+                .buttonUrls(buttonUrls)
+                .confluenceSpaces(confluenceSpaces)
+                .maxPageSize(maxPageSize)
+                .portalIds(portalIds)
+                .requestsPerMinute(requestsPerMinute)
+                .requestBurst(requestBurst)
+                .maxConcurrentSearches(maxConcurrentSearches);
+    }
+
+    /**
+     * The project these settings belong to, or null for the default scope
+     */
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    /**
+     * True when the project has no settings of its own and these are the default scope's
+     */
+    public boolean isInherited() {
+        return inherited;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The configured JQL, or null when none is configured
+     */
+    public String getJql() {
+        return jql;
+    }
+
+    public String getEffectiveJql() {
+        return jql != null ? jql : DEFAULT_JQL;
+    }
+
+    /**
+     * Label of button 1..5, never null
+     */
+    public String getButtonLabel(int button) {
+        return buttonLabels.get(button - 1);
+    }
+
+    /**
+     * URL of button 1..5, never null
+     */
+    public String getButtonUrl(int button) {
+        return buttonUrls.get(button - 1);
+    }
+
+    public List<String> getButtonLabels() {
+        return buttonLabels;
+    }
+
+    public List<String> getButtonUrls() {
+        return buttonUrls;
+    }
+
+    public List<String> getConfluenceSpaces() {
+        return confluenceSpaces;
+    }
+
+    /**
+     * Largest page a /recent caller may request
+     */
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     * Customer portal ids that show this project's requests
+     */
+    public List<String> getPortalIds() {
+        return portalIds;
+    }
+
+    /**
+     * Sustained rate of search-backed calls allowed per user, or 0 for no limit; only the default scope's applies
+     */
+    public int getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    /**
+     * Calls a user may make at once on top of the sustained rate; only the default scope's applies
+     */
+    public int getRequestBurst() {
+        return requestBurst;
+    }
+
+    /**
+     * Search-backed calls allowed to run at once on a node, or 0 for no limit; only the default scope's applies
+     */
+    public int getMaxConcurrentSearches() {
+        return maxConcurrentSearches;
+    }
+
+    /**
+     * Pre-serialized GET /settings response body
+     */
+    public String getJson() {
+        return json;
+    }
+
+    private Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("projectKey", projectKey);
+        map.put("inherited", inherited);
+        map.put("jql", getEffectiveJql());
+        map.put("defaultJql", DEFAULT_JQL);
+        for (int i = 1; i <= BUTTON_COUNT; i++) {
+            map.put("button" + i + "Label", getButtonLabel(i));
+            map.put("button" + i + "Url", getButtonUrl(i));
+        }
+        map.put("confluenceSpaces", confluenceSpaces);
+        map.put("maxPageSize", maxPageSize);
+        map.put("portalIds", portalIds);
+        map.put("requestsPerMinute", requestsPerMinute);
+        map.put("requestBurst", requestBurst);
+        map.put("maxConcurrentSearches", maxConcurrentSearches);
+        map.put("version", version);
+        return map;
+    }
+
+    public static final class Builder {
+        private String projectKey;
+        private boolean inherited;
+        private long version;
+        private String jql;
+        private List<String> buttonLabels = Collections.nCopies(BUTTON_COUNT, "");
+        private List<String> buttonUrls = Collections.nCopies(BUTTON_COUNT, "");
+        private List<String> confluenceSpaces = Collections.emptyList();
+        private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+        private List<String> portalIds = Collections.emptyList();
+        private int requestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE;
+        private int requestBurst = DEFAULT_REQUEST_BURST;
+        private int maxConcurrentSearches = DEFAULT_MAX_CONCURRENT_SEARCHES;
+
+        private Builder() {
+        }
+
+        public Builder projectKey(String projectKey) {
+            this.projectKey = projectKey;
+            return this;
+        }
+
+        public Builder inherited(boolean inherited) {
+            this.inherited = inherited;
+            return this;
+        }
+
+        public Builder version(long version) {
+            this.version = version;
+            return this;
+        }
+
+        public Builder jql(String jql) {
+            this.jql = jql;
+            return this;
+        }
+
+        /**
+         * Exactly {@link #BUTTON_COUNT} labels, indexed by button number minus one
+         */
+        public Builder buttonLabels(List<String> buttonLabels) {
+            this.buttonLabels = checkButtons(buttonLabels);
+            return this;
+        }
+
+        /**
+         * Exactly {@link #BUTTON_COUNT} URLs, indexed by button number minus one
+         */
+        public Builder buttonUrls(List<String> buttonUrls) {
+            this.buttonUrls = checkButtons(buttonUrls);
+            return this;
+        }
+
+        public Builder confluenceSpaces(List<String> confluenceSpaces) {
+            this.confluenceSpaces = confluenceSpaces != null ? confluenceSpaces : Collections.<String>emptyList();
+            return this;
+        }
+
+        public Builder maxPageSize(int maxPageSize) {
+            this.maxPageSize = Math.max(1, Math.min(MAX_PAGE_SIZE_LIMIT, maxPageSize));
+            return this;
+        }
+
+        public Builder portalIds(List<String> portalIds) {
+            this.portalIds = portalIds != null ? portalIds : Collections.<String>emptyList();
+            return this;
+        }
+
+        public Builder requestsPerMinute(int requestsPerMinute) {
+            this.requestsPerMinute = Math.max(0, Math.min(MAX_REQUESTS_PER_MINUTE_LIMIT, requestsPerMinute));
+            return this;
+        }
+
+        public Builder requestBurst(int requestBurst) {
+            this.requestBurst = Math.max(1, Math.min(MAX_REQUEST_BURST_LIMIT, requestBurst));
+            return this;
+        }
+
+        public Builder maxConcurrentSearches(int maxConcurrentSearches) {
+            this.maxConcurrentSearches = Math.max(0, Math.min(MAX_CONCURRENT_SEARCHES_LIMIT, maxConcurrentSearches));
+            return this;
+        }
+
+        public PortalSettings build() {
+            return new PortalSettings(this);
+        }
+
+        private static List<String> checkButtons(List<String> values) {
+            if (values == null || values.size() != BUTTON_COUNT) {
+                throw new IllegalArgumentException("Expected " + BUTTON_COUNT + " button values");
+            }
+            return values;
+        }
+    }
+}
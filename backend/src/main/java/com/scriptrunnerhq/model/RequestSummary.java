@@ -0,0 +1,106 @@
+package com.scriptrunnerhq.model;
+
+import java.util.*;
+
+/**
+ * Number of requests matching the portal query, per status and per status category.
+ */
+public final class RequestSummary {
+
+    // Jira's status category keys, always reported so clients can show "0 done"
+    private static final List<String> CATEGORY_ORDER = Arrays.asList("new", "indeterminate", "done");
+
+    private final long total;
+    private final List<StatusCount> statuses;
+    private final Map<String, Long> categories;
+
+    public RequestSummary(Collection<StatusCount> statusCounts) {
+        List<StatusCount> sorted = new ArrayList<>(statusCounts);
+        Collections.sort(sorted, new Comparator<StatusCount>() {
+            @Override
+            public int compare(StatusCount a, StatusCount b) {
+                int byCount = Long.compare(b.count, a.count);
+                return byCount != 0 ? byCount : a.name.compareTo(b.name);
+            }
+        });
+
+        Map<String, Long> byCategory = new LinkedHashMap<>();
+        for (String category : CATEGORY_ORDER) {
+            byCategory.put(category, 0L);
+        }
+        long sum = 0;
+        for (StatusCount status : sorted) {
+            Long current = byCategory.get(status.categoryKey);
+            byCategory.put(status.categoryKey, current != null ? current + status.count : status.count);
+            sum += status.count;
+        }
+        this.total = sum;
+        this.statuses = Collections.unmodifiableList(sorted);
+        this.categories = Collections.unmodifiableMap(byCategory);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Statuses with at least one request, most requests first
+     */
+    public List<StatusCount> getStatuses() {
+        return statuses;
+    }
+
+    /**
+     * Requests per status category key, the three Jira categories first
+     */
+    public Map<String, Long> getCategories() {
+        return categories;
+    }
+
+    public Map<String, Object> toMap() {
+        List<Map<String, Object>> statusMaps = new ArrayList<>(statuses.size());
+        for (StatusCount status : statuses) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", status.id);
+            map.put("name", status.name);
+            map.put("category", status.categoryKey);
+            map.put("count", status.count);
+            statusMaps.add(map);
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("total", total);
+        map.put("categories", categories);
+        map.put("statuses", statusMaps);
+        return map;
+    }
+
+    public static final class StatusCount {
+        private final String id;
+        private final String name;
+        private final String categoryKey;
+        private final long count;
+
+        public StatusCount(String id, String name, String categoryKey, long count) {
+            this.id = id;
+            this.name = name;
+            this.categoryKey = categoryKey;
+            this.count = count;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategoryKey() {
+            return categoryKey;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.scriptrunnerhq.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of /recent results and the cursor for the page after it.
+ */
+public final class RequestsPage {
+
+    private final List<ServiceDeskRequest> requests;
+    private final String nextCursor;
+
+    public RequestsPage(List<ServiceDeskRequest> requests, String nextCursor) {
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ServiceDeskRequest> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Opaque cursor for the next page, or null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
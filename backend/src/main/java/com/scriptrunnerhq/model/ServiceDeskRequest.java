@@ -1,65 +1,58 @@
 package com.scriptrunnerhq.model;
 
-import javax.xml.bind.annotation.XmlRootElement;
-
-@XmlRootElement
-public class ServiceDeskRequest {
-    private String key;
-    private String summary;
-    private String reporter;
-    private String created;
-    private String status;
-    private String statusCategory;
-
-    public ServiceDeskRequest() {
-        // Default constructor for JAXB
+/**
+ * One row of the portal request list.
+ * Immutable; the reporter, status and category strings are shared with the lookup tables they come from, and the
+ * created date is kept as epoch milliseconds, so a row holds no strings of its own beyond key and summary.
+ */
+public final class ServiceDeskRequest {
+
+    /**
+     * Created value of a request whose created date is unknown
+     */
+    public static final long UNKNOWN_CREATED = -1;
+
+    private final String key;
+    private final String summary;
+    private final String reporter;
+    private final long created;
+    private final String status;
+    private final String statusCategory;
+
+    public ServiceDeskRequest(String key, String summary, String reporter, long created, String status,
+                              String statusCategory) {
+        this.key = key;
+        this.summary = summary;
+        this.reporter = reporter;
+        this.created = created;
+        this.status = status;
+        this.statusCategory = statusCategory;
     }
 
     public String getKey() {
         return key;
     }
 
-    public void setKey(String key) {
-        this.key = key;
-    }
-
     public String getSummary() {
         return summary;
     }
 
-    public void setSummary(String summary) {
-        this.summary = summary;
-    }
-
     public String getReporter() {
         return reporter;
     }
 
-    public void setReporter(String reporter) {
-        this.reporter = reporter;
-    }
-
-    public String getCreated() {
+    /**
+     * Created date in epoch milliseconds, or {@link #UNKNOWN_CREATED}
+     */
+    public long getCreated() {
         return created;
     }
 
-    public void setCreated(String created) {
-        this.created = created;
-    }
-
     public String getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
-        this.status = status;
-    }
-
     public String getStatusCategory() {
         return statusCategory;
     }
-
-    public void setStatusCategory(String statusCategory) {
-        this.statusCategory = statusCategory;
-    }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,108 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.security.GlobalPermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.confluence.SpaceDirectory;
+import com.scriptrunnerhq.confluence.SpaceIndex;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.ConfluenceSpace;
+import com.google.gson.Gson;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.*;
+
+/**
+ * Typeahead over the Confluence space directory for the settings page. Space names come from the application link's
+ * view of Confluence, so only administrators of Jira or of a project may list them.
+ */
+@Path("/confluence/spaces")
+public class ConfluenceSpacesRestResource {
+
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 50;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final GlobalPermissionManager globalPermissionManager;
+
+    @JiraImport
+    private final PermissionManager permissionManager;
+
+    private final SpaceDirectory spaceDirectory;
+
+    private final PortalMetrics metrics;
+
+    private final Gson gson;
+
+    @Inject
+    public ConfluenceSpacesRestResource(
+            JiraAuthenticationContext authenticationContext,
+            GlobalPermissionManager globalPermissionManager,
+            PermissionManager permissionManager,
+            SpaceDirectory spaceDirectory,
+            PortalMetrics metrics) {
+        this.authenticationContext = authenticationContext;
+        this.globalPermissionManager = globalPermissionManager;
+        this.permissionManager = permissionManager;
+        this.spaceDirectory = spaceDirectory;
+        this.metrics = metrics;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSpaces(@QueryParam("q") String query, @QueryParam("limit") Integer limit) {
+        long start = System.nanoTime();
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity("{\"error\":\"Authentication required\"}")
+                    .build();
+        }
+        if (!globalPermissionManager.hasPermission(GlobalPermissionKey.ADMINISTER, user)
+                && !permissionManager.hasProjects(ProjectPermissions.ADMINISTER_PROJECTS, user)) {
+            return Response.status(Response.Status.FORBIDDEN)
+                    .entity("{\"error\":\"Administrator privileges required\"}")
+                    .build();
+        }
+
+        int size = limit != null ? limit : DEFAULT_LIMIT;
+        if (size < 1 || size > MAX_LIMIT) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "limit must be between 1 and " + MAX_LIMIT);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(gson.toJson(errorResponse))
+                    .build();
+        }
+
+        // One index snapshot answers the query and describes it
+        SpaceIndex index = spaceDirectory.getIndex();
+        List<Map<String, Object>> spaces = new ArrayList<>();
+        for (ConfluenceSpace space : index.search(query, size)) {
+            spaces.add(space.toMap());
+        }
+        metrics.record(PortalMetrics.Stage.SPACES_SEARCH, start);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("spaces", spaces);
+        response.put("total", index.size());
+        response.put("complete", index.isComplete());
+        response.put("indexedAt", index.getBuiltAt());
+        return Response.ok(gson.toJson(response))
+                .cacheControl(HttpCaching.privateMaxAge())
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.scriptrunnerhq.rest;
+
+import com.scriptrunnerhq.model.RequestSummary;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * ETag and Cache-Control helpers for conditional GETs.
+ * The private max-age is read from the system property {@value #MAX_AGE_PROPERTY}.
+ */
+final class HttpCaching {
+
+    static final String MAX_AGE_PROPERTY = "wmpr.rest.maxAgeSeconds";
+    private static final int DEFAULT_MAX_AGE_SECONDS = 10;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private HttpCaching() {
+    }
+
+    /**
+     * Weak entity tag over the query key, the visible fields of each row and the next cursor,
+     * without serializing the rows. It is weak because the body also carries per-response diagnostics,
+     * so two responses with the same tag hold the same requests but not the same bytes.
+     */
+    static EntityTag requestsTag(String queryKey, RequestsPage page) {
+        MessageDigest digest = sha1();
+        update(digest, queryKey);
+        update(digest, page.getNextCursor());
+        for (ServiceDeskRequest request : page.getRequests()) {
+            update(digest, request.getKey());
+            update(digest, request.getSummary());
+            update(digest, request.getReporter());
+            update(digest, Long.toString(request.getCreated()));
+            update(digest, request.getStatus());
+            update(digest, request.getStatusCategory());
+        }
+        return toTag(digest, true);
+    }
+
+    /**
+     * Strong entity tag over the JQL and the count of each status
+     */
+    static EntityTag summaryTag(String jql, RequestSummary summary) {
+        MessageDigest digest = sha1();
+        update(digest, jql);
+        for (RequestSummary.StatusCount status : summary.getStatuses()) {
+            update(digest, status.getId());
+            update(digest, status.getName());
+            update(digest, status.getCategoryKey());
+            update(digest, Long.toString(status.getCount()));
+        }
+        return toTag(digest, false);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Field separator so that ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+
+    private static EntityTag toTag(MessageDigest digest, boolean weak) {
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new EntityTag(new String(hex), weak);
+    }
+
+    /**
+     * Tag of the gzip-encoded body of a response tagged with the given tag; its bytes differ from the identity body's
+     */
+    static EntityTag gzipTag(EntityTag tag) {
+        return new EntityTag(tag.getValue() + "-gzip", tag.isWeak());
+    }
+
+    /**
+     * Returns a 304 response when the request's If-None-Match matches the tag or its gzip variant, otherwise null
+     */
+    static Response notModified(Request request, EntityTag tag) {
+        if (request == null || tag == null) {
+            return null;
+        }
+        EntityTag matched = tag;
+        Response.ResponseBuilder builder = request.evaluatePreconditions(matched);
+        if (builder == null && JsonResponseWriter.isGzipEnabled()) {
+            matched = gzipTag(tag);
+            builder = request.evaluatePreconditions(matched);
+        }
+        if (builder == null) {
+            return null;
+        }
+        if (JsonResponseWriter.isGzipEnabled()) {
+            builder.header("Vary", HttpHeaders.ACCEPT_ENCODING);
+        }
+        return builder.tag(matched).cacheControl(privateMaxAge()).build();
+    }
+
+    /**
+     * Private, short-lived caching for per-user responses
+     */
+    static CacheControl privateMaxAge() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setMaxAge(Math.max(0, Integer.getInteger(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE_SECONDS)));
+        cacheControl.setNoTransform(false);
+        return cacheControl;
+    }
+
+    /**
+     * No caching at all, used for errors
+     */
+    static CacheControl noStore() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setNoStore(true);
+        return cacheControl;
+    }
+}
@@ -0,0 +1,232 @@
+package com.scriptrunnerhq.rest;
+
+import com.google.gson.stream.JsonWriter;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serializes JSON payloads straight into pooled UTF-8 buffers.
+ * The exact byte length is known before the response is sent, so Content-Length is always set and
+ * load balancers never see chunked encoding. Gzip is applied when {@value #GZIP_PROPERTY} is true,
+ * the client accepts it and the payload exceeds {@value #GZIP_MIN_BYTES} bytes. While gzip is on, every response
+ * varies on Accept-Encoding and a gzipped body carries its own entity tag.
+ */
+final class JsonResponseWriter {
+
+    static final String GZIP_PROPERTY = "wmpr.rest.gzip";
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private static final int POOL_SIZE = 32;
+    private static final int INITIAL_BUFFER_BYTES = 8 * 1024;
+    private static final int MAX_POOLED_BUFFER_BYTES = 256 * 1024;
+
+    private static final String JSON_UTF8 = MediaType.APPLICATION_JSON + ";charset=UTF-8";
+
+    private static final BlockingQueue<PooledBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private JsonResponseWriter() {
+    }
+
+    /**
+     * Writes a JSON document; implementations must emit exactly one top-level value
+     */
+    interface JsonBody {
+        void write(JsonWriter out) throws IOException;
+    }
+
+    /**
+     * Serializes the body into a pooled buffer and returns a builder whose entity streams that buffer
+     */
+    static Response.ResponseBuilder build(Response.Status status, JsonBody body, HttpHeaders headers) throws IOException {
+        return build(status, body, headers, null);
+    }
+
+    /**
+     * As {@link #build(Response.Status, JsonBody, HttpHeaders)}, tagged with the given tag, or with its
+     * {@link HttpCaching#gzipTag gzip variant} when the body is gzipped
+     */
+    static Response.ResponseBuilder build(Response.Status status, JsonBody body, HttpHeaders headers, EntityTag tag)
+            throws IOException {
+        PooledBuffer buffer = acquire();
+        try {
+            boolean gzip = false;
+            writeJson(buffer, body);
+
+            if (buffer.size() >= GZIP_MIN_BYTES && acceptsGzip(headers)) {
+                PooledBuffer compressed = acquire();
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed)) {
+                    buffer.writeTo(gzipOut);
+                } catch (IOException e) {
+                    release(compressed);
+                    throw e;
+                }
+                release(buffer);
+                buffer = compressed;
+                gzip = true;
+            }
+
+            Response.ResponseBuilder builder = Response.status(status)
+                    .entity(new BufferOutput(buffer))
+                    .type(JSON_UTF8)
+                    .header("Content-Length", buffer.size());
+            if (isGzipEnabled()) {
+                // A small or identity body still varies, since the same URL is gzipped for other clients
+                builder.header("Vary", HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (gzip) {
+                builder.header("Content-Encoding", "gzip");
+            }
+            if (tag != null) {
+                builder.tag(gzip ? HttpCaching.gzipTag(tag) : tag);
+            }
+            return builder;
+        } catch (IOException | RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+    }
+
+    static void writeRequests(JsonWriter out, List<ServiceDeskRequest> requests) throws IOException {
+        out.beginArray();
+        for (ServiceDeskRequest request : requests) {
+            writeRequest(out, request);
+        }
+        out.endArray();
+    }
+
+    static void writeRequest(JsonWriter out, ServiceDeskRequest request) throws IOException {
+        out.beginObject();
+        out.name("key").value(request.getKey());
+        out.name("summary").value(request.getSummary());
+        out.name("reporter").value(request.getReporter());
+        out.name("created").value(request.getCreated());
+        out.name("status").value(request.getStatus());
+        out.name("statusCategory").value(request.getStatusCategory());
+        out.endObject();
+    }
+
+    /**
+     * Writes a flat map of strings, numbers, booleans and string lists
+     */
+    static void writeMap(JsonWriter out, Map<String, ?> map) throws IOException {
+        out.beginObject();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            out.name(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+        out.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Map) {
+            writeMap(out, (Map<String, ?>) value);
+        } else if (value instanceof Iterable) {
+            out.beginArray();
+            for (Object item : (Iterable<?>) value) {
+                writeValue(out, item);
+            }
+            out.endArray();
+        } else {
+            out.value(value.toString());
+        }
+    }
+
+    private static void writeJson(OutputStream target, JsonBody body) throws IOException {
+        Writer writer = new OutputStreamWriter(target, StandardCharsets.UTF_8);
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        body.write(jsonWriter);
+        jsonWriter.flush();
+    }
+
+    static boolean isGzipEnabled() {
+        return Boolean.getBoolean(GZIP_PROPERTY);
+    }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        if (headers == null || !isGzipEnabled()) {
+            return false;
+        }
+        List<String> acceptEncoding = headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String value : acceptEncoding) {
+            if (value != null && value.toLowerCase().contains("gzip")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PooledBuffer acquire() {
+        PooledBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : new PooledBuffer();
+    }
+
+    private static void release(PooledBuffer buffer) {
+        if (buffer.capacity() <= MAX_POOLED_BUFFER_BYTES) {
+            buffer.reset();
+            POOL.offer(buffer);
+        }
+    }
+
+    /**
+     * Byte buffer that exposes its backing array so the payload is written without a final copy
+     */
+    private static final class PooledBuffer extends ByteArrayOutputStream {
+        PooledBuffer() {
+            super(INITIAL_BUFFER_BYTES);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void writeBody(OutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+    }
+
+    /**
+     * Streams a pooled buffer to the client and hands it back to the pool afterwards
+     */
+    private static final class BufferOutput implements StreamingOutput {
+        private final PooledBuffer buffer;
+
+        BufferOutput(PooledBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(OutputStream output) throws IOException {
+            try {
+                buffer.writeBody(output);
+            } finally {
+                release(buffer);
+            }
+        }
+    }
+}
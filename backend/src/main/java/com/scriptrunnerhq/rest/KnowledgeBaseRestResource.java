@@ -0,0 +1,110 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.confluence.KnowledgeBase;
+import com.scriptrunnerhq.confluence.KnowledgeBaseIndex;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.google.gson.Gson;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.*;
+
+/**
+ * Search box of the portal footer: the best matching pages of the Confluence spaces configured for the calling
+ * portal, from the local {@link KnowledgeBase}. Only those spaces are searched, so a customer sees titles and
+ * excerpts an administrator chose to offer.
+ */
+@Path("/kb/search")
+public class KnowledgeBaseRestResource {
+
+    private static final int DEFAULT_LIMIT = 5;
+    private static final int MAX_LIMIT = 20;
+    private static final int MAX_QUERY_LENGTH = 500;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    private final PortalSettingsStore settingsStore;
+
+    private final KnowledgeBase knowledgeBase;
+
+    private final PortalMetrics metrics;
+
+    private final Gson gson;
+
+    @Inject
+    public KnowledgeBaseRestResource(
+            JiraAuthenticationContext authenticationContext,
+            PortalSettingsStore settingsStore,
+            KnowledgeBase knowledgeBase,
+            PortalMetrics metrics) {
+        this.authenticationContext = authenticationContext;
+        this.settingsStore = settingsStore;
+        this.knowledgeBase = knowledgeBase;
+        this.metrics = metrics;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response search(@QueryParam("q") String query,
+                           @QueryParam("limit") Integer limit,
+                           @QueryParam("projectKey") String projectKey,
+                           @QueryParam("portalId") String portalId) {
+        long start = System.nanoTime();
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity("{\"error\":\"Authentication required\"}")
+                    .build();
+        }
+        if (query == null || query.trim().isEmpty() || query.length() > MAX_QUERY_LENGTH) {
+            return errorResponse("q must be between 1 and " + MAX_QUERY_LENGTH + " characters");
+        }
+        int size = limit != null ? limit : DEFAULT_LIMIT;
+        if (size < 1 || size > MAX_LIMIT) {
+            return errorResponse("limit must be between 1 and " + MAX_LIMIT);
+        }
+
+        PortalSettings settings;
+        try {
+            settings = settingsStore.forPortal(projectKey, portalId);
+        } catch (IllegalArgumentException e) {
+            return errorResponse("Invalid projectKey");
+        }
+
+        List<Map<String, Object>> pages = new ArrayList<>();
+        for (KnowledgeBaseIndex.Hit hit : knowledgeBase.search(query, settings.getConfluenceSpaces(), size)) {
+            pages.add(hit.getPage().toMap());
+        }
+        metrics.record(PortalMetrics.Stage.KB_SEARCH, start);
+        KnowledgeBaseIndex index = knowledgeBase.getIndex();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("pages", pages);
+        response.put("spaces", settings.getConfluenceSpaces());
+        response.put("indexedPages", index.size());
+        response.put("indexedAt", index.getBuiltAt());
+        return Response.ok(gson.toJson(response))
+                .cacheControl(HttpCaching.privateMaxAge())
+                .build();
+    }
+
+    private Response errorResponse(String message) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(gson.toJson(errorResponse))
+                .build();
+    }
+}
@@ -0,0 +1,209 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Everything the portal footer needs on first render in one round trip: the first page of recent requests,
+ * the configured buttons and the Confluence spaces. Both halves come from the same settings snapshot.
+ */
+@Path("/bootstrap")
+public class PortalBootstrapRestResource {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalBootstrapRestResource.class);
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    private final PortalSettingsStore settingsStore;
+
+    private final RecentRequestsLoader recentRequestsLoader;
+
+    private final AdmissionControl admissionControl;
+
+    private final PortalMetrics metrics;
+
+    private final Gson gson;
+
+    @Inject
+    public PortalBootstrapRestResource(
+            JiraAuthenticationContext authenticationContext,
+            PortalSettingsStore settingsStore,
+            RecentRequestsLoader recentRequestsLoader,
+            AdmissionControl admissionControl,
+            PortalMetrics metrics) {
+        this.authenticationContext = authenticationContext;
+        this.settingsStore = settingsStore;
+        this.recentRequestsLoader = recentRequestsLoader;
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBootstrap(@QueryParam("projectKey") String projectKey,
+                                 @QueryParam("portalId") String portalId,
+                                 @Context Request request,
+                                 @Context HttpHeaders headers) {
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+
+        AdmissionControl.Admission admission = null;
+        try {
+            ApplicationUser user = authenticationContext.getLoggedInUser();
+            if (user == null) {
+                return errorResponse("Authentication required", Response.Status.UNAUTHORIZED);
+            }
+
+            PortalSettings settings;
+            try {
+                settings = settingsStore.forPortal(projectKey, portalId);
+            } catch (IllegalArgumentException e) {
+                return errorResponse("Invalid projectKey", Response.Status.BAD_REQUEST);
+            }
+            int pageSize = Math.min(DEFAULT_PAGE_SIZE, settings.getMaxPageSize());
+
+            // A request-side problem still returns the buttons and spaces, with the error in place of the data
+            RequestsPage page = null;
+            String requestsError = null;
+            String version = null;
+            EntityTag requestsTag = null;
+            boolean stale = false;
+            String jql = settings.getJql();
+            if (jql == null) {
+                requestsError = "No JQL query configured";
+            } else {
+                // Over the limit, the last cached page is served without searching
+                admission = admissionControl.admit(user);
+                RecentRequestsLoader.Result result = admission.isAdmitted()
+                        ? recentRequestsLoader.load(user, jql, pageSize, null)
+                        : recentRequestsLoader.loadCached(user, jql, pageSize, null);
+                if (result == null) {
+                    log.debug("Refused by the {} limit with no cached page to serve", admission.getLimit());
+                    requestsError = "Too many requests";
+                } else if (result.isValid()) {
+                    if (!admission.isAdmitted()) {
+                        admissionControl.servedFromCache();
+                    }
+                    page = result.getPage();
+                    requestsTag = result.getEtag();
+                    version = result.getVersion();
+                    stale = result.isStale();
+                } else if (result.isUnavailable()) {
+                    log.warn("Search timed out with no stale result to serve");
+                    requestsError = "Requests are temporarily unavailable";
+                } else {
+                    log.error("JQL query invalid: {}", result.getJqlErrors());
+                    requestsError = "Invalid JQL query";
+                }
+            }
+
+            // Distinct errors get distinct tags so a revalidation never keeps an earlier error on screen
+            String requestsPart = requestsTag != null
+                    ? requestsTag.getValue()
+                    : "error-" + Integer.toHexString(requestsError.hashCode());
+            EntityTag etag = new EntityTag(requestsPart + "-" + settings.getVersion());
+            Response notModified = HttpCaching.notModified(request, etag);
+            if (notModified != null) {
+                metrics.record(PortalMetrics.Stage.BOOTSTRAP_TOTAL, startNanos);
+                return notModified;
+            }
+
+            Response response = createBootstrapResponse(settings, page, version, stale, requestsError, etag, headers)
+                    .cacheControl(stale || requestsError != null ? HttpCaching.noStore() : HttpCaching.privateMaxAge())
+                    .build();
+            metrics.record(PortalMetrics.Stage.BOOTSTRAP_TOTAL, startNanos);
+            log.debug("Bootstrap completed in {}ms", System.currentTimeMillis() - startTime);
+            return response;
+
+        } catch (Exception e) {
+            metrics.recordError(PortalMetrics.Stage.BOOTSTRAP_TOTAL);
+            log.error("Bootstrap failed after {}ms: {}", System.currentTimeMillis() - startTime, e.getMessage());
+            return errorResponse("Failed to load portal data: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        } finally {
+            if (admission != null) {
+                admission.release();
+            }
+        }
+    }
+
+    private Response.ResponseBuilder createBootstrapResponse(final PortalSettings settings, final RequestsPage page,
+                                                             final String version, final boolean stale, final String requestsError,
+                                                             EntityTag etag, HttpHeaders headers) throws IOException {
+        return JsonResponseWriter.build(Response.Status.OK, new JsonResponseWriter.JsonBody() {
+            @Override
+            public void write(JsonWriter out) throws IOException {
+                out.beginObject();
+                out.name("data");
+                JsonResponseWriter.writeRequests(out, page != null ? page.getRequests() : Collections.<ServiceDeskRequest>emptyList());
+                out.name("nextCursor").value(page != null ? page.getNextCursor() : null);
+                if (version != null) {
+                    out.name("version").value(version);
+                }
+                if (stale) {
+                    out.name("stale").value(true);
+                }
+                if (requestsError != null) {
+                    out.name("requestsError").value(requestsError);
+                }
+
+                // Only buttons with both a label and a URL are shown
+                out.name("buttons").beginArray();
+                for (int i = 1; i <= PortalSettings.BUTTON_COUNT; i++) {
+                    String label = settings.getButtonLabel(i);
+                    String url = settings.getButtonUrl(i);
+                    if (!label.isEmpty() && !url.isEmpty()) {
+                        out.beginObject().name("label").value(label).name("url").value(url).endObject();
+                    }
+                }
+                out.endArray();
+
+                out.name("confluenceSpaces");
+                JsonResponseWriter.writeValue(out, settings.getConfluenceSpaces());
+                out.name("projectKey").value(settings.getProjectKey());
+                out.name("settingsVersion").value(settings.getVersion());
+                out.endObject();
+            }
+        }, headers, etag);
+    }
+
+    private Response errorResponse(String message, Response.Status status) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", message);
+        String json = gson.toJson(error);
+        return Response.status(status)
+                .entity(json)
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .cacheControl(HttpCaching.noStore())
+                .header("Content-Length", json.getBytes(StandardCharsets.UTF_8).length)
+                .build();
+    }
+}
@@ -0,0 +1,207 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.security.GlobalPermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.cluster.ClusterInvalidator;
+import com.scriptrunnerhq.confluence.KnowledgeBase;
+import com.scriptrunnerhq.confluence.SpaceDirectory;
+import com.scriptrunnerhq.metrics.LatencyHistogram;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RecentRequestsCache;
+import com.scriptrunnerhq.service.RecentRequestsView;
+import com.scriptrunnerhq.service.RequestChangeBroadcaster;
+import com.scriptrunnerhq.service.RequestChangeLog;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import com.scriptrunnerhq.service.SearchCoalescer;
+import com.scriptrunnerhq.service.UserDisplayNames;
+import com.google.gson.Gson;
+
+import javax.inject.Inject;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Admin-only view of the portal latency histograms and counters. DELETE starts a new measurement window.
+ */
+@Path("/metrics")
+public class PortalMetricsRestResource {
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final GlobalPermissionManager globalPermissionManager;
+
+    private final PortalMetrics metrics;
+
+    private final RecentRequestsCache recentRequestsCache;
+
+    private final RecentRequestsView recentRequestsView;
+
+    private final RequestSummaryCache requestSummaryCache;
+
+    private final RequestChangeLog changeLog;
+
+    private final UserDisplayNames userDisplayNames;
+
+    private final AdmissionControl admissionControl;
+
+    private final SearchCoalescer searchCoalescer;
+
+    private final RequestChangeBroadcaster requestChangeBroadcaster;
+
+    private final ClusterInvalidator clusterInvalidator;
+
+    private final PortalSettingsStore settingsStore;
+
+    private final SpaceDirectory spaceDirectory;
+
+    private final KnowledgeBase knowledgeBase;
+
+    private final Gson gson;
+
+    @Inject
+    public PortalMetricsRestResource(
+            JiraAuthenticationContext authenticationContext,
+            GlobalPermissionManager globalPermissionManager,
+            PortalMetrics metrics,
+            RecentRequestsCache recentRequestsCache,
+            RecentRequestsView recentRequestsView,
+            RequestSummaryCache requestSummaryCache,
+            RequestChangeLog changeLog,
+            UserDisplayNames userDisplayNames,
+            AdmissionControl admissionControl,
+            SearchCoalescer searchCoalescer,
+            RequestChangeBroadcaster requestChangeBroadcaster,
+            ClusterInvalidator clusterInvalidator,
+            PortalSettingsStore settingsStore,
+            SpaceDirectory spaceDirectory,
+            KnowledgeBase knowledgeBase) {
+        this.authenticationContext = authenticationContext;
+        this.globalPermissionManager = globalPermissionManager;
+        this.metrics = metrics;
+        this.recentRequestsCache = recentRequestsCache;
+        this.recentRequestsView = recentRequestsView;
+        this.requestSummaryCache = requestSummaryCache;
+        this.changeLog = changeLog;
+        this.userDisplayNames = userDisplayNames;
+        this.admissionControl = admissionControl;
+        this.searchCoalescer = searchCoalescer;
+        this.requestChangeBroadcaster = requestChangeBroadcaster;
+        this.clusterInvalidator = clusterInvalidator;
+        this.settingsStore = settingsStore;
+        this.spaceDirectory = spaceDirectory;
+        this.knowledgeBase = knowledgeBase;
+        this.gson = new Gson();
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics() {
+        Response denied = checkAdmin();
+        if (denied != null) {
+            return denied;
+        }
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : metrics.getStages().entrySet()) {
+            stages.put(entry.getKey(), toMap(entry.getValue()));
+        }
+
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("cacheHits", recentRequestsCache.getHits());
+        counters.put("cacheMisses", recentRequestsCache.getMisses());
+        counters.put("cacheSize", recentRequestsCache.size());
+        counters.put("staleServed", recentRequestsCache.getStaleHits());
+        counters.put("viewHits", recentRequestsView.getHits());
+        counters.put("viewFallbacks", recentRequestsView.getFallbacks());
+        counters.put("summaryCacheHits", requestSummaryCache.getHits());
+        counters.put("summaryCacheMisses", requestSummaryCache.getMisses());
+        counters.put("changeLogVersion", changeLog.getVersion());
+        counters.put("deltaResponses", changeLog.getDeltas());
+        counters.put("deltaFallbacks", changeLog.getFallbacks());
+        counters.put("userNameHits", userDisplayNames.getHits());
+        counters.put("userNameMisses", userDisplayNames.getMisses());
+        counters.put("admitted", admissionControl.getAdmitted());
+        counters.put("rateLimited", admissionControl.getRateLimited());
+        counters.put("concurrencyLimited", admissionControl.getConcurrencyLimited());
+        counters.put("throttledFromCache", admissionControl.getServedFromCache());
+        counters.put("admittedRunning", admissionControl.getRunning());
+        counters.put("searchesExecuted", searchCoalescer.getExecuted());
+        counters.put("searchesCoalesced", searchCoalescer.getCoalesced());
+        counters.put("searchTimeouts", searchCoalescer.getTimedOut());
+        counters.put("searchesRejected", searchCoalescer.getRejected());
+        counters.put("openStreams", requestChangeBroadcaster.getConnectionCount());
+        counters.put("settingsEpoch", settingsStore.getEpoch());
+        counters.put("clusterMessagesSent", clusterInvalidator.getSent());
+        counters.put("clusterMessagesReceived", clusterInvalidator.getReceived());
+        counters.put("confluenceSpaces", spaceDirectory.getIndex().size());
+        counters.put("confluenceSpaceFailures", spaceDirectory.getFailures());
+        counters.put("knowledgeBaseSpaces", knowledgeBase.getSpaceCount());
+        counters.put("knowledgeBasePages", knowledgeBase.getIndex().size());
+        counters.put("knowledgeBasePagesFetched", knowledgeBase.getPagesFetched());
+        counters.put("knowledgeBaseFailures", knowledgeBase.getFailures());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("stages", stages);
+        response.put("counters", counters);
+        return Response.ok(gson.toJson(response))
+                .cacheControl(HttpCaching.noStore())
+                .build();
+    }
+
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response resetMetrics() {
+        Response denied = checkAdmin();
+        if (denied != null) {
+            return denied;
+        }
+        metrics.reset();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", true);
+        response.put("message", "Metrics reset");
+        return Response.ok(gson.toJson(response)).build();
+    }
+
+    private Response checkAdmin() {
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity("{\"error\":\"Authentication required\"}")
+                    .build();
+        }
+        if (!globalPermissionManager.hasPermission(GlobalPermissionKey.ADMINISTER, user)) {
+            return Response.status(Response.Status.FORBIDDEN)
+                    .entity("{\"error\":\"Administrator privileges required\"}")
+                    .build();
+        }
+        return null;
+    }
+
+    private static Map<String, Object> toMap(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", snapshot.getCount());
+        map.put("errors", snapshot.getErrors());
+        map.put("throughputPerSecond", snapshot.getThroughputPerSecond());
+        map.put("meanMicros", snapshot.getMeanMicros());
+        map.put("p50Micros", snapshot.getP50Micros());
+        map.put("p95Micros", snapshot.getP95Micros());
+        map.put("p99Micros", snapshot.getP99Micros());
+        map.put("maxMicros", snapshot.getMaxMicros());
+        map.put("windowMillis", snapshot.getWindowMillis());
+        return map;
+    }
+}
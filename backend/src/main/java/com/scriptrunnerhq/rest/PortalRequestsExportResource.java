@@ -0,0 +1,260 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.security.GlobalPermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admin-only export of every request matching the portal's configured JQL, as NDJSON (one request object per line)
+ * or CSV, with the fields of {@link ServiceDeskRequest}.
+ * Requests are read in windows of {@value #BATCH_SIZE_PROPERTY} rows (default {@value #DEFAULT_BATCH_SIZE}) and each
+ * window is written and flushed before the next is read, so memory use does not grow with the result. A client that
+ * disconnects fails the next flush, which ends the export. At most {@value #MAX_CONCURRENT_PROPERTY} exports run per
+ * node; rows, duration and throughput of each export are logged when it ends.
+ */
+@Path("/export")
+public class PortalRequestsExportResource {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalRequestsExportResource.class);
+
+    static final String BATCH_SIZE_PROPERTY = "wmpr.export.batchSize";
+    static final String MAX_CONCURRENT_PROPERTY = "wmpr.export.maxConcurrent";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_MAX_CONCURRENT = 2;
+    private static final int RETRY_AFTER_SECONDS = 60;
+    private static final int WRITE_BUFFER_CHARS = 64 * 1024;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    private static final String[] CSV_HEADER = {"key", "summary", "reporter", "created", "status", "statusCategory"};
+
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    @JiraImport
+    private final GlobalPermissionManager globalPermissionManager;
+
+    private final PortalSettingsStore settingsStore;
+
+    private final JqlQueryCache jqlQueryCache;
+
+    private final RecentRequestsSearcher recentRequestsSearcher;
+
+    private final PortalMetrics metrics;
+
+    private final Gson gson;
+
+    @Inject
+    public PortalRequestsExportResource(
+            JiraAuthenticationContext authenticationContext,
+            GlobalPermissionManager globalPermissionManager,
+            PortalSettingsStore settingsStore,
+            JqlQueryCache jqlQueryCache,
+            RecentRequestsSearcher recentRequestsSearcher,
+            PortalMetrics metrics) {
+        this.authenticationContext = authenticationContext;
+        this.globalPermissionManager = globalPermissionManager;
+        this.settingsStore = settingsStore;
+        this.jqlQueryCache = jqlQueryCache;
+        this.recentRequestsSearcher = recentRequestsSearcher;
+        this.metrics = metrics;
+        this.gson = new Gson();
+    }
+
+    @GET
+    public Response export(@QueryParam("format") String format,
+                           @QueryParam("projectKey") String projectKey,
+                           @QueryParam("portalId") String portalId) {
+        final ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return errorResponse("Authentication required", Response.Status.UNAUTHORIZED);
+        }
+        if (!globalPermissionManager.hasPermission(GlobalPermissionKey.ADMINISTER, user)) {
+            return errorResponse("Administrator privileges required", Response.Status.FORBIDDEN);
+        }
+
+        final boolean csv;
+        if (format == null || format.isEmpty() || "ndjson".equalsIgnoreCase(format)) {
+            csv = false;
+        } else if ("csv".equalsIgnoreCase(format)) {
+            csv = true;
+        } else {
+            return errorResponse("format must be ndjson or csv", Response.Status.BAD_REQUEST);
+        }
+
+        PortalSettings settings;
+        try {
+            settings = settingsStore.forPortal(projectKey, portalId);
+        } catch (IllegalArgumentException e) {
+            return errorResponse("Invalid projectKey", Response.Status.BAD_REQUEST);
+        }
+        final String jql = settings.getJql();
+        if (jql == null || jql.trim().isEmpty()) {
+            return errorResponse("No JQL query configured", Response.Status.BAD_REQUEST);
+        }
+        final JqlQueryCache.ParsedJql parsed = jqlQueryCache.parse(user, jql);
+        if (!parsed.isValid()) {
+            log.error("Export JQL invalid: {}", parsed.getErrors());
+            return errorResponse("Invalid JQL query", Response.Status.BAD_REQUEST);
+        }
+
+        // Each export holds a request thread and reads the whole result, so only a few run at a time
+        int maxConcurrent = Math.max(1, Integer.getInteger(MAX_CONCURRENT_PROPERTY, DEFAULT_MAX_CONCURRENT));
+        if (RUNNING.incrementAndGet() > maxConcurrent) {
+            RUNNING.decrementAndGet();
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity(gson.toJson(errorMap("Too many exports running")))
+                    .type(MediaType.APPLICATION_JSON)
+                    .header("Retry-After", RETRY_AFTER_SECONDS)
+                    .cacheControl(HttpCaching.noStore())
+                    .build();
+        }
+
+        final int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE,
+                Integer.getInteger(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE)));
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                try {
+                    run(user, jql, parsed, batchSize, csv, out);
+                } finally {
+                    RUNNING.decrementAndGet();
+                }
+            }
+        };
+
+        String fileName = "requests-" + (settings.getProjectKey() != null ? settings.getProjectKey() : "global")
+                + (csv ? ".csv" : ".ndjson");
+        return Response.ok(output)
+                .type((csv ? CSV : NDJSON) + ";charset=UTF-8")
+                .header("Content-Disposition", "attachment; filename=\"" + fileName + "\"")
+                .cacheControl(HttpCaching.noStore())
+                .header("X-Accel-Buffering", "no")
+                .build();
+    }
+
+    private void run(ApplicationUser user, String jql, JqlQueryCache.ParsedJql parsed, int batchSize, final boolean csv,
+                     OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS);
+        final JsonWriter json = new JsonWriter(writer);
+        // One top-level object per line
+        json.setLenient(true);
+        if (csv) {
+            writeCsvRow(writer, CSV_HEADER);
+        }
+
+        final long[] written = new long[1];
+        try {
+            recentRequestsSearcher.scan(user, parsed.getQuery(), batchSize, new RecentRequestsSearcher.BatchHandler() {
+                @Override
+                public void handle(List<ServiceDeskRequest> batch) throws IOException {
+                    for (ServiceDeskRequest request : batch) {
+                        if (csv) {
+                            writeCsvRow(writer, new String[]{request.getKey(), request.getSummary(),
+                                    request.getReporter(), isoInstant(request.getCreated()), request.getStatus(),
+                                    request.getStatusCategory()});
+                        } else {
+                            JsonResponseWriter.writeRequest(json, request);
+                            writer.write('\n');
+                        }
+                    }
+                    // Pushes the batch to the client, and fails once the client has gone away
+                    writer.flush();
+                    written[0] += batch.size();
+                }
+            });
+            writer.flush();
+        } catch (IOException e) {
+            metrics.recordError(PortalMetrics.Stage.EXPORT_TOTAL);
+            log.info("Export of '{}' for {} ended after {} requests: {}", jql, user.getName(), written[0], e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            // The response is already committed, so the client only sees a truncated body
+            metrics.recordError(PortalMetrics.Stage.EXPORT_TOTAL);
+            log.error("Export of '{}' for {} failed after {} requests: {}", jql, user.getName(), written[0], e.getMessage());
+            throw new IOException("Export failed", e);
+        }
+        metrics.record(PortalMetrics.Stage.EXPORT_TOTAL, start);
+
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Exported {} requests of '{}' for {} as {} in {} ms ({} requests/s, batches of {})", written[0], jql,
+                user.getName(), csv ? "CSV" : "NDJSON", millis, written[0] * 1000 / millis, batchSize);
+    }
+
+    /**
+     * ISO-8601 UTC form of an epoch-millis timestamp, empty when unknown
+     */
+    private static String isoInstant(long epochMillis) {
+        return epochMillis >= 0 ? Instant.ofEpochMilli(epochMillis).toString() : "";
+    }
+
+    /**
+     * Writes one RFC 4180 row; fields with a comma, quote or line break are quoted
+     */
+    private static void writeCsvRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] != null ? fields[i] : "";
+            boolean quote = field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0;
+            if (quote) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private Response errorResponse(String message, Response.Status status) {
+        return Response.status(status)
+                .entity(gson.toJson(errorMap(message)))
+                .type(MediaType.APPLICATION_JSON)
+                .cacheControl(HttpCaching.noStore())
+                .build();
+    }
+
+    private static Map<String, Object> errorMap(String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", message);
+        return error;
+    }
+}
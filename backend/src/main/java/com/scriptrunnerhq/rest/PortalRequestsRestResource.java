@@ -1,17 +1,20 @@
 package com.scriptrunnerhq.rest;
 
-import com.atlassian.jira.bc.issue.search.SearchService;
-import com.atlassian.jira.issue.Issue;
-import com.atlassian.jira.issue.search.SearchResults;
 import com.atlassian.jira.security.JiraAuthenticationContext;
 import com.atlassian.jira.user.ApplicationUser;
-import com.atlassian.jira.web.bean.PagerFilter;
-import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
 import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
-import com.atlassian.sal.api.pluginsettings.PluginSettings;
-import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
-import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.PageCursor;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import com.scriptrunnerhq.service.SearchCoalescer;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,47 +22,86 @@ import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
-import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Path("/recent")
 public class PortalRequestsRestResource {
 
     private static final Logger log = LoggerFactory.getLogger(PortalRequestsRestResource.class);
-    private static final String JQL_SETTINGS_KEY = "portal.jql";
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int RETRY_AFTER_SECONDS = 5;
+    // Beyond this many known keys a delta request is answered with a full page
+    private static final int MAX_KNOWN_KEYS = 500;
+    private static final AtomicLong REQUEST_SEQUENCE = new AtomicLong();
 
-    @JiraImport
-    private final SearchService searchService;
-    
     @JiraImport
     private final JiraAuthenticationContext authenticationContext;
     
-    @ComponentImport
-    private final PluginSettingsFactory pluginSettingsFactory;
+    private final PortalSettingsStore settingsStore;
+    
+    private final RecentRequestsLoader recentRequestsLoader;
+    
+    private final RequestSummaryLoader requestSummaryLoader;
+    
+    private final AdmissionControl admissionControl;
+    
+    private final PortalMetrics metrics;
     
     private final Gson gson;
 
     @Inject
     public PortalRequestsRestResource(
-            SearchService searchService,
             JiraAuthenticationContext authenticationContext,
-            PluginSettingsFactory pluginSettingsFactory) {
-        this.searchService = searchService;
+            PortalSettingsStore settingsStore,
+            RecentRequestsLoader recentRequestsLoader,
+            JqlQueryCache jqlQueryCache,
+            RecentRequestsSearcher recentRequestsSearcher,
+            RequestSummaryCache requestSummaryCache,
+            SearchCoalescer searchCoalescer,
+            AdmissionControl admissionControl,
+            PortalMetrics metrics) {
         this.authenticationContext = authenticationContext;
-        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.settingsStore = settingsStore;
+        this.recentRequestsLoader = recentRequestsLoader;
+        this.requestSummaryLoader = new RequestSummaryLoader(requestSummaryCache, jqlQueryCache, recentRequestsSearcher,
+                searchCoalescer, metrics);
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
         this.gson = new Gson();
     }
 
+    /**
+     * The first or next page of requests. With {@code since}, the version token of an earlier first page, only the
+     * requests added, changed and removed since are returned when the server still knows them; otherwise the first
+     * page is returned in full. Both carry the token for the next call. {@code known} lists the comma-separated keys
+     * the client holds; removals are only reported for those.
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getRecentRequests() {
+    public Response getRecentRequests(@QueryParam("limit") Integer limit,
+                                      @QueryParam("cursor") String cursor,
+                                      @QueryParam("since") String since,
+                                      @QueryParam("known") String known,
+                                      @QueryParam("projectKey") String projectKey,
+                                      @QueryParam("portalId") String portalId,
+                                      @Context Request request,
+                                      @Context HttpHeaders headers) {
         long startTime = System.currentTimeMillis();
-        String requestId = "PORTAL-" + startTime;
+        long startNanos = System.nanoTime();
+        String requestId = nextRequestId(startTime);
         
         log.debug("[{}] Portal REST API called at: {}", requestId, new Date());
         
+        AdmissionControl.Admission admission = null;
         try {
             // Check authentication
             ApplicationUser user = authenticationContext.getLoggedInUser();
@@ -68,66 +110,111 @@ public class PortalRequestsRestResource {
             if (user == null) {
                 log.warn("[{}] Authentication failed - no user", requestId);
                 String errorResponse = "{\"error\":\"Authentication required\",\"requestId\":\"" + requestId + "\"}";
-                return createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED);
+                return createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED).build();
             }
 
-            // Get JQL from plugin settings
-            String jql = getConfiguredJql();
+            // Settings of the calling portal's project, falling back to the default scope
+            PortalSettings settings;
+            try {
+                settings = settingsStore.forPortal(projectKey, portalId);
+            } catch (IllegalArgumentException e) {
+                log.warn("[{}] {}", requestId, e.getMessage());
+                String errorResponse = "{\"error\":\"Invalid projectKey\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+            
+            String jql = getConfiguredJql(settings);
             log.debug("[{}] Using JQL: {}", requestId, jql);
             
             if (jql == null || jql.trim().isEmpty()) {
                 log.warn("[{}] No JQL configured", requestId);
                 String errorResponse = "{\"error\":\"No JQL query configured\",\"requestId\":\"" + requestId + "\"}";
-                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST);
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
             }
             
-            SearchService.ParseResult parseResult = searchService.parseQuery(user, jql);
-            if (!parseResult.isValid()) {
-                log.error("[{}] JQL query invalid: {}", requestId, parseResult.getErrors());
-                String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
-                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST);
+            // Page size is capped by the admin-configured maximum
+            int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+            int maxPageSize = settings.getMaxPageSize();
+            if (pageSize < 1 || pageSize > maxPageSize) {
+                log.warn("[{}] Invalid limit {}", requestId, limit);
+                String errorResponse = "{\"error\":\"limit must be between 1 and " + maxPageSize + "\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
             }
-
-            // Execute search with limit of 10
-            PagerFilter pagerFilter = new PagerFilter(0, 10);
-            log.debug("[{}] Executing search with limit 10", requestId);
             
-            SearchResults searchResults = searchService.search(user, parseResult.getQuery(), pagerFilter);
-            List<Issue> issues = searchResults.getResults();
+            PageCursor pageCursor;
+            try {
+                pageCursor = PageCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                log.warn("[{}] Invalid cursor {}", requestId, cursor);
+                String errorResponse = "{\"error\":\"Invalid cursor\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
             
-            log.debug("[{}] Found {} issues", requestId, issues.size());
-
-            List<ServiceDeskRequest> requests = new ArrayList<>();
-            for (int i = 0; i < issues.size(); i++) {
-                Issue issue = issues.get(i);
-                try {
-                    ServiceDeskRequest request = new ServiceDeskRequest();
-                    request.setKey(issue.getKey());
-                    request.setSummary(issue.getSummary());
-                    request.setReporter(issue.getReporter() != null ? issue.getReporter().getDisplayName() : "Unknown");
-                    request.setCreated(issue.getCreated() != null ? issue.getCreated().toString() : "");
-                    request.setStatus(issue.getStatus() != null ? issue.getStatus().getName() : "Unknown");
-                    request.setStatusCategory(issue.getStatus() != null && issue.getStatus().getStatusCategory() != null 
-                        ? issue.getStatus().getStatusCategory().getKey() : "unknown");
-                    
-                    requests.add(request);
-                } catch (Exception e) {
-                    log.warn("[{}] Error processing issue {}: {}", new Object[]{requestId, issue.getKey(), e.getMessage()});
+            // Over the limit, the last cached page is served without searching, and a 429 without one
+            admission = admissionControl.admit(user);
+            if (!admission.isAdmitted()) {
+                RecentRequestsLoader.Result cached = recentRequestsLoader.loadCached(user, jql, pageSize, pageCursor);
+                if (cached == null) {
+                    log.debug("[{}] Refused by the {} limit", requestId, admission.getLimit());
+                    return TooManyRequests.response(admission, requestId);
                 }
+                admissionControl.servedFromCache();
+                Response notModified = HttpCaching.notModified(request, cached.getEtag());
+                return notModified != null
+                        ? notModified
+                        : createRequestsResponse(requestId, startTime, user, jql, cached, headers);
+            }
+            
+            if (since != null && pageCursor == null) {
+                RecentRequestsLoader.Delta delta = recentRequestsLoader.loadDelta(user, jql, since, knownKeys(known));
+                if (delta != null) {
+                    log.debug("[{}] Delta of {} added, {} changed, {} removed", requestId, delta.getAdded().size(),
+                            delta.getChanged().size(), delta.getRemoved().size());
+                    Response response = createDeltaResponse(delta, headers);
+                    metrics.record(PortalMetrics.Stage.RECENT_TOTAL, startNanos);
+                    return response;
+                }
+                log.debug("[{}] Token {} not answered from the change log, returning a full page", requestId, since);
             }
-
-            // Create response with diagnostics
-            Map<String, Object> response = new HashMap<>();
-            response.put("data", requests);
-            response.put("diagnostics", createDiagnostics(requestId, startTime, user, jql, issues.size()));
-
-            String jsonResponse = gson.toJson(response);
-            log.debug("[{}] Response size: {} characters", requestId, jsonResponse.length());
-            log.debug("[{}] Request completed in {}ms", requestId, (System.currentTimeMillis() - startTime));
             
-            return createOptimizedResponse(jsonResponse, Response.Status.OK);
+            RecentRequestsLoader.Result result;
+            try {
+                result = recentRequestsLoader.load(user, jql, pageSize, pageCursor);
+            } catch (IllegalArgumentException e) {
+                // A cursor issued for a query with a different sort order, e.g. after the JQL was changed
+                log.warn("[{}] {}", requestId, e.getMessage());
+                String errorResponse = "{\"error\":\"Invalid cursor\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+            
+            if (result.isUnavailable()) {
+                // The index is too slow to answer and there is no earlier result to fall back on
+                metrics.recordError(PortalMetrics.Stage.RECENT_TOTAL);
+                log.warn("[{}] Search timed out with no stale result to serve", requestId);
+                String errorResponse = "{\"error\":\"Requests are temporarily unavailable\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", RETRY_AFTER_SECONDS)
+                        .build();
+            }
+            
+            if (!result.isValid()) {
+                log.error("[{}] JQL query invalid: {}", requestId, result.getJqlErrors());
+                String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+            
+            log.debug("[{}] Found {} requests (cache hit: {}, stale: {})", requestId, result.getPage().getRequests().size(),
+                    result.isCacheHit(), result.isStale());
+
+            Response notModified = HttpCaching.notModified(request, result.getEtag());
+            Response response = notModified != null
+                    ? notModified
+                    : createRequestsResponse(requestId, startTime, user, jql, result, headers);
+            metrics.record(PortalMetrics.Stage.RECENT_TOTAL, startNanos);
+            return response;
 
         } catch (Exception e) {
+            metrics.recordError(PortalMetrics.Stage.RECENT_TOTAL);
             long duration = System.currentTimeMillis() - startTime;
             log.error("ERROR after {}ms: {}", duration, e.getMessage());
             
@@ -137,45 +224,211 @@ public class PortalRequestsRestResource {
             errorResponse.put("duration", duration);
             errorResponse.put("errorType", e.getClass().getSimpleName());
             
-            return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.INTERNAL_SERVER_ERROR);
+            return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            if (admission != null) {
+                admission.release();
+            }
         }
     }
     
     /**
-     * Gets the configured JQL from plugin settings
+     * Number of requests matching the portal query per status and status category, counted from the index
      */
-    private String getConfiguredJql() {
+    @GET
+    @Path("/summary")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSummary(@QueryParam("projectKey") String projectKey,
+                               @QueryParam("portalId") String portalId,
+                               @Context Request request) {
+        long startNanos = System.nanoTime();
+        String requestId = nextRequestId(System.currentTimeMillis());
+        AdmissionControl.Admission admission = null;
         try {
-            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-            String configuredJql = (String) settings.get(JQL_SETTINGS_KEY);
-            
-            if (configuredJql != null && !configuredJql.trim().isEmpty()) {
-                log.debug("Found configured JQL: {}", configuredJql);
-                return configuredJql.trim();
+            ApplicationUser user = authenticationContext.getLoggedInUser();
+            if (user == null) {
+                String errorResponse = "{\"error\":\"Authentication required\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.UNAUTHORIZED).build();
+            }
+
+            PortalSettings settings;
+            try {
+                settings = settingsStore.forPortal(projectKey, portalId);
+            } catch (IllegalArgumentException e) {
+                log.warn("[{}] {}", requestId, e.getMessage());
+                String errorResponse = "{\"error\":\"Invalid projectKey\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+
+            String jql = getConfiguredJql(settings);
+            if (jql == null || jql.trim().isEmpty()) {
+                String errorResponse = "{\"error\":\"No JQL query configured\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+
+            RequestSummaryLoader.Result result;
+            admission = admissionControl.admit(user);
+            if (admission.isAdmitted()) {
+                result = requestSummaryLoader.load(user, jql);
             } else {
-                log.debug("No JQL configured");
-                return null;
+                result = requestSummaryLoader.loadCached(user, jql);
+                if (result == null) {
+                    return TooManyRequests.response(admission, requestId);
+                }
+                admissionControl.servedFromCache();
+            }
+            if (result.isUnavailable()) {
+                metrics.recordError(PortalMetrics.Stage.SUMMARY_TOTAL);
+                log.warn("[{}] Summary count timed out with no stale result to serve", requestId);
+                String errorResponse = "{\"error\":\"Summary is temporarily unavailable\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", RETRY_AFTER_SECONDS)
+                        .build();
+            }
+            if (!result.isValid()) {
+                log.error("[{}] JQL query invalid: {}", requestId, result.getJqlErrors());
+                String errorResponse = "{\"error\":\"Invalid JQL query\",\"requestId\":\"" + requestId + "\"}";
+                return createOptimizedResponse(errorResponse, Response.Status.BAD_REQUEST).build();
+            }
+
+            Response response = HttpCaching.notModified(request, result.getEtag());
+            if (response == null) {
+                Map<String, Object> body = result.getSummary().toMap();
+                body.put("cacheHit", result.isCacheHit());
+                body.put("stale", result.isStale());
+                response = Response.ok(gson.toJson(body))
+                        .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                        .tag(result.getEtag())
+                        .cacheControl(result.isStale() ? HttpCaching.noStore() : HttpCaching.privateMaxAge())
+                        .build();
             }
+            metrics.record(PortalMetrics.Stage.SUMMARY_TOTAL, startNanos);
+            return response;
+
         } catch (Exception e) {
-            log.error("Error loading JQL settings: {}", e.getMessage());
+            metrics.recordError(PortalMetrics.Stage.SUMMARY_TOTAL);
+            log.error("[{}] Failed to count portal requests: {}", requestId, e.getMessage());
+
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to count portal requests: " + e.getMessage());
+            errorResponse.put("requestId", requestId);
+            errorResponse.put("errorType", e.getClass().getSimpleName());
+            return createOptimizedResponse(gson.toJson(errorResponse), Response.Status.INTERNAL_SERVER_ERROR).build();
+        } finally {
+            if (admission != null) {
+                admission.release();
+            }
+        }
+    }
+    
+    /**
+     * Log correlation id, unique per node: start time plus a sequence number
+     */
+    private static String nextRequestId(long startTime) {
+        return "PORTAL-" + Long.toString(startTime, 36) + "-" + REQUEST_SEQUENCE.incrementAndGet();
+    }
+    
+    /**
+     * The issue keys of the {@code known} parameter, or null when it is absent or lists too many keys
+     */
+    private static Set<String> knownKeys(String known) {
+        if (known == null) {
             return null;
         }
+        Set<String> keys = new HashSet<>();
+        for (String key : known.split(",")) {
+            if (!key.trim().isEmpty()) {
+                keys.add(key.trim());
+            }
+        }
+        return keys.size() <= MAX_KNOWN_KEYS ? keys : null;
+    }
+
+    private String getConfiguredJql(PortalSettings settings) {
+        String configuredJql = settings.getJql();
+        if (configuredJql != null) {
+            log.debug("Found configured JQL for {}: {}", settings.getProjectKey(), configuredJql);
+        } else {
+            log.debug("No JQL configured");
+        }
+        return configuredJql;
     }
     
     /**
-     * Creates an optimized HTTP response to avoid chunked encoding issues in load balancer environments
+     * Builds the /recent payload with diagnostics, streamed straight into a pooled UTF-8 buffer
      */
-    private Response createOptimizedResponse(String jsonContent, Response.Status status) {
-        CacheControl cacheControl = new CacheControl();
-        cacheControl.setNoCache(true);
-        cacheControl.setNoStore(true);
+    private Response createRequestsResponse(String requestId, long startTime, ApplicationUser user, String jql,
+                                            RecentRequestsLoader.Result result, HttpHeaders headers) throws IOException {
+        final RequestsPage page = result.getPage();
+        final Map<String, Object> diagnostics = createDiagnostics(requestId, startTime, user, jql, page.getRequests().size());
+        diagnostics.put("cacheHit", result.isCacheHit());
+        diagnostics.put("cacheHits", recentRequestsLoader.getCacheHits());
+        diagnostics.put("cacheMisses", recentRequestsLoader.getCacheMisses());
+        diagnostics.put("coalescedSearches", recentRequestsLoader.getCoalescedSearches());
+        diagnostics.put("stale", result.isStale());
+        diagnostics.put("staleHits", recentRequestsLoader.getStaleHits());
+        diagnostics.put("fromView", result.isFromView());
+        diagnostics.put("viewHits", recentRequestsLoader.getViewHits());
+        diagnostics.put("deltas", recentRequestsLoader.getDeltas());
+
+        long serializeStart = System.nanoTime();
+        Response.ResponseBuilder builder = JsonResponseWriter.build(Response.Status.OK, new JsonResponseWriter.JsonBody() {
+            @Override
+            public void write(JsonWriter out) throws IOException {
+                out.beginObject();
+                out.name("data");
+                JsonResponseWriter.writeRequests(out, page.getRequests());
+                out.name("nextCursor").value(page.getNextCursor());
+                out.name("version").value(result.getVersion());
+                out.name("diagnostics");
+                JsonResponseWriter.writeMap(out, diagnostics);
+                out.endObject();
+            }
+        }, headers, result.getEtag());
+        metrics.record(PortalMetrics.Stage.RECENT_SERIALIZATION, serializeStart);
+
+        log.debug("[{}] Request completed in {}ms", requestId, (System.currentTimeMillis() - startTime));
         
+        // A stale page is a stopgap; the browser must not keep it once fresh results are back
+        return builder
+                .cacheControl(result.isStale() ? HttpCaching.noStore() : HttpCaching.privateMaxAge())
+                .build();
+    }
+    
+    /**
+     * Builds a delta payload; it answers one token only, so neither the browser nor a proxy keeps it
+     */
+    private Response createDeltaResponse(final RecentRequestsLoader.Delta delta, HttpHeaders headers) throws IOException {
+        long serializeStart = System.nanoTime();
+        Response.ResponseBuilder builder = JsonResponseWriter.build(Response.Status.OK, new JsonResponseWriter.JsonBody() {
+            @Override
+            public void write(JsonWriter out) throws IOException {
+                out.beginObject();
+                out.name("delta").value(true);
+                out.name("added");
+                JsonResponseWriter.writeRequests(out, delta.getAdded());
+                out.name("changed");
+                JsonResponseWriter.writeRequests(out, delta.getChanged());
+                out.name("removed");
+                JsonResponseWriter.writeValue(out, delta.getRemoved());
+                out.name("version").value(delta.getVersion());
+                out.endObject();
+            }
+        }, headers);
+        metrics.record(PortalMetrics.Stage.RECENT_SERIALIZATION, serializeStart);
+        return builder.cacheControl(HttpCaching.noStore()).build();
+    }
+    
+    /**
+     * Creates an optimized HTTP response to avoid chunked encoding issues in load balancer environments.
+     * Responses are not cacheable unless the caller overrides the cache control.
+     */
+    private Response.ResponseBuilder createOptimizedResponse(String jsonContent, Response.Status status) {
         return Response.status(status)
                 .entity(jsonContent)
-                .type(MediaType.APPLICATION_JSON)
-                .cacheControl(cacheControl)
-                .header("Content-Length", jsonContent.getBytes().length)
-                .build();
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .cacheControl(HttpCaching.noStore())
+                .header("Content-Length", jsonContent.getBytes(StandardCharsets.UTF_8).length);
     }
     
     private Map<String, Object> createDiagnostics(String requestId, long startTime, ApplicationUser user, String jql, int resultCount) {
@@ -0,0 +1,132 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RequestChangeBroadcaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-Sent Events stream of changes to the portal request list.
+ * Each stream holds a request thread, so streams are capped per node and closed after
+ * {@value #MAX_STREAM_SECONDS} seconds; EventSource reconnects on its own. A comment line is written every
+ * {@value #HEARTBEAT_PROPERTY} seconds (default {@value #DEFAULT_HEARTBEAT_SECONDS}) to keep proxies from timing out
+ * idle connections and to detect closed clients.
+ */
+@Path("/recent/stream")
+public class PortalRequestsStreamResource {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalRequestsStreamResource.class);
+
+    static final String EVENT_STREAM = "text/event-stream";
+    static final String HEARTBEAT_PROPERTY = "wmpr.sse.heartbeatSeconds";
+    private static final int DEFAULT_HEARTBEAT_SECONDS = 20;
+    private static final int MAX_STREAM_SECONDS = 300;
+    private static final int RETRY_MILLIS = 5000;
+
+    @JiraImport
+    private final JiraAuthenticationContext authenticationContext;
+
+    private final RequestChangeBroadcaster requestChangeBroadcaster;
+
+    @Inject
+    public PortalRequestsStreamResource(JiraAuthenticationContext authenticationContext,
+                                        RequestChangeBroadcaster requestChangeBroadcaster) {
+        this.authenticationContext = authenticationContext;
+        this.requestChangeBroadcaster = requestChangeBroadcaster;
+    }
+
+    @GET
+    @Produces(EVENT_STREAM)
+    public Response stream(@QueryParam("projectKey") String projectKey, @QueryParam("portalId") String portalId) {
+        ApplicationUser user = authenticationContext.getLoggedInUser();
+        if (user == null) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity("{\"error\":\"Authentication required\"}")
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+        }
+
+        try {
+            PortalSettingsStore.normalizeProjectKey(projectKey);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("{\"error\":\"Invalid projectKey\"}")
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+        }
+
+        final RequestChangeBroadcaster.Subscription subscription =
+                requestChangeBroadcaster.subscribe(user, projectKey, portalId);
+        if (subscription == null) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("{\"error\":\"Too many open streams\"}")
+                    .type(MediaType.APPLICATION_JSON)
+                    .header("Retry-After", MAX_STREAM_SECONDS)
+                    .cacheControl(HttpCaching.noStore())
+                    .build();
+        }
+
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                try {
+                    pump(subscription, out);
+                } finally {
+                    subscription.close();
+                }
+            }
+        };
+
+        return Response.ok(output)
+                .type(EVENT_STREAM + ";charset=UTF-8")
+                .cacheControl(HttpCaching.noStore())
+                // Disables response buffering in nginx-style proxies
+                .header("X-Accel-Buffering", "no")
+                .build();
+    }
+
+    private void pump(RequestChangeBroadcaster.Subscription subscription, OutputStream out) throws IOException {
+        long heartbeatMillis = Math.max(1, Integer.getInteger(HEARTBEAT_PROPERTY, DEFAULT_HEARTBEAT_SECONDS)) * 1000L;
+        long deadline = System.currentTimeMillis() + MAX_STREAM_SECONDS * 1000L;
+
+        write(out, "retry: " + RETRY_MILLIS + "\n\n");
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                RequestChangeBroadcaster.Event event = subscription.next(heartbeatMillis, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    write(out, ": heartbeat\n\n");
+                } else if (event == RequestChangeBroadcaster.Event.CLOSE) {
+                    return;
+                } else {
+                    write(out, "event: " + event.getName() + "\ndata: " + event.getData() + "\n\n");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client went away; the write that noticed it is the normal way a stream ends
+            log.debug("Event stream closed by client: {}", e.getMessage());
+        }
+    }
+
+    private static void write(OutputStream out, String chunk) throws IOException {
+        out.write(chunk.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
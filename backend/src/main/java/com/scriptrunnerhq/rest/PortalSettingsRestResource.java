@@ -1,33 +1,47 @@
 package com.scriptrunnerhq.rest;
 
 import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.permission.GlobalPermissionKey;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.GlobalPermissionManager;
 import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.security.PermissionManager;
 import com.atlassian.jira.user.ApplicationUser;
-import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
 import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
-import com.atlassian.sal.api.pluginsettings.PluginSettings;
-import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.scriptrunnerhq.cluster.ClusterInvalidator;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.scriptrunnerhq.service.JqlProfiler;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.PortalSettingsStore;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 @Path("/settings")
 public class PortalSettingsRestResource {
 
     private static final Logger log = LoggerFactory.getLogger(PortalSettingsRestResource.class);
-    private static final String JQL_SETTINGS_KEY = "portal.jql";
-    private static final String BUTTON_SETTINGS_PREFIX = "portal.button.";
-    private static final String CONFLUENCE_SPACES_KEY = "portal.confluence.spaces";
-    private static final String DEFAULT_JQL = "project = HELP ORDER BY created DESC";
+
+    // Page size of the footer's first request, which is what the profiler times
+    private static final int FOOTER_PAGE_SIZE = 10;
 
     @JiraImport
     private final SearchService searchService;
@@ -35,8 +49,26 @@ public class PortalSettingsRestResource {
     @JiraImport
     private final JiraAuthenticationContext authenticationContext;
     
-    @ComponentImport
-    private final PluginSettingsFactory pluginSettingsFactory;
+    @JiraImport
+    private final GlobalPermissionManager globalPermissionManager;
+    
+    @JiraImport
+    private final PermissionManager permissionManager;
+    
+    @JiraImport
+    private final ProjectManager projectManager;
+    
+    private final PortalSettingsStore settingsStore;
+    
+    private final JqlQueryCache jqlQueryCache;
+    
+    private final JqlProfiler jqlProfiler;
+    
+    private final ClusterInvalidator clusterInvalidator;
+    
+    private final AdmissionControl admissionControl;
+    
+    private final PortalMetrics metrics;
     
     private final Gson gson;
 
@@ -44,16 +76,33 @@ public class PortalSettingsRestResource {
     public PortalSettingsRestResource(
             SearchService searchService,
             JiraAuthenticationContext authenticationContext,
-            PluginSettingsFactory pluginSettingsFactory) {
+            GlobalPermissionManager globalPermissionManager,
+            PermissionManager permissionManager,
+            ProjectManager projectManager,
+            PortalSettingsStore settingsStore,
+            JqlQueryCache jqlQueryCache,
+            JqlProfiler jqlProfiler,
+            ClusterInvalidator clusterInvalidator,
+            AdmissionControl admissionControl,
+            PortalMetrics metrics) {
         this.searchService = searchService;
         this.authenticationContext = authenticationContext;
-        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.globalPermissionManager = globalPermissionManager;
+        this.permissionManager = permissionManager;
+        this.projectManager = projectManager;
+        this.settingsStore = settingsStore;
+        this.jqlQueryCache = jqlQueryCache;
+        this.jqlProfiler = jqlProfiler;
+        this.clusterInvalidator = clusterInvalidator;
+        this.admissionControl = admissionControl;
+        this.metrics = metrics;
         this.gson = new Gson();
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getSettings() {
+    public Response getSettings(@QueryParam("projectKey") String projectKey, @Context Request request) {
+        long start = System.nanoTime();
         try {
             ApplicationUser user = authenticationContext.getLoggedInUser();
             if (user == null) {
@@ -62,40 +111,30 @@ public class PortalSettingsRestResource {
                         .build();
             }
 
-            PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-            
-            Map<String, Object> response = new HashMap<>();
-            
-            // Get JQL setting with default
-            String jql = (String) settings.get(JQL_SETTINGS_KEY);
-            response.put("jql", jql != null && !jql.trim().isEmpty() ? jql : DEFAULT_JQL);
-            response.put("defaultJql", DEFAULT_JQL);
-            
-            // Get button settings
-            for (int i = 1; i <= 5; i++) {
-                String buttonLabel = (String) settings.get(BUTTON_SETTINGS_PREFIX + i + ".label");
-                String buttonUrl = (String) settings.get(BUTTON_SETTINGS_PREFIX + i + ".url");
-                response.put("button" + i + "Label", buttonLabel != null ? buttonLabel : "");
-                response.put("button" + i + "Url", buttonUrl != null ? buttonUrl : "");
+            // Served from the in-memory snapshot, pre-serialized when it was loaded or saved
+            PortalSettings settings;
+            try {
+                settings = settingsStore.get(projectKey);
+            } catch (IllegalArgumentException e) {
+                return badRequest(e.getMessage());
             }
-            
-            // Get Confluence spaces setting
-            String confluenceSpacesJson = (String) settings.get(CONFLUENCE_SPACES_KEY);
-            if (confluenceSpacesJson != null && !confluenceSpacesJson.trim().isEmpty()) {
-                try {
-                    List<String> confluenceSpaces = gson.fromJson(confluenceSpacesJson, List.class);
-                    response.put("confluenceSpaces", confluenceSpaces);
-                } catch (Exception e) {
-                    log.warn("Failed to parse confluence spaces JSON: {}", e.getMessage());
-                    response.put("confluenceSpaces", new ArrayList<String>());
-                }
-            } else {
-                response.put("confluenceSpaces", new ArrayList<String>());
+            EntityTag etag = new EntityTag("settings-" + (settings.getProjectKey() != null ? settings.getProjectKey() : "global")
+                    + "-" + settings.getVersion());
+            Response notModified = HttpCaching.notModified(request, etag);
+            if (notModified != null) {
+                metrics.record(PortalMetrics.Stage.SETTINGS_READ, start);
+                return notModified;
             }
             
-            return Response.ok(gson.toJson(response)).build();
+            Response response = Response.ok(settings.getJson())
+                    .tag(etag)
+                    .cacheControl(HttpCaching.privateMaxAge())
+                    .build();
+            metrics.record(PortalMetrics.Stage.SETTINGS_READ, start);
+            return response;
             
         } catch (Exception e) {
+            metrics.recordError(PortalMetrics.Stage.SETTINGS_READ);
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("error", "Failed to load settings: " + e.getMessage());
             return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
@@ -131,15 +170,79 @@ public class PortalSettingsRestResource {
                         .build();
             }
             
-            String jql = (String) request.get("jql");
-            List<String> confluenceSpaces = (List<String>) request.get("confluenceSpaces");
+            final String projectKey = (String) request.get("projectKey");
+            Response forbidden = checkCanAdminister(user, projectKey);
+            if (forbidden != null) {
+                return forbidden;
+            }
+            final String jql = (String) request.get("jql");
+            final List<String> confluenceSpaces = (List<String>) request.get("confluenceSpaces");
+            Integer maxPageSize = null;
             
-            log.debug("Parsed settings - jql: {}, confluenceSpaces: {}", jql, confluenceSpaces);
+            log.debug("Parsed settings - projectKey: {}, jql: {}, confluenceSpaces: {}", projectKey, jql, confluenceSpaces);
+            
+            // Validate the /recent page size cap if provided
+            Object maxPageSizeValue = request.get("maxPageSize");
+            if (maxPageSizeValue != null) {
+                if (!(maxPageSizeValue instanceof Number)
+                        || ((Number) maxPageSizeValue).intValue() < 1
+                        || ((Number) maxPageSizeValue).intValue() > PortalSettings.MAX_PAGE_SIZE_LIMIT) {
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", "maxPageSize must be between 1 and " + PortalSettings.MAX_PAGE_SIZE_LIMIT);
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity(gson.toJson(errorResponse))
+                            .build();
+                }
+                maxPageSize = ((Number) maxPageSizeValue).intValue();
+            }
+            
+            // Admission limits apply to the whole node, so they are only taken from the global settings
+            final Integer requestsPerMinute;
+            final Integer requestBurst;
+            final Integer maxConcurrentSearches;
+            try {
+                requestsPerMinute = intSetting(request, "requestsPerMinute", 0, PortalSettings.MAX_REQUESTS_PER_MINUTE_LIMIT);
+                requestBurst = intSetting(request, "requestBurst", 1, PortalSettings.MAX_REQUEST_BURST_LIMIT);
+                maxConcurrentSearches = intSetting(request, "maxConcurrentSearches", 0,
+                        PortalSettings.MAX_CONCURRENT_SEARCHES_LIMIT);
+                if ((requestsPerMinute != null || requestBurst != null || maxConcurrentSearches != null)
+                        && PortalSettingsStore.normalizeProjectKey(projectKey) != null) {
+                    return badRequest("Request limits can only be set in the global settings");
+                }
+            } catch (IllegalArgumentException e) {
+                return badRequest(e.getMessage());
+            }
+            
+            // Customer portals showing this project's requests, as a list or a comma-separated string
+            Object portalIdsValue = request.get("portalIds");
+            List<String> portalIds = null;
+            if (portalIdsValue != null) {
+                portalIds = new ArrayList<>();
+                Iterable<?> values = portalIdsValue instanceof List
+                        ? (List<?>) portalIdsValue
+                        : Arrays.asList(String.valueOf(portalIdsValue).split(","));
+                for (Object value : values) {
+                    String portalId = value instanceof Number
+                            ? String.valueOf(((Number) value).longValue())
+                            : String.valueOf(value).trim();
+                    if (!portalId.isEmpty() && !portalIds.contains(portalId)) {
+                        portalIds.add(portalId);
+                    }
+                }
+            }
+            
+            // Buttons sent along with the general settings are saved in the same write
+            List<String> buttonLabels = new ArrayList<>();
+            List<String> buttonUrls = new ArrayList<>();
+            for (int i = 1; i <= PortalSettings.BUTTON_COUNT; i++) {
+                buttonLabels.add((String) request.get("button" + i + "Label"));
+                buttonUrls.add((String) request.get("button" + i + "Url"));
+            }
             
             // Validate JQL if provided
             if (jql != null && !jql.trim().isEmpty()) {
                 try {
-                    SearchService.ParseResult parseResult = searchService.parseQuery(user, jql);
+                    JqlQueryCache.ParsedJql parseResult = jqlQueryCache.parse(user, jql);
                     if (!parseResult.isValid()) {
                         log.warn("JQL validation failed: {}", parseResult.getErrors());
                         Map<String, Object> errorResponse = new HashMap<>();
@@ -149,6 +252,23 @@ public class PortalSettingsRestResource {
                                 .entity(gson.toJson(errorResponse))
                                 .build();
                     }
+                    
+                    // A changed query must not be too expensive for the footer
+                    if (!jql.equals(settingsStore.get(projectKey).getJql())) {
+                        JqlProfiler.Profile profile = profileQuery(user, parseResult);
+                        if (profile != null && profile.isBlocked()) {
+                            log.warn("Refused to save expensive JQL {}: {}", jql, profile.getWarnings());
+                            Map<String, Object> errorResponse = new HashMap<>();
+                            errorResponse.put("error", "JQL query is too expensive for the portal");
+                            errorResponse.put("details", profile.getWarnings());
+                            errorResponse.put("profile", profile.toMap());
+                            return Response.status(Response.Status.BAD_REQUEST)
+                                    .entity(gson.toJson(errorResponse))
+                                    .build();
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    return badRequest(e.getMessage());
                 } catch (Exception e) {
                     log.error("JQL validation error: {}", e.getMessage());
                     Map<String, Object> errorResponse = new HashMap<>();
@@ -159,21 +279,57 @@ public class PortalSettingsRestResource {
                 }
             }
             
-            // Save settings
+            // Save settings as one document
+            final Integer newMaxPageSize = maxPageSize;
+            final List<String> newPortalIds = portalIds;
+            final List<String> newButtonLabels = buttonLabels;
+            final List<String> newButtonUrls = buttonUrls;
+            long writeStart = System.nanoTime();
             try {
-                PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
+                PortalSettings saved = settingsStore.save(projectKey, new PortalSettingsStore.Change() {
+                    @Override
+                    public void apply(PortalSettings current, PortalSettings.Builder next) {
+                        if (jql != null) {
+                            next.jql(jql);
+                        }
+                        if (confluenceSpaces != null) {
+                            next.confluenceSpaces(confluenceSpaces);
+                        }
+                        if (newMaxPageSize != null) {
+                            next.maxPageSize(newMaxPageSize);
+                        }
+                        if (newPortalIds != null) {
+                            next.portalIds(newPortalIds);
+                        }
+                        if (requestsPerMinute != null) {
+                            next.requestsPerMinute(requestsPerMinute);
+                        }
+                        if (requestBurst != null) {
+                            next.requestBurst(requestBurst);
+                        }
+                        if (maxConcurrentSearches != null) {
+                            next.maxConcurrentSearches(maxConcurrentSearches);
+                        }
+                        next.buttonLabels(PortalSettingsStore.merge(current.getButtonLabels(), newButtonLabels));
+                        next.buttonUrls(PortalSettingsStore.merge(current.getButtonUrls(), newButtonUrls));
+                    }
+                });
+                metrics.record(PortalMetrics.Stage.SETTINGS_WRITE, writeStart);
+                clusterInvalidator.settingsSaved(saved);
                 
                 if (jql != null) {
-                    settings.put(JQL_SETTINGS_KEY, jql.trim());
+                    jqlQueryCache.invalidateAll();
                     log.debug("Saved JQL: {}", jql);
                 }
                 
                 if (confluenceSpaces != null) {
-                    String confluenceSpacesJson = gson.toJson(confluenceSpaces);
-                    settings.put(CONFLUENCE_SPACES_KEY, confluenceSpacesJson);
                     log.debug("Saved Confluence spaces: {}", confluenceSpaces);
                 }
+            } catch (IllegalArgumentException e) {
+                // Malformed project key, or a portal id that is already taken
+                return badRequest(e.getMessage());
             } catch (Exception e) {
+                metrics.recordError(PortalMetrics.Stage.SETTINGS_WRITE);
                 log.error("Failed to save settings: {}", e.getMessage());
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "Failed to save settings: " + e.getMessage());
@@ -228,24 +384,31 @@ public class PortalSettingsRestResource {
                         .build();
             }
             
+            String projectKey = (String) request.get("projectKey");
+            Response forbidden = checkCanAdminister(user, projectKey);
+            if (forbidden != null) {
+                return forbidden;
+            }
+            
             // Save button settings
+            long writeStart = System.nanoTime();
             try {
-                PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
-                
-                for (int i = 1; i <= 5; i++) {
-                    String buttonLabel = (String) request.get("button" + i + "Label");
-                    String buttonUrl = (String) request.get("button" + i + "Url");
-                    
-                    if (buttonLabel != null) {
-                        settings.put(BUTTON_SETTINGS_PREFIX + i + ".label", buttonLabel.trim());
-                    }
-                    if (buttonUrl != null) {
-                        settings.put(BUTTON_SETTINGS_PREFIX + i + ".url", buttonUrl.trim());
-                    }
+                List<String> buttonLabels = new ArrayList<>();
+                List<String> buttonUrls = new ArrayList<>();
+                for (int i = 1; i <= PortalSettings.BUTTON_COUNT; i++) {
+                    buttonLabels.add((String) request.get("button" + i + "Label"));
+                    buttonUrls.add((String) request.get("button" + i + "Url"));
                 }
                 
+                PortalSettings saved = settingsStore.saveButtons(projectKey, buttonLabels, buttonUrls);
+                metrics.record(PortalMetrics.Stage.SETTINGS_WRITE, writeStart);
+                clusterInvalidator.settingsSaved(saved);
+                
                 log.debug("Saved button settings");
+            } catch (IllegalArgumentException e) {
+                return badRequest(e.getMessage());
             } catch (Exception e) {
+                metrics.recordError(PortalMetrics.Stage.SETTINGS_WRITE);
                 log.error("Failed to save button settings: {}", e.getMessage());
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "Failed to save button settings: " + e.getMessage());
@@ -272,58 +435,71 @@ public class PortalSettingsRestResource {
         }
     }
 
-    @GET
-    @Path("/confluence-spaces")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Response getConfluenceSpaces() {
+    /**
+     * Returns null when the user may change the settings of the scope, otherwise the error to answer with.
+     * The global settings, including the node-wide request limits, need a Jira administrator; a project's settings
+     * may also be changed by an administrator of that project.
+     */
+    private Response checkCanAdminister(ApplicationUser user, String projectKey) {
+        if (globalPermissionManager.hasPermission(GlobalPermissionKey.ADMINISTER, user)) {
+            return null;
+        }
+        String key;
         try {
-            ApplicationUser user = authenticationContext.getLoggedInUser();
-            if (user == null) {
-                return Response.status(Response.Status.UNAUTHORIZED)
-                        .entity("{\"error\":\"Authentication required\"}")
-                        .build();
-            }
-
-            // For now, return mock data since we don't have Confluence API access
-            // In a real implementation, this would call the Confluence API
-            List<Map<String, String>> spaces = new ArrayList<>();
-            
-            // Mock spaces that the user would typically have access to
-            spaces.add(createSpaceOption("HELP", "Help Documentation"));
-            spaces.add(createSpaceOption("SUPPORT", "Support Knowledge Base"));
-            spaces.add(createSpaceOption("TRAINING", "Training Materials"));
-            spaces.add(createSpaceOption("PROCEDURES", "Standard Procedures"));
-            spaces.add(createSpaceOption("FAQ", "Frequently Asked Questions"));
-            spaces.add(createSpaceOption("GUIDES", "User Guides"));
-            spaces.add(createSpaceOption("POLICIES", "Company Policies"));
-            spaces.add(createSpaceOption("TROUBLESHOOTING", "Troubleshooting Guide"));
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("spaces", spaces);
-            
-            return Response.ok(gson.toJson(response)).build();
-            
-        } catch (Exception e) {
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "Failed to fetch Confluence spaces: " + e.getMessage());
-            return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                    .entity(gson.toJson(errorResponse))
-                    .build();
+            key = PortalSettingsStore.normalizeProjectKey(projectKey);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e.getMessage());
+        }
+        Project project = key != null ? projectManager.getProjectObjByKey(key) : null;
+        if (project != null && permissionManager.hasPermission(ProjectPermissions.ADMINISTER_PROJECTS, project, user)) {
+            return null;
         }
+        return Response.status(Response.Status.FORBIDDEN)
+                .entity("{\"error\":\"Administrator privileges required\"}")
+                .build();
     }
     
-    private Map<String, String> createSpaceOption(String key, String name) {
-        Map<String, String> space = new HashMap<>();
-        space.put("value", key);
-        space.put("label", name + " (" + key + ")");
-        return space;
+    private Response badRequest(String message) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", message);
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(gson.toJson(errorResponse))
+                .build();
     }
-
+    
+    /**
+     * Whole number setting of the request body, or null when absent.
+     * Throws IllegalArgumentException when it is not a number within the bounds.
+     */
+    private static Integer intSetting(Map<String, Object> request, String name, int min, int max) {
+        Object value = request.get(name);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Number) || ((Number) value).intValue() < min || ((Number) value).intValue() > max) {
+            throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+        }
+        return ((Number) value).intValue();
+    }
+    
+    /**
+     * Profiles a valid query for the footer, or returns null when the search fails; a failed profile blocks nothing
+     */
+    private JqlProfiler.Profile profileQuery(ApplicationUser user, JqlQueryCache.ParsedJql parsed) {
+        try {
+            return jqlProfiler.profile(user, parsed.getQuery(), FOOTER_PAGE_SIZE);
+        } catch (SearchException | RuntimeException e) {
+            log.warn("Failed to profile JQL: {}", e.getMessage());
+            return null;
+        }
+    }
+    
     @POST
     @Path("/validate-jql")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response validateJql(String requestBody) {
+        AdmissionControl.Admission admission = null;
         try {
             ApplicationUser user = authenticationContext.getLoggedInUser();
             if (user == null) {
@@ -333,6 +509,11 @@ public class PortalSettingsRestResource {
             }
 
             Map<String, Object> request = gson.fromJson(requestBody, Map.class);
+            // Profiling searches and the parse is cached, so only those who may save the JQL can try it
+            Response forbidden = checkCanAdminister(user, (String) request.get("projectKey"));
+            if (forbidden != null) {
+                return forbidden;
+            }
             String jql = (String) request.get("jql");
             
             if (jql == null || jql.trim().isEmpty()) {
@@ -342,7 +523,13 @@ public class PortalSettingsRestResource {
                 return Response.ok(gson.toJson(errorResponse)).build();
             }
             
-            SearchService.ParseResult parseResult = searchService.parseQuery(user, jql);
+            // Each call parses and profiles the query, so a loop is refused outright
+            admission = admissionControl.admit(user);
+            if (!admission.isAdmitted()) {
+                return TooManyRequests.response(admission, null);
+            }
+            
+            JqlQueryCache.ParsedJql parseResult = jqlQueryCache.parse(user, jql);
             
             Map<String, Object> response = new HashMap<>();
             response.put("valid", parseResult.isValid());
@@ -351,6 +538,16 @@ public class PortalSettingsRestResource {
                 response.put("errors", parseResult.getErrors().toString());
             } else {
                 response.put("message", "JQL is valid");
+                // Same measurements and verdict as on save
+                JqlProfiler.Profile profile = profileQuery(user, parseResult);
+                if (profile != null) {
+                    response.put("profile", profile.toMap());
+                    response.put("warnings", profile.getWarnings());
+                    response.put("blocked", profile.isBlocked());
+                    if (profile.isBlocked()) {
+                        response.put("message", "JQL is valid but too expensive for the portal");
+                    }
+                }
             }
             
             return Response.ok(gson.toJson(response)).build();
@@ -360,6 +557,10 @@ public class PortalSettingsRestResource {
             errorResponse.put("valid", false);
             errorResponse.put("error", "Failed to validate JQL: " + e.getMessage());
             return Response.ok(gson.toJson(errorResponse)).build();
+        } finally {
+            if (admission != null) {
+                admission.release();
+            }
         }
     }
 } 
\ No newline at end of file
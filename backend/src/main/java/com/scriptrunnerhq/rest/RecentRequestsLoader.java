@@ -0,0 +1,359 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.PageCursor;
+import com.scriptrunnerhq.service.PermissionContext;
+import com.scriptrunnerhq.service.RecentRequestsCache;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RecentRequestsView;
+import com.scriptrunnerhq.service.RequestChangeLog;
+import com.scriptrunnerhq.service.RequestRow;
+import com.scriptrunnerhq.service.SearchCoalescer;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.core.EntityTag;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads one page of portal requests through the result cache. One instance serves both the /recent and /bootstrap
+ * resources, so they share its counters.
+ */
+@Named
+public class RecentRequestsLoader {
+
+    static final String MAX_DELTA_CHANGES_PROPERTY = "wmpr.recent.delta.maxChanges";
+    private static final int DEFAULT_MAX_DELTA_CHANGES = 100;
+
+    private final RecentRequestsCache recentRequestsCache;
+    private final JqlQueryCache jqlQueryCache;
+    private final RecentRequestsSearcher recentRequestsSearcher;
+    private final RecentRequestsView recentRequestsView;
+    private final PermissionContext permissionContext;
+    private final SearchCoalescer searchCoalescer;
+    private final RequestChangeLog changeLog;
+    private final PortalMetrics metrics;
+
+    @Inject
+    public RecentRequestsLoader(RecentRequestsCache recentRequestsCache, JqlQueryCache jqlQueryCache,
+                                RecentRequestsSearcher recentRequestsSearcher, RecentRequestsView recentRequestsView,
+                                PermissionContext permissionContext, SearchCoalescer searchCoalescer,
+                                RequestChangeLog changeLog, PortalMetrics metrics) {
+        this.recentRequestsCache = recentRequestsCache;
+        this.jqlQueryCache = jqlQueryCache;
+        this.recentRequestsSearcher = recentRequestsSearcher;
+        this.recentRequestsView = recentRequestsView;
+        this.permissionContext = permissionContext;
+        this.searchCoalescer = searchCoalescer;
+        this.changeLog = changeLog;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the cached page when fresh, then the page read from the JQL's materialized view, otherwise parses and
+     * runs the JQL and caches the page.
+     * Searches run off the request thread with the caller's permissions, and concurrent misses for the same JQL and
+     * paging share one search when the callers may browse the same issues (see {@link #permissionKey}). When the
+     * search misses its deadline the last good page is returned marked stale, and the search refreshes the cache when
+     * it completes; without a last good page the result is unavailable.
+     * Throws IllegalArgumentException when the cursor does not fit the query's sort order.
+     * Every page carries the token of the change log version taken before it was read, for a later {@link #loadDelta}.
+     */
+    Result load(final ApplicationUser user, final String jql, final int pageSize, final PageCursor cursor) throws SearchException {
+        final String queryKey = jql + '\n' + pageSize + '\n' + (cursor != null ? cursor.encode() : "");
+        RecentRequestsCache.Entry cached = recentRequestsCache.get(user, queryKey);
+        if (cached != null) {
+            return new Result(cached.getPage(), new EntityTag(cached.getEtag(), true), true, false, false, null,
+                    changeLog.token(cached.getVersion(), jql));
+        }
+
+        final long version = changeLog.getVersion();
+        RequestsPage viewPage = recentRequestsView.read(user, jql, pageSize, cursor);
+        if (viewPage != null) {
+            EntityTag etag = HttpCaching.requestsTag(queryKey, viewPage);
+            recentRequestsCache.put(user, queryKey, viewPage, etag.getValue(), version);
+            return new Result(viewPage, etag, false, false, true, null, changeLog.token(version, jql));
+        }
+
+        try {
+            Result result = searchCoalescer.execute(permissionKey(user, jql) + '\n' + queryKey, new Callable<Result>() {
+                @Override
+                public Result call() throws SearchException {
+                    return search(user, jql, pageSize, cursor, queryKey, version);
+                }
+            });
+            if (result.isValid()) {
+                // Cached for every caller, which may have joined the search of another user, at the version it read
+                recentRequestsCache.put(user, queryKey, result.getPage(), result.getEtag().getValue(),
+                        changeLog.parseToken(result.getVersion(), jql));
+            }
+            return result;
+        } catch (TimeoutException e) {
+            metrics.recordError(PortalMetrics.Stage.RECENT_SEARCH);
+            RecentRequestsCache.Entry stale = recentRequestsCache.getStale(user, queryKey);
+            if (stale == null) {
+                return Result.unavailable();
+            }
+            return new Result(stale.getPage(), new EntityTag(stale.getEtag(), true), true, true, false, null,
+                    changeLog.token(stale.getVersion(), jql));
+        }
+    }
+
+    /**
+     * Returns the cached page, fresh or else stale, without searching, or null when none is cached. Used for
+     * callers that were refused admission.
+     */
+    Result loadCached(ApplicationUser user, String jql, int pageSize, PageCursor cursor) {
+        String queryKey = jql + '\n' + pageSize + '\n' + (cursor != null ? cursor.encode() : "");
+        RecentRequestsCache.Entry cached = recentRequestsCache.get(user, queryKey);
+        boolean stale = false;
+        if (cached == null) {
+            cached = recentRequestsCache.getStale(user, queryKey);
+            stale = true;
+        }
+        if (cached == null) {
+            return null;
+        }
+        return new Result(cached.getPage(), new EntityTag(cached.getEtag(), true), true, stale, false, null,
+                changeLog.token(cached.getVersion(), jql));
+    }
+
+    /**
+     * The permissions a search of the JQL depends on: the user's {@link PermissionContext.Scope}, shared by every user
+     * who may browse the same projects and security levels, or the user alone when the JQL or what they may browse
+     * depends on who they are
+     */
+    private String permissionKey(ApplicationUser user, String jql) {
+        PermissionContext.Scope scope = JqlQueryCache.isUserRelative(jql) ? null : permissionContext.scopeOf(user);
+        return scope != null ? "scope:" + scope.getFingerprint() : "user:" + user.getKey();
+    }
+
+    private Result search(ApplicationUser user, String jql, int pageSize, PageCursor cursor, String queryKey,
+                          long version) throws SearchException {
+        long parseStart = System.nanoTime();
+        JqlQueryCache.ParsedJql parseResult = jqlQueryCache.parse(user, jql);
+        metrics.record(PortalMetrics.Stage.RECENT_PARSE, parseStart);
+        if (!parseResult.isValid()) {
+            metrics.recordError(PortalMetrics.Stage.RECENT_PARSE);
+            return new Result(null, null, false, false, false, parseResult.getErrors().toString(), null);
+        }
+
+        // Execute search for one page, reading only the needed fields from the index
+        RequestsPage page = recentRequestsSearcher.searchPage(user, parseResult.getQuery(), pageSize, cursor);
+        EntityTag etag = HttpCaching.requestsTag(queryKey, page);
+        recentRequestsCache.put(user, queryKey, page, etag.getValue(), version);
+        return new Result(page, etag, false, false, false, null, changeLog.token(version, jql));
+    }
+
+    /**
+     * Returns the requests added, changed and removed since the token of an earlier response, read by searching
+     * only the changed issues, or null when the token is not answered from the change log and the client needs a
+     * full page.
+     * Issues created since that match the JQL are added, and other changed issues that still match are changed.
+     * Issues that were deleted, no longer match or are no longer visible to the user are removed, but only when they
+     * are among the {@code known} keys the client holds, so the keys of other users' issues are never sent. Without
+     * the known keys, a change that may be a removal is answered with a full page.
+     */
+    Delta loadDelta(ApplicationUser user, String jql, String since, Set<String> known) throws SearchException {
+        long version = changeLog.getVersion();
+        int maxChanges = Math.max(1, Integer.getInteger(MAX_DELTA_CHANGES_PROPERTY, DEFAULT_MAX_DELTA_CHANGES));
+        Map<String, RequestChangeLog.ChangeType> changes = changeLog.since(changeLog.parseToken(since, jql), maxChanges);
+        if (changes == null) {
+            return null;
+        }
+
+        Set<String> candidates = new LinkedHashSet<>();
+        for (Map.Entry<String, RequestChangeLog.ChangeType> change : changes.entrySet()) {
+            if (change.getValue() != RequestChangeLog.ChangeType.DELETED) {
+                candidates.add(change.getKey());
+            }
+        }
+        Map<String, ServiceDeskRequest> matches = new HashMap<>();
+        if (!candidates.isEmpty()) {
+            long parseStart = System.nanoTime();
+            JqlQueryCache.ParsedJql parseResult = jqlQueryCache.parse(user, jql);
+            metrics.record(PortalMetrics.Stage.RECENT_PARSE, parseStart);
+            if (!parseResult.isValid()) {
+                // The full load reports the errors
+                return null;
+            }
+            long searchStart = System.nanoTime();
+            List<RequestRow> rows;
+            try {
+                rows = recentRequestsSearcher.findVisibleRows(user, parseResult.getQuery(), candidates);
+            } catch (SearchException | RuntimeException e) {
+                metrics.recordError(PortalMetrics.Stage.RECENT_SEARCH);
+                throw e;
+            }
+            metrics.record(PortalMetrics.Stage.RECENT_SEARCH, searchStart);
+            for (RequestRow row : rows) {
+                matches.put(row.getKey(), recentRequestsSearcher.toRequest(row));
+            }
+        }
+
+        List<ServiceDeskRequest> added = new ArrayList<>();
+        List<ServiceDeskRequest> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<String, RequestChangeLog.ChangeType> change : changes.entrySet()) {
+            ServiceDeskRequest request = matches.get(change.getKey());
+            if (request == null) {
+                if (known == null) {
+                    return null;
+                }
+                if (known.contains(change.getKey())) {
+                    removed.add(change.getKey());
+                }
+            } else if (change.getValue() == RequestChangeLog.ChangeType.CREATED) {
+                added.add(request);
+            } else {
+                changed.add(request);
+            }
+        }
+        return new Delta(added, changed, removed, changeLog.token(version, jql));
+    }
+
+    long getCacheHits() {
+        return recentRequestsCache.getHits();
+    }
+
+    long getCacheMisses() {
+        return recentRequestsCache.getMisses();
+    }
+
+    long getCoalescedSearches() {
+        return searchCoalescer.getCoalesced();
+    }
+
+    long getStaleHits() {
+        return recentRequestsCache.getStaleHits();
+    }
+
+    long getViewHits() {
+        return recentRequestsView.getHits();
+    }
+
+    long getDeltas() {
+        return changeLog.getDeltas();
+    }
+
+    /**
+     * A loaded page with its entity tag, the JQL errors when the configured query is invalid, or neither when the
+     * search timed out with no last good page to fall back on
+     */
+    static final class Result {
+        private final RequestsPage page;
+        private final EntityTag etag;
+        private final boolean cacheHit;
+        private final boolean stale;
+        private final boolean fromView;
+        private final String jqlErrors;
+        private final String version;
+
+        private Result(RequestsPage page, EntityTag etag, boolean cacheHit, boolean stale, boolean fromView,
+                       String jqlErrors, String version) {
+            this.page = page;
+            this.etag = etag;
+            this.cacheHit = cacheHit;
+            this.stale = stale;
+            this.fromView = fromView;
+            this.jqlErrors = jqlErrors;
+            this.version = version;
+        }
+
+        private static Result unavailable() {
+            return new Result(null, null, false, false, false, null, null);
+        }
+
+        boolean isValid() {
+            return page != null;
+        }
+
+        /**
+         * True when the search timed out; neither a page nor JQL errors are available
+         */
+        boolean isUnavailable() {
+            return page == null && jqlErrors == null;
+        }
+
+        /**
+         * True when the page is the last good result, served because a fresh search missed its deadline
+         */
+        boolean isStale() {
+            return stale;
+        }
+
+        RequestsPage getPage() {
+            return page;
+        }
+
+        EntityTag getEtag() {
+            return etag;
+        }
+
+        boolean isCacheHit() {
+            return cacheHit;
+        }
+
+        /**
+         * True when the page was read from the materialized view instead of searched
+         */
+        boolean isFromView() {
+            return fromView;
+        }
+
+        String getJqlErrors() {
+            return jqlErrors;
+        }
+
+        /**
+         * Change log token of the page, sent back as {@code since} to ask for the changes after it
+         */
+        String getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Requests added, changed and removed since a token, with the token of the state they bring the client to
+     */
+    static final class Delta {
+        private final List<ServiceDeskRequest> added;
+        private final List<ServiceDeskRequest> changed;
+        private final List<String> removed;
+        private final String version;
+
+        private Delta(List<ServiceDeskRequest> added, List<ServiceDeskRequest> changed, List<String> removed,
+                      String version) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+            this.version = version;
+        }
+
+        List<ServiceDeskRequest> getAdded() {
+            return added;
+        }
+
+        List<ServiceDeskRequest> getChanged() {
+            return changed;
+        }
+
+        /**
+         * Keys of the requests to drop from the list
+         */
+        List<String> getRemoved() {
+            return removed;
+        }
+
+        String getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.scriptrunnerhq.rest;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.RequestSummary;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import com.scriptrunnerhq.service.SearchCoalescer;
+
+import javax.ws.rs.core.EntityTag;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads the status counts of the portal query through the summary cache, for the /recent/summary resource.
+ */
+final class RequestSummaryLoader {
+
+    private final RequestSummaryCache requestSummaryCache;
+    private final JqlQueryCache jqlQueryCache;
+    private final RecentRequestsSearcher recentRequestsSearcher;
+    private final SearchCoalescer searchCoalescer;
+    private final PortalMetrics metrics;
+
+    RequestSummaryLoader(RequestSummaryCache requestSummaryCache, JqlQueryCache jqlQueryCache,
+                         RecentRequestsSearcher recentRequestsSearcher, SearchCoalescer searchCoalescer,
+                         PortalMetrics metrics) {
+        this.requestSummaryCache = requestSummaryCache;
+        this.jqlQueryCache = jqlQueryCache;
+        this.recentRequestsSearcher = recentRequestsSearcher;
+        this.searchCoalescer = searchCoalescer;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the cached summary when fresh, otherwise parses the JQL, counts its hits and caches the summary.
+     * Concurrent misses for the same user and query share one count, run off the request thread. When the count
+     * misses its deadline the last good summary is returned marked stale; without one the result is unavailable.
+     */
+    Result load(final ApplicationUser user, final String jql) throws SearchException {
+        RequestSummaryCache.Entry cached = requestSummaryCache.get(user, jql);
+        if (cached != null) {
+            return new Result(cached.getSummary(), new EntityTag(cached.getEtag()), true, false, null);
+        }
+
+        try {
+            // The prefix keeps counts apart from /recent pages of the same user in the coalescer
+            return searchCoalescer.execute("summary:" + user.getKey() + '\n' + jql, new Callable<Result>() {
+                @Override
+                public Result call() throws SearchException {
+                    return count(user, jql);
+                }
+            });
+        } catch (TimeoutException e) {
+            metrics.recordError(PortalMetrics.Stage.SUMMARY_SEARCH);
+            RequestSummaryCache.Entry stale = requestSummaryCache.getStale(user, jql);
+            if (stale == null) {
+                return Result.unavailable();
+            }
+            return new Result(stale.getSummary(), new EntityTag(stale.getEtag()), true, true, null);
+        }
+    }
+
+    /**
+     * Returns the cached summary, fresh or else stale, without counting, or null when none is cached. Used for
+     * callers that were refused admission.
+     */
+    Result loadCached(ApplicationUser user, String jql) {
+        RequestSummaryCache.Entry cached = requestSummaryCache.get(user, jql);
+        boolean stale = false;
+        if (cached == null) {
+            cached = requestSummaryCache.getStale(user, jql);
+            stale = true;
+        }
+        if (cached == null) {
+            return null;
+        }
+        return new Result(cached.getSummary(), new EntityTag(cached.getEtag()), true, stale, null);
+    }
+
+    private Result count(ApplicationUser user, String jql) throws SearchException {
+        JqlQueryCache.ParsedJql parseResult = jqlQueryCache.parse(user, jql);
+        if (!parseResult.isValid()) {
+            return new Result(null, null, false, false, parseResult.getErrors().toString());
+        }
+
+        RequestSummary summary = recentRequestsSearcher.summarize(user, parseResult.getQuery());
+        EntityTag etag = HttpCaching.summaryTag(jql, summary);
+        requestSummaryCache.put(user, jql, summary, etag.getValue());
+        return new Result(summary, etag, false, false, null);
+    }
+
+    /**
+     * A summary with its entity tag, the JQL errors when the configured query is invalid, or neither when the count
+     * timed out with no last good summary to fall back on
+     */
+    static final class Result {
+        private final RequestSummary summary;
+        private final EntityTag etag;
+        private final boolean cacheHit;
+        private final boolean stale;
+        private final String jqlErrors;
+
+        private Result(RequestSummary summary, EntityTag etag, boolean cacheHit, boolean stale, String jqlErrors) {
+            this.summary = summary;
+            this.etag = etag;
+            this.cacheHit = cacheHit;
+            this.stale = stale;
+            this.jqlErrors = jqlErrors;
+        }
+
+        private static Result unavailable() {
+            return new Result(null, null, false, false, null);
+        }
+
+        boolean isValid() {
+            return summary != null;
+        }
+
+        /**
+         * True when the count timed out; neither a summary nor JQL errors are available
+         */
+        boolean isUnavailable() {
+            return summary == null && jqlErrors == null;
+        }
+
+        /**
+         * True when the summary is the last good result, served because a fresh count missed its deadline
+         */
+        boolean isStale() {
+            return stale;
+        }
+
+        RequestSummary getSummary() {
+            return summary;
+        }
+
+        EntityTag getEtag() {
+            return etag;
+        }
+
+        boolean isCacheHit() {
+            return cacheHit;
+        }
+
+        String getJqlErrors() {
+            return jqlErrors;
+        }
+    }
+}
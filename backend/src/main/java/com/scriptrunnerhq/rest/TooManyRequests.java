@@ -0,0 +1,43 @@
+package com.scriptrunnerhq.rest;
+
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.google.gson.Gson;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The 429 response for calls refused by {@link AdmissionControl}, built without touching the index.
+ */
+final class TooManyRequests {
+
+    // Not in JAX-RS 1.1's Response.Status
+    static final int STATUS = 429;
+
+    private static final Gson GSON = new Gson();
+
+    private TooManyRequests() {
+    }
+
+    static Response response(AdmissionControl.Admission admission, String requestId) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "Too many requests");
+        body.put("limit", admission.getLimit().name().toLowerCase(Locale.ROOT));
+        body.put("retryAfter", admission.getRetryAfterSeconds());
+        if (requestId != null) {
+            body.put("requestId", requestId);
+        }
+        String json = GSON.toJson(body);
+        return Response.status(STATUS)
+                .entity(json)
+                .type(MediaType.APPLICATION_JSON + ";charset=UTF-8")
+                .cacheControl(HttpCaching.noStore())
+                .header("Retry-After", admission.getRetryAfterSeconds())
+                .header("Content-Length", json.getBytes(StandardCharsets.UTF_8).length)
+                .build();
+    }
+}
@@ -0,0 +1,213 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.model.PortalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for the search-backed resources, so one client calling in a loop cannot tie up the index.
+ * Each user has a token bucket refilled at the default scope's {@link PortalSettings#getRequestsPerMinute()} and
+ * holding up to {@link PortalSettings#getRequestBurst()} calls. A bucket is a single {@link AtomicLong} holding the
+ * time at which it will be full again, updated by compare-and-set, so admission takes no lock. Buckets are spread
+ * over {@value #STRIPES} maps; a map that reaches its share of {@value #MAX_USERS_PROPERTY} users drops the buckets
+ * that have refilled, which is all an idle bucket would tell. On top of that, at most
+ * {@link PortalSettings#getMaxConcurrentSearches()} admitted calls run at once on this node.
+ * <p>
+ * Limits are per node. They are read from the settings snapshot on every call, so a save applies right away.
+ */
+@Named
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    public static final String MAX_USERS_PROPERTY = "wmpr.admission.maxUsers";
+    private static final int DEFAULT_MAX_USERS = 100_000;
+    private static final int STRIPES = 64;
+    // A full node frees a slot as soon as any call ends
+    private static final int CONCURRENCY_RETRY_AFTER_SECONDS = 1;
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Limit {
+        RATE,
+        CONCURRENCY
+    }
+
+    private final PortalSettingsStore settingsStore;
+
+    private final List<ConcurrentHashMap<String, AtomicLong>> stripes;
+    private final int maxUsersPerStripe;
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong concurrencyLimited = new AtomicLong();
+    private final AtomicLong servedFromCache = new AtomicLong();
+
+    @Inject
+    public AdmissionControl(PortalSettingsStore settingsStore) {
+        this.settingsStore = settingsStore;
+        int maxUsers = Math.max(STRIPES, Integer.getInteger(MAX_USERS_PROPERTY, DEFAULT_MAX_USERS));
+        this.maxUsersPerStripe = maxUsers / STRIPES;
+        this.stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Admits one call of the user, or tells how long to wait. An admitted call must be released when it ends.
+     */
+    public Admission admit(ApplicationUser user) {
+        PortalSettings limits = settingsStore.get();
+
+        if (limits.getRequestsPerMinute() > 0) {
+            long waitNanos = take(user.getKey(), limits.getRequestsPerMinute(), limits.getRequestBurst());
+            if (waitNanos > 0) {
+                rateLimited.incrementAndGet();
+                log.debug("Rate limited {} for {} ms", user.getKey(), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                int retryAfter = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+                return new Admission(null, Limit.RATE, retryAfter);
+            }
+        }
+
+        int maxConcurrent = limits.getMaxConcurrentSearches();
+        if (maxConcurrent > 0) {
+            if (running.incrementAndGet() > maxConcurrent) {
+                running.decrementAndGet();
+                concurrencyLimited.incrementAndGet();
+                log.debug("Shed a call of {} with {} calls running", user.getKey(), maxConcurrent);
+                return new Admission(null, Limit.CONCURRENCY, CONCURRENCY_RETRY_AFTER_SECONDS);
+            }
+            admitted.incrementAndGet();
+            return new Admission(this, null, 0);
+        }
+        admitted.incrementAndGet();
+        return new Admission(null, null, 0);
+    }
+
+    /**
+     * Takes a token from the user's bucket; returns 0 when one was available, otherwise the nanoseconds until one is
+     */
+    private long take(String userKey, int perMinute, int burst) {
+        long interval = MINUTE_NANOS / perMinute;
+        long tolerance = interval * (burst - 1);
+        long now = System.nanoTime();
+
+        ConcurrentHashMap<String, AtomicLong> stripe = stripes.get((userKey.hashCode() & 0x7fffffff) % STRIPES);
+        AtomicLong bucket = stripe.get(userKey);
+        if (bucket == null) {
+            if (stripe.size() >= maxUsersPerStripe) {
+                prune(stripe, now);
+            }
+            AtomicLong created = new AtomicLong(now);
+            bucket = stripe.putIfAbsent(userKey, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+
+        for (;;) {
+            long full = bucket.get();
+            // A bucket full since before now is simply full; nanoTime values are compared by difference
+            long from = full - now > 0 ? full : now;
+            if (from - now > tolerance) {
+                return from - now - tolerance;
+            }
+            if (bucket.compareAndSet(full, from + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private static void prune(ConcurrentHashMap<String, AtomicLong> stripe, long now) {
+        Iterator<Map.Entry<String, AtomicLong>> it = stripe.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue().get() - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Calls admitted and currently running under the concurrency limit
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public long getConcurrencyLimited() {
+        return concurrencyLimited.get();
+    }
+
+    /**
+     * Counts a refused call that was answered with a cached result instead of a 429
+     */
+    public void servedFromCache() {
+        servedFromCache.incrementAndGet();
+    }
+
+    public long getServedFromCache() {
+        return servedFromCache.get();
+    }
+
+    /**
+     * Outcome of {@link #admit}; a refused call carries the limit it hit and when to retry
+     */
+    public static final class Admission {
+        private final AdmissionControl owner;
+        private final Limit limit;
+        private final int retryAfterSeconds;
+        private boolean released;
+
+        private Admission(AdmissionControl owner, Limit limit, int retryAfterSeconds) {
+            this.owner = owner;
+            this.limit = limit;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public boolean isAdmitted() {
+            return limit == null;
+        }
+
+        /**
+         * The limit that refused the call, or null when it was admitted
+         */
+        public Limit getLimit() {
+            return limit;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        /**
+         * Frees the call's place under the concurrency limit; further calls do nothing
+         */
+        public void release() {
+            if (owner != null && !released) {
+                released = true;
+                owner.running.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.CustomFieldManager;
+import com.atlassian.jira.issue.customfields.SortableCustomField;
+import com.atlassian.jira.issue.customfields.SortableCustomFieldSearcher;
+import com.atlassian.jira.issue.fields.CustomField;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.issue.search.managers.SearchHandlerManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.order.OrderBy;
+import com.atlassian.query.order.SearchSort;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+
+/**
+ * Measures what a portal JQL query will cost before it is saved: the number of matching issues, the time to read the
+ * footer's first page over several runs, and how each ORDER BY field is sorted.
+ * <p>
+ * System fields and custom fields whose searcher sorts from the index are cheap. A custom field sorted by its type
+ * loads the value of every matching issue, so its cost grows with the hit count. Results above the
+ * {@value #WARN_HITS_PROPERTY} (default {@value #DEFAULT_WARN_HITS}) or {@value #WARN_MILLIS_PROPERTY} (default
+ * {@value #DEFAULT_WARN_MILLIS}) thresholds are warned about; results above {@value #BLOCK_HITS_PROPERTY} (default
+ * {@value #DEFAULT_BLOCK_HITS}) or {@value #BLOCK_MILLIS_PROPERTY} (default {@value #DEFAULT_BLOCK_MILLIS}), or a
+ * value-sorted query above the hit warning, are blocked. Thresholds are read on each call.
+ */
+@Named
+public class JqlProfiler {
+
+    public static final String RUNS_PROPERTY = "wmpr.jqlProfile.runs";
+    public static final String WARN_HITS_PROPERTY = "wmpr.jqlProfile.warnHits";
+    public static final String BLOCK_HITS_PROPERTY = "wmpr.jqlProfile.blockHits";
+    public static final String WARN_MILLIS_PROPERTY = "wmpr.jqlProfile.warnMillis";
+    public static final String BLOCK_MILLIS_PROPERTY = "wmpr.jqlProfile.blockMillis";
+    private static final int DEFAULT_RUNS = 5;
+    private static final int DEFAULT_WARN_HITS = 20_000;
+    private static final int DEFAULT_BLOCK_HITS = 500_000;
+    private static final int DEFAULT_WARN_MILLIS = 250;
+    private static final int DEFAULT_BLOCK_MILLIS = 2000;
+    private static final int MAX_RUNS = 20;
+    // Runs stop early once this much time went into them, so a slow query cannot hold the request for long
+    private static final long RUN_BUDGET_MILLIS = 10_000;
+
+    /**
+     * How Jira sorts by a field
+     */
+    public enum SortCost {
+        INDEX("index"),
+        FIELD_VALUES("fieldValues"),
+        UNSORTABLE("unsortable");
+
+        private final String key;
+
+        SortCost(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    @JiraImport
+    private final SearchService searchService;
+
+    @JiraImport
+    private final SearchHandlerManager searchHandlerManager;
+
+    @JiraImport
+    private final CustomFieldManager customFieldManager;
+
+    private final RecentRequestsSearcher searcher;
+
+    @Inject
+    public JqlProfiler(SearchService searchService, SearchHandlerManager searchHandlerManager,
+                       CustomFieldManager customFieldManager, RecentRequestsSearcher searcher) {
+        this.searchService = searchService;
+        this.searchHandlerManager = searchHandlerManager;
+        this.customFieldManager = customFieldManager;
+        this.searcher = searcher;
+    }
+
+    /**
+     * Runs the query as the given user, who should be the administrator saving it; hit counts and times depend on
+     * what the user may see
+     */
+    public Profile profile(ApplicationUser user, Query query, int pageSize) throws SearchException {
+        long countStart = System.nanoTime();
+        long hits = searchService.searchCount(user, query);
+        long countMillis = (System.nanoTime() - countStart) / 1_000_000;
+
+        // The footer's first page, as the searcher reads it
+        int runs = Math.max(1, Math.min(MAX_RUNS, Integer.getInteger(RUNS_PROPERTY, DEFAULT_RUNS)));
+        List<Long> runMillis = new ArrayList<>(runs);
+        long budgetEnd = System.nanoTime() + RUN_BUDGET_MILLIS * 1_000_000;
+        for (int i = 0; i < runs && (i == 0 || System.nanoTime() < budgetEnd); i++) {
+            long start = System.nanoTime();
+            searcher.collectRows(user, query, new PagerFilter(0, pageSize + 1));
+            runMillis.add((System.nanoTime() - start) / 1_000_000);
+        }
+
+        Map<String, SortCost> sorts = new LinkedHashMap<>();
+        OrderBy orderBy = query.getOrderByClause();
+        if (orderBy != null) {
+            for (SearchSort sort : orderBy.getSearchSorts()) {
+                sorts.put(sort.getField(), sortCost(user, sort.getField()));
+            }
+        }
+        return new Profile(hits, countMillis, runMillis, sorts, RecentRequestsSearcher.isKeysetSortable(query));
+    }
+
+    private SortCost sortCost(ApplicationUser user, String clauseName) {
+        SortCost cost = SortCost.INDEX;
+        for (String fieldId : searchHandlerManager.getFieldIds(user, clauseName)) {
+            CustomField customField = customFieldManager.getCustomFieldObject(fieldId);
+            if (customField == null) {
+                continue;
+            }
+            SortCost fieldCost;
+            if (customField.getCustomFieldSearcher() instanceof SortableCustomFieldSearcher) {
+                fieldCost = SortCost.INDEX;
+            } else if (customField.getCustomFieldType() instanceof SortableCustomField) {
+                fieldCost = SortCost.FIELD_VALUES;
+            } else {
+                fieldCost = SortCost.UNSORTABLE;
+            }
+            if (fieldCost.ordinal() > cost.ordinal()) {
+                cost = fieldCost;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Measurements of one query, with the warnings and the verdict they lead to under the current thresholds
+     */
+    public static final class Profile {
+        private final long hits;
+        private final long countMillis;
+        private final List<Long> runMillis;
+        private final Map<String, SortCost> sorts;
+        private final boolean keysetPaging;
+        private final List<String> warnings = new ArrayList<>();
+        private boolean blocked;
+
+        Profile(long hits, long countMillis, List<Long> runMillis, Map<String, SortCost> sorts, boolean keysetPaging) {
+            this.hits = hits;
+            this.countMillis = countMillis;
+            this.runMillis = Collections.unmodifiableList(runMillis);
+            this.sorts = Collections.unmodifiableMap(sorts);
+            this.keysetPaging = keysetPaging;
+            judge();
+        }
+
+        private void judge() {
+            long warnHits = Integer.getInteger(WARN_HITS_PROPERTY, DEFAULT_WARN_HITS);
+            long blockHits = Integer.getInteger(BLOCK_HITS_PROPERTY, DEFAULT_BLOCK_HITS);
+            long warnMillis = Integer.getInteger(WARN_MILLIS_PROPERTY, DEFAULT_WARN_MILLIS);
+            long blockMillis = Integer.getInteger(BLOCK_MILLIS_PROPERTY, DEFAULT_BLOCK_MILLIS);
+
+            if (hits >= blockHits) {
+                block("Matches " + hits + " issues, the limit is " + blockHits);
+            } else if (hits >= warnHits) {
+                warnings.add("Matches " + hits + " issues; consider narrowing the query");
+            }
+            long median = getMedianMillis();
+            if (median >= blockMillis) {
+                block("The first page takes " + median + " ms, the limit is " + blockMillis + " ms");
+            } else if (median >= warnMillis) {
+                warnings.add("The first page takes " + median + " ms");
+            }
+            for (Map.Entry<String, SortCost> sort : sorts.entrySet()) {
+                if (sort.getValue() == SortCost.FIELD_VALUES) {
+                    String message = "Sorting by " + sort.getKey() + " loads the field value of every matching issue";
+                    if (hits >= warnHits) {
+                        block(message + ", and the query matches " + hits);
+                    } else {
+                        warnings.add(message);
+                    }
+                } else if (sort.getValue() == SortCost.UNSORTABLE) {
+                    warnings.add("Jira cannot sort by " + sort.getKey() + "; the order is undefined");
+                }
+            }
+        }
+
+        private void block(String reason) {
+            blocked = true;
+            warnings.add(reason);
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getCountMillis() {
+            return countMillis;
+        }
+
+        /**
+         * Time of each run reading the first page, in run order
+         */
+        public List<Long> getRunMillis() {
+            return runMillis;
+        }
+
+        public long getMedianMillis() {
+            List<Long> sorted = new ArrayList<>(runMillis);
+            Collections.sort(sorted);
+            return sorted.get(sorted.size() / 2);
+        }
+
+        public Map<String, SortCost> getSorts() {
+            return sorts;
+        }
+
+        /**
+         * True when pages after the first are read by created date rather than by offset
+         */
+        public boolean isKeysetPaging() {
+            return keysetPaging;
+        }
+
+        public List<String> getWarnings() {
+            return Collections.unmodifiableList(warnings);
+        }
+
+        /**
+         * True when the query is too expensive to save
+         */
+        public boolean isBlocked() {
+            return blocked;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> sortMap = new LinkedHashMap<>();
+            for (Map.Entry<String, SortCost> sort : sorts.entrySet()) {
+                sortMap.put(sort.getKey(), sort.getValue().getKey());
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("hits", hits);
+            map.put("countMillis", countMillis);
+            map.put("runMillis", runMillis);
+            map.put("medianMillis", getMedianMillis());
+            map.put("sorts", sortMap);
+            map.put("keysetPaging", keysetPaging);
+            return map;
+        }
+    }
+}
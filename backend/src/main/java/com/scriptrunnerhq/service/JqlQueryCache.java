@@ -0,0 +1,112 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.MessageSet;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Shared cache from JQL text to its parsed {@link Query}.
+ * Parsing does not depend on the caller, so one entry serves every user. Queries that use user-relative
+ * functions are additionally validated for the calling user on each lookup.
+ */
+@Named
+public class JqlQueryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(JqlQueryCache.class);
+
+    private static final int MAX_ENTRIES = 256;
+    private static final Pattern USER_RELATIVE_FUNCTION = Pattern.compile(
+            "\\b(currentUser|currentLogin|lastLogin|issueHistory|watchedIssues|votedIssues|myApproval|myPending)\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+
+    @JiraImport
+    private final SearchService searchService;
+
+    private final ConcurrentMap<String, ParsedJql> entries = new ConcurrentHashMap<>();
+
+    @Inject
+    public JqlQueryCache(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    /**
+     * Returns the parsed query for the JQL, validated for the given user where the JQL is user-relative.
+     */
+    public ParsedJql parse(ApplicationUser user, String jql) {
+        ParsedJql parsed = entries.get(jql);
+        if (parsed == null) {
+            SearchService.ParseResult parseResult = searchService.parseQuery(user, jql);
+            parsed = new ParsedJql(parseResult.getQuery(), parseResult.getErrors(),
+                    isUserRelative(jql));
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            ParsedJql existing = entries.putIfAbsent(jql, parsed);
+            if (existing != null) {
+                parsed = existing;
+            }
+            log.debug("Parsed and cached JQL: {}", jql);
+        }
+
+        if (parsed.isValid() && parsed.isUserRelative()) {
+            MessageSet userErrors = searchService.validateQuery(user, parsed.getQuery());
+            if (userErrors.hasAnyErrors()) {
+                return new ParsedJql(parsed.getQuery(), userErrors, true);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * True when the JQL uses a function whose result depends on the calling user
+     */
+    public static boolean isUserRelative(String jql) {
+        return USER_RELATIVE_FUNCTION.matcher(jql).find();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        log.debug("Invalidated all parsed JQL queries");
+    }
+
+    /**
+     * Immutable parse outcome for a single JQL string.
+     */
+    public static final class ParsedJql {
+        private final Query query;
+        private final MessageSet errors;
+        private final boolean userRelative;
+
+        ParsedJql(Query query, MessageSet errors, boolean userRelative) {
+            this.query = query;
+            this.errors = errors;
+            this.userRelative = userRelative;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        public MessageSet getErrors() {
+            return errors;
+        }
+
+        public boolean isValid() {
+            return query != null && (errors == null || !errors.hasAnyErrors());
+        }
+
+        public boolean isUserRelative() {
+            return userRelative;
+        }
+    }
+}
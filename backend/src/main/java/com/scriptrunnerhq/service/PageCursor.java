@@ -0,0 +1,100 @@
+package com.scriptrunnerhq.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque /recent page cursor.
+ * Queries sorted by created descending page by keyset (created timestamp plus issue id), so each page costs the same
+ * however deep the caller scrolls. Other sort orders fall back to an offset.
+ */
+public final class PageCursor {
+
+    private static final String KEYSET_PREFIX = "k:";
+    private static final String OFFSET_PREFIX = "o:";
+
+    private final boolean keyset;
+    private final long createdMillis;
+    private final long issueId;
+    private final int offset;
+
+    private PageCursor(boolean keyset, long createdMillis, long issueId, int offset) {
+        this.keyset = keyset;
+        this.createdMillis = createdMillis;
+        this.issueId = issueId;
+        this.offset = offset;
+    }
+
+    /**
+     * Cursor pointing just after the row with the given created timestamp and issue id
+     */
+    public static PageCursor keyset(long createdMillis, long issueId) {
+        return new PageCursor(true, createdMillis, issueId, 0);
+    }
+
+    public static PageCursor offset(int offset) {
+        return new PageCursor(false, 0, 0, offset);
+    }
+
+    /**
+     * Decodes a cursor token; returns null for a null or empty token
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        try {
+            if (value.startsWith(KEYSET_PREFIX)) {
+                String[] parts = value.substring(KEYSET_PREFIX.length()).split(":");
+                if (parts.length == 2) {
+                    return keyset(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                }
+            } else if (value.startsWith(OFFSET_PREFIX)) {
+                int offset = Integer.parseInt(value.substring(OFFSET_PREFIX.length()));
+                if (offset >= 0) {
+                    return offset(offset);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    public String encode() {
+        String value = keyset ? KEYSET_PREFIX + createdMillis + ":" + issueId : OFFSET_PREFIX + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isKeyset() {
+        return keyset;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public long getIssueId() {
+        return issueId;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * True when a row sorts at or before this keyset cursor, i.e. it was already returned on an earlier page
+     */
+    public boolean isAtOrBefore(RequestRow row) {
+        return row.getCreatedMillis() > createdMillis
+                || (row.getCreatedMillis() == createdMillis && row.getIssueId() >= issueId);
+    }
+}
@@ -0,0 +1,285 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.issue.IssueFieldConstants;
+import com.atlassian.jira.issue.search.constants.SystemSearchConstants;
+import com.atlassian.jira.issue.security.IssueSecurityLevel;
+import com.atlassian.jira.issue.security.IssueSecurityLevelManager;
+import com.atlassian.jira.issue.security.IssueSecurityLevelPermission;
+import com.atlassian.jira.issue.security.IssueSecuritySchemeManager;
+import com.atlassian.jira.permission.PermissionSchemeEntry;
+import com.atlassian.jira.permission.PermissionSchemeManager;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.scheme.Scheme;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.AndClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.OrClause;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operand.EmptyOperand;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operator.Operator;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * What a user may browse as far as it does not depend on the issue: the projects they may browse and, in projects
+ * with an issue security scheme, the security levels they hold there. Users with the same {@link Scope} see the same
+ * matches of any JQL that does not depend on the user, so they can share one search and one view of its results.
+ * A project whose browse permission or one of whose security levels is granted through the issue (reporter,
+ * assignee, user and group custom fields, Service Desk customers) makes visibility depend on the issue; users who may
+ * browse such a project have no scope and search with their own permissions.
+ * <p>
+ * Scopes are cached per user, and the grants of each project's schemes per project, for {@value #TTL_PROPERTY}
+ * seconds, which bounds how long a permission change takes to apply.
+ */
+@Named
+public class PermissionContext {
+
+    public static final String TTL_PROPERTY = "wmpr.permissions.cache.ttlSeconds";
+    public static final String MAX_ENTRIES_PROPERTY = "wmpr.permissions.cache.maxEntries";
+    private static final int DEFAULT_TTL_SECONDS = 60;
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    // Grants decided by the user alone, which Jira resolves per project and per security level
+    private static final Set<String> USER_GRANTS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "group", "user", "projectrole", "applicationRole", "lead")));
+    private static final String LEVEL_CLAUSE = SystemSearchConstants.forSecurityLevel().getJqlClauseNames()
+            .getPrimaryName();
+
+    @JiraImport
+    private final PermissionManager permissionManager;
+
+    @JiraImport
+    private final PermissionSchemeManager permissionSchemeManager;
+
+    @JiraImport
+    private final IssueSecuritySchemeManager issueSecuritySchemeManager;
+
+    @JiraImport
+    private final IssueSecurityLevelManager issueSecurityLevelManager;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> scopes;
+    private final ConcurrentMap<Long, ProjectGrants> projectGrants = new ConcurrentHashMap<>();
+
+    @Inject
+    public PermissionContext(PermissionManager permissionManager, PermissionSchemeManager permissionSchemeManager,
+                             IssueSecuritySchemeManager issueSecuritySchemeManager,
+                             IssueSecurityLevelManager issueSecurityLevelManager) {
+        this.permissionManager = permissionManager;
+        this.permissionSchemeManager = permissionSchemeManager;
+        this.issueSecuritySchemeManager = issueSecuritySchemeManager;
+        this.issueSecurityLevelManager = issueSecurityLevelManager;
+        this.ttlMillis = Math.max(0, Integer.getInteger(TTL_PROPERTY, DEFAULT_TTL_SECONDS)) * 1000L;
+        this.maxEntries = Math.max(1, Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+        this.scopes = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the scope of what the user may browse, or null when what they see depends on the issue, or they may
+     * browse nothing, and their searches cannot be shared
+     */
+    public Scope scopeOf(ApplicationUser user) {
+        if (user == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (scopes) {
+            entry = scopes.get(user.getKey());
+        }
+        if (entry != null && now - entry.loadedAt < ttlMillis) {
+            return entry.scope;
+        }
+
+        Scope scope = load(user, now);
+        synchronized (scopes) {
+            scopes.put(user.getKey(), new Entry(scope, now));
+        }
+        return scope;
+    }
+
+    public void invalidateAll() {
+        synchronized (scopes) {
+            scopes.clear();
+        }
+        projectGrants.clear();
+    }
+
+    private Scope load(ApplicationUser user, long now) {
+        List<Project> projects = new ArrayList<>(permissionManager.getProjects(ProjectPermissions.BROWSE_PROJECTS, user));
+        if (projects.isEmpty()) {
+            return null;
+        }
+        Collections.sort(projects, new Comparator<Project>() {
+            @Override
+            public int compare(Project a, Project b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+
+        // Projects that restrict issues to the same security levels share one clause; null is no security scheme
+        Map<List<Long>, List<Long>> projectsByLevels = new LinkedHashMap<>();
+        Set<String> projectKeys = new HashSet<>();
+        for (Project project : projects) {
+            ProjectGrants grants = grants(project, now);
+            if (grants.issueDependent) {
+                return null;
+            }
+            List<Long> levels = null;
+            if (grants.secured) {
+                levels = new ArrayList<>();
+                for (IssueSecurityLevel level : issueSecurityLevelManager.getUsersSecurityLevels(project, user)) {
+                    levels.add(level.getId());
+                }
+                Collections.sort(levels);
+            }
+            List<Long> projectIds = projectsByLevels.get(levels);
+            if (projectIds == null) {
+                projectIds = new ArrayList<>();
+                projectsByLevels.put(levels, projectIds);
+            }
+            projectIds.add(project.getId());
+            projectKeys.add(project.getKey());
+        }
+
+        List<Clause> clauses = new ArrayList<>(projectsByLevels.size());
+        for (Map.Entry<List<Long>, List<Long>> group : projectsByLevels.entrySet()) {
+            Clause projectClause = new TerminalClauseImpl(IssueFieldConstants.PROJECT, Operator.IN,
+                    new MultiValueOperand(group.getValue().toArray(new Long[0])));
+            List<Long> levels = group.getKey();
+            if (levels == null) {
+                clauses.add(projectClause);
+                continue;
+            }
+            Clause unsecured = new TerminalClauseImpl(LEVEL_CLAUSE, Operator.IS, EmptyOperand.EMPTY);
+            Clause levelClause = levels.isEmpty() ? unsecured : new OrClause(unsecured,
+                    new TerminalClauseImpl(LEVEL_CLAUSE, Operator.IN, new MultiValueOperand(levels.toArray(new Long[0]))));
+            clauses.add(new AndClause(projectClause, levelClause));
+        }
+        Clause clause = clauses.size() == 1 ? clauses.get(0) : new OrClause(clauses);
+        return new Scope(fingerprint(projectsByLevels.toString()), clause, projectKeys);
+    }
+
+    private ProjectGrants grants(Project project, long now) {
+        ProjectGrants grants = projectGrants.get(project.getId());
+        if (grants == null || now - grants.loadedAt >= ttlMillis) {
+            grants = loadGrants(project, now);
+            projectGrants.put(project.getId(), grants);
+        }
+        return grants;
+    }
+
+    private ProjectGrants loadGrants(Project project, long now) {
+        Scheme permissionScheme = permissionSchemeManager.getSchemeFor(project);
+        if (permissionScheme != null) {
+            for (PermissionSchemeEntry entry : permissionSchemeManager.getPermissionSchemeEntries(permissionScheme,
+                    ProjectPermissions.BROWSE_PROJECTS)) {
+                if (!USER_GRANTS.contains(entry.getType())) {
+                    return new ProjectGrants(true, false, now);
+                }
+            }
+        }
+        Scheme securityScheme = issueSecuritySchemeManager.getSchemeFor(project);
+        if (securityScheme == null) {
+            return new ProjectGrants(false, false, now);
+        }
+        for (IssueSecurityLevel level : issueSecurityLevelManager.getIssueSecurityLevels(securityScheme.getId())) {
+            for (IssueSecurityLevelPermission permission
+                    : issueSecuritySchemeManager.getPermissionsBySecurityLevel(level.getId())) {
+                if (!USER_GRANTS.contains(permission.getType())) {
+                    return new ProjectGrants(true, true, now);
+                }
+            }
+        }
+        return new ProjectGrants(false, true, now);
+    }
+
+    private static String fingerprint(String grants) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(grants.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Issues a group of users may browse; two users with equal fingerprints may browse the same issues
+     */
+    public static final class Scope {
+        private final String fingerprint;
+        private final Clause clause;
+        private final Set<String> projectKeys;
+
+        Scope(String fingerprint, Clause clause, Set<String> projectKeys) {
+            this.fingerprint = fingerprint;
+            this.clause = clause;
+            this.projectKeys = Collections.unmodifiableSet(projectKeys);
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * The query limited to the issues of the scope, for searches that ignore permissions
+         */
+        public Query restrict(Query query) {
+            Clause where = query.getWhereClause() != null ? new AndClause(query.getWhereClause(), clause) : clause;
+            return new QueryImpl(where, query.getOrderByClause(), null);
+        }
+
+        /**
+         * True when issues with the key may be in the scope, judged by the project key the issue key starts with
+         */
+        public boolean mayContain(String issueKey) {
+            int dash = issueKey.lastIndexOf('-');
+            return dash > 0 && projectKeys.contains(issueKey.substring(0, dash));
+        }
+    }
+
+    private static final class Entry {
+        private final Scope scope;
+        private final long loadedAt;
+
+        Entry(Scope scope, long loadedAt) {
+            this.scope = scope;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class ProjectGrants {
+        private final boolean issueDependent;
+        private final boolean secured;
+        private final long loadedAt;
+
+        ProjectGrants(boolean issueDependent, boolean secured, long loadedAt) {
+            this.issueDependent = issueDependent;
+            this.secured = secured;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.plugin.spring.scanner.annotation.imports.ComponentImport;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.scriptrunnerhq.model.PortalSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the {@link PortalSettings} snapshots of the default scope and of each project.
+ * Every scope is stored as one versioned JSON document in the global PluginSettings, so a snapshot is one read
+ * and a save is one write. Project snapshots live in an LRU cache of at most {@value #CACHE_SIZE_PROPERTY} entries
+ * (default {@value #DEFAULT_CACHE_SIZE}); a project without a document of its own inherits the default scope. The
+ * snapshots of such projects are cached apart, in an LRU of the same size, since any project key a portal sends adds
+ * one, and they must not evict the projects that were configured.
+ * Customer portals are mapped to projects by the portal ids saved with each project.
+ * <p>
+ * Every save also increments the stored settings epoch. On a Data Center node that did not make the save, a notice
+ * of it ({@link #onRemoteSave}) or a newer stored epoch ({@link #refreshIfBehind}) drops the snapshots it holds.
+ */
+@Named
+public class PortalSettingsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(PortalSettingsStore.class);
+
+    public static final String CACHE_SIZE_PROPERTY = "wmpr.settings.cacheSize";
+    private static final int DEFAULT_CACHE_SIZE = 500;
+
+    private static final int DOCUMENT_SCHEMA = 1;
+    private static final String DEFAULT_DOCUMENT_KEY = "portal.settings";
+    private static final String PROJECT_DOCUMENT_PREFIX = "portal.settings.project.";
+    private static final String PORTAL_INDEX_KEY = "portal.settings.portals";
+    private static final String EPOCH_KEY = "portal.settings.epoch";
+    private static final String GLOBAL_SCOPE = "global";
+    private static final Pattern PROJECT_KEY_PATTERN = Pattern.compile("[A-Z][A-Z0-9_]{0,63}");
+    private static final Pattern PORTAL_ID_PATTERN = Pattern.compile("[0-9]{1,18}");
+
+    // Per-key entries written by earlier versions; they seed the default scope until it is first saved
+    private static final String LEGACY_JQL_KEY = "portal.jql";
+    private static final String LEGACY_BUTTON_PREFIX = "portal.button.";
+    private static final String LEGACY_CONFLUENCE_SPACES_KEY = "portal.confluence.spaces";
+    private static final String LEGACY_MAX_PAGE_SIZE_KEY = "portal.recent.maxPageSize";
+
+    @ComponentImport
+    private final PluginSettingsFactory pluginSettingsFactory;
+
+    // Both caches and the generation are guarded by projects
+    private final Map<String, PortalSettings> projects;
+    private final Map<String, PortalSettings> inheritedProjects;
+    // Incremented whenever a project snapshot is saved or dropped, so that a slower load does not cache a stale one
+    private long generation;
+    private final Gson gson;
+    private volatile PortalSettings defaults;
+    private volatile boolean legacyDefaults;
+    private volatile Map<String, String> portalIndex;
+    // Stored epoch the cached snapshots are known to be current with
+    private volatile long epoch;
+
+    @Inject
+    public PortalSettingsStore(PluginSettingsFactory pluginSettingsFactory) {
+        this.pluginSettingsFactory = pluginSettingsFactory;
+        this.gson = new Gson();
+        final int cacheSize = Math.max(1, Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+        this.projects = lruMap(cacheSize);
+        this.inheritedProjects = lruMap(cacheSize);
+    }
+
+    /**
+     * Changes applied to a copy of the current snapshot by {@link #save(String, Change)}
+     */
+    public interface Change {
+        void apply(PortalSettings current, PortalSettings.Builder next);
+    }
+
+    /**
+     * Returns the default scope's snapshot, loading it on first use
+     */
+    public PortalSettings get() {
+        PortalSettings settings = defaults;
+        if (settings == null) {
+            synchronized (this) {
+                settings = defaults;
+                if (settings == null) {
+                    settings = loadDefaults();
+                    defaults = settings;
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Returns the project's snapshot, or the default scope's when the key is null, blank or "global".
+     * Throws IllegalArgumentException for a malformed project key.
+     */
+    public PortalSettings get(String projectKey) {
+        String key = normalizeProjectKey(projectKey);
+        if (key == null) {
+            return get();
+        }
+        PortalSettings settings = cached(key);
+        if (settings != null) {
+            return settings;
+        }
+        // Loaded outside the save lock, so reads of unknown projects neither wait for saves nor for each other; a
+        // save or drop in the meantime means the read may be older, and it is then returned but not cached
+        long loadGeneration;
+        synchronized (projects) {
+            loadGeneration = generation;
+        }
+        settings = loadProject(key);
+        synchronized (projects) {
+            if (generation == loadGeneration) {
+                (settings.isInherited() ? inheritedProjects : projects).put(key, settings);
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Settings for the calling portal: the given project's, else those of the project mapped to the portal id,
+     * else the default scope's
+     */
+    public PortalSettings forPortal(String projectKey, String portalId) {
+        if (projectKey != null && !projectKey.trim().isEmpty()) {
+            return get(projectKey);
+        }
+        if (portalId != null && !portalId.trim().isEmpty()) {
+            String mapped = portalIndex().get(portalId.trim());
+            if (mapped != null) {
+                return get(mapped);
+            }
+        }
+        return get();
+    }
+
+    /**
+     * Applies the change to the scope's current snapshot and writes the result as a single document.
+     * Throws IllegalArgumentException for a malformed project key or portal id, or a portal id mapped to another project.
+     */
+    public synchronized PortalSettings save(String projectKey, Change change) {
+        String key = normalizeProjectKey(projectKey);
+        // Snapshots from before another node's save must not be the base of this one
+        long storedEpoch = refreshIfBehind();
+        PortalSettings previous = get(key);
+
+        PortalSettings.Builder builder = previous.toBuilder();
+        change.apply(previous, builder);
+        PortalSettings next = builder
+                .projectKey(key)
+                .inherited(false)
+                .version(nextVersion(previous))
+                .build();
+
+        Map<String, String> index = portalIndex();
+        Map<String, String> nextIndex = nextPortalIndex(index, key, next.getPortalIds());
+
+        PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
+        try {
+            settings.put(documentKey(key), gson.toJson(toDocument(next)));
+            if (!nextIndex.equals(index)) {
+                settings.put(PORTAL_INDEX_KEY, gson.toJson(nextIndex));
+                portalIndex = Collections.unmodifiableMap(nextIndex);
+            }
+            settings.put(EPOCH_KEY, String.valueOf(storedEpoch + 1));
+            epoch = storedEpoch + 1;
+        } catch (RuntimeException e) {
+            // A partial write leaves the stored state unknown; reload on next read
+            forget(key);
+            portalIndex = null;
+            throw e;
+        }
+
+        if (key == null) {
+            defaults = next;
+            // Projects without a document of their own follow the new defaults
+            forgetInherited();
+            if (legacyDefaults) {
+                removeLegacyEntries(settings);
+            }
+        } else {
+            synchronized (projects) {
+                generation++;
+                inheritedProjects.remove(key);
+                projects.put(key, next);
+            }
+        }
+        log.debug("Portal settings for {} updated to version {}", key != null ? key : GLOBAL_SCOPE, next.getVersion());
+        return next;
+    }
+
+    /**
+     * Settings epoch of the cached snapshots; a save on any node increments it
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Applies another node's save of the scope at the given epoch and settings version. Only the scope is dropped
+     * when the save is the next epoch; everything is dropped when saves were missed in between.
+     */
+    public synchronized void onRemoteSave(String projectKey, long savedEpoch, long version) {
+        String key = normalizeProjectKey(projectKey);
+        if (savedEpoch > epoch + 1) {
+            log.debug("Portal settings epoch {} is {} saves ahead, dropping all settings", savedEpoch, savedEpoch - epoch);
+            forgetAll();
+            epoch = savedEpoch;
+            return;
+        }
+        // Concurrent saves on two nodes can share an epoch, so an older snapshot of the scope is dropped regardless
+        PortalSettings cached = key != null ? cached(key) : defaults;
+        if (savedEpoch == epoch + 1 || (cached != null && cached.getVersion() < version)) {
+            forget(key);
+            if (key == null) {
+                forgetInherited();
+            }
+            portalIndex = null;
+            epoch = Math.max(epoch, savedEpoch);
+            log.debug("Portal settings for {} changed on another node, epoch {}", key != null ? key : GLOBAL_SCOPE, savedEpoch);
+        }
+    }
+
+    /**
+     * Drops every snapshot when the stored epoch is ahead of the cached one, as after a missed save notice.
+     * Returns the stored epoch.
+     */
+    public synchronized long refreshIfBehind() {
+        long storedEpoch = readEpoch();
+        if (storedEpoch > epoch) {
+            forgetAll();
+            log.debug("Portal settings epoch moved from {} to {}, dropped all settings", epoch, storedEpoch);
+            epoch = storedEpoch;
+        }
+        return storedEpoch;
+    }
+
+    /**
+     * Persists the JQL, Confluence spaces and page size cap; null values are left unchanged.
+     */
+    public PortalSettings saveGeneral(String projectKey, final String jql, final List<String> confluenceSpaces,
+                                      final Integer maxPageSize) {
+        return save(projectKey, new Change() {
+            @Override
+            public void apply(PortalSettings current, PortalSettings.Builder next) {
+                if (jql != null) {
+                    next.jql(jql);
+                }
+                if (confluenceSpaces != null) {
+                    next.confluenceSpaces(confluenceSpaces);
+                }
+                if (maxPageSize != null) {
+                    next.maxPageSize(maxPageSize);
+                }
+            }
+        });
+    }
+
+    /**
+     * Persists button labels and URLs; lists are indexed by button number minus one and null entries are left unchanged.
+     */
+    public PortalSettings saveButtons(String projectKey, final List<String> labels, final List<String> urls) {
+        return save(projectKey, new Change() {
+            @Override
+            public void apply(PortalSettings current, PortalSettings.Builder next) {
+                next.buttonLabels(merge(current.getButtonLabels(), labels));
+                next.buttonUrls(merge(current.getButtonUrls(), urls));
+            }
+        });
+    }
+
+    /**
+     * Replaces null entries of the update with the current values and trims the rest
+     */
+    public static List<String> merge(List<String> current, List<String> update) {
+        List<String> merged = new ArrayList<>(current);
+        for (int i = 0; i < merged.size() && i < update.size(); i++) {
+            if (update.get(i) != null) {
+                merged.set(i, update.get(i).trim());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Upper-cased project key, or null for the default scope
+     */
+    public static String normalizeProjectKey(String projectKey) {
+        if (projectKey == null || projectKey.trim().isEmpty() || GLOBAL_SCOPE.equalsIgnoreCase(projectKey.trim())) {
+            return null;
+        }
+        String key = projectKey.trim().toUpperCase(Locale.ROOT);
+        if (!PROJECT_KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid project key: " + projectKey);
+        }
+        return key;
+    }
+
+    private static Map<String, PortalSettings> lruMap(final int maxSize) {
+        return new LinkedHashMap<String, PortalSettings>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PortalSettings> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private PortalSettings cached(String key) {
+        synchronized (projects) {
+            PortalSettings settings = projects.get(key);
+            return settings != null ? settings : inheritedProjects.get(key);
+        }
+    }
+
+    private void forget(String key) {
+        if (key == null) {
+            defaults = null;
+        } else {
+            synchronized (projects) {
+                generation++;
+                projects.remove(key);
+                inheritedProjects.remove(key);
+            }
+        }
+    }
+
+    private void forgetInherited() {
+        synchronized (projects) {
+            generation++;
+            inheritedProjects.clear();
+        }
+    }
+
+    private void forgetAll() {
+        defaults = null;
+        portalIndex = null;
+        synchronized (projects) {
+            generation++;
+            projects.clear();
+            inheritedProjects.clear();
+        }
+    }
+
+    private long readEpoch() {
+        String value = (String) pluginSettingsFactory.createGlobalSettings().get(EPOCH_KEY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid portal settings epoch: {}", value);
+            return 0;
+        }
+    }
+
+    private Map<String, String> portalIndex() {
+        Map<String, String> index = portalIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = portalIndex;
+                if (index == null) {
+                    index = Collections.unmodifiableMap(loadPortalIndex());
+                    portalIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static Map<String, String> nextPortalIndex(Map<String, String> index, String key, List<String> portalIds) {
+        if (key == null && !portalIds.isEmpty()) {
+            throw new IllegalArgumentException("Portal ids can only be mapped to a project");
+        }
+        Map<String, String> next = new HashMap<>();
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+            if (!entry.getValue().equals(key)) {
+                next.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String portalId : portalIds) {
+            if (!PORTAL_ID_PATTERN.matcher(portalId).matches()) {
+                throw new IllegalArgumentException("Invalid portal id: " + portalId);
+            }
+            String owner = next.get(portalId);
+            if (owner != null) {
+                throw new IllegalArgumentException("Portal " + portalId + " is already mapped to project " + owner);
+            }
+            next.put(portalId, key);
+        }
+        return next;
+    }
+
+    private static String documentKey(String key) {
+        return key != null ? PROJECT_DOCUMENT_PREFIX + key : DEFAULT_DOCUMENT_KEY;
+    }
+
+    private PortalSettings loadDefaults() {
+        PluginSettings settings = pluginSettingsFactory.createGlobalSettings();
+        PortalSettings loaded = readDocument(settings, null);
+        legacyDefaults = loaded == null;
+        if (loaded == null) {
+            loaded = loadLegacy(settings);
+        }
+        log.debug("Loaded default portal settings version {}", loaded.getVersion());
+        return loaded;
+    }
+
+    private PortalSettings loadProject(String key) {
+        PortalSettings loaded = readDocument(pluginSettingsFactory.createGlobalSettings(), key);
+        if (loaded == null) {
+            return get().toBuilder()
+                    .projectKey(key)
+                    .inherited(true)
+                    .portalIds(Collections.<String>emptyList())
+                    .build();
+        }
+        log.debug("Loaded portal settings for {} version {}", key, loaded.getVersion());
+        return loaded;
+    }
+
+    private Map<String, String> loadPortalIndex() {
+        String json = (String) pluginSettingsFactory.createGlobalSettings().get(PORTAL_INDEX_KEY);
+        if (json != null && !json.trim().isEmpty()) {
+            try {
+                Map<String, String> parsed = gson.fromJson(json, new TypeToken<Map<String, String>>() {}.getType());
+                if (parsed != null) {
+                    return new HashMap<>(parsed);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to parse portal index JSON: {}", e.getMessage());
+            }
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Reads the scope's document, or returns null when it has none
+     */
+    private PortalSettings readDocument(PluginSettings settings, String key) {
+        String json = (String) settings.get(documentKey(key));
+        if (json == null || json.trim().isEmpty()) {
+            return null;
+        }
+        Document document;
+        try {
+            document = gson.fromJson(json, Document.class);
+        } catch (Exception e) {
+            log.warn("Failed to parse portal settings for {}: {}", key != null ? key : GLOBAL_SCOPE, e.getMessage());
+            return null;
+        }
+        if (document == null) {
+            return null;
+        }
+
+        PortalSettings.Builder builder = PortalSettings.builder()
+                .projectKey(key)
+                .version(document.version)
+                .jql(document.jql)
+                .buttonLabels(buttons(document.buttonLabels))
+                .buttonUrls(buttons(document.buttonUrls))
+                .confluenceSpaces(document.confluenceSpaces)
+                .portalIds(document.portalIds);
+        if (document.maxPageSize != null) {
+            builder.maxPageSize(document.maxPageSize);
+        }
+        if (document.requestsPerMinute != null) {
+            builder.requestsPerMinute(document.requestsPerMinute);
+        }
+        if (document.requestBurst != null) {
+            builder.requestBurst(document.requestBurst);
+        }
+        if (document.maxConcurrentSearches != null) {
+            builder.maxConcurrentSearches(document.maxConcurrentSearches);
+        }
+        return builder.build();
+    }
+
+    private static Document toDocument(PortalSettings settings) {
+        Document document = new Document();
+        document.schema = DOCUMENT_SCHEMA;
+        document.version = settings.getVersion();
+        document.jql = settings.getJql();
+        document.buttonLabels = settings.getButtonLabels();
+        document.buttonUrls = settings.getButtonUrls();
+        document.confluenceSpaces = settings.getConfluenceSpaces();
+        document.maxPageSize = settings.getMaxPageSize();
+        document.portalIds = settings.getPortalIds();
+        // Limits are read from the default scope only, so project documents do not carry copies of them
+        if (settings.getProjectKey() == null) {
+            document.requestsPerMinute = settings.getRequestsPerMinute();
+            document.requestBurst = settings.getRequestBurst();
+            document.maxConcurrentSearches = settings.getMaxConcurrentSearches();
+        }
+        return document;
+    }
+
+    /**
+     * Pads or truncates stored button values to {@link PortalSettings#BUTTON_COUNT}
+     */
+    private static List<String> buttons(List<String> values) {
+        List<String> buttons = new ArrayList<>(PortalSettings.BUTTON_COUNT);
+        for (int i = 0; i < PortalSettings.BUTTON_COUNT; i++) {
+            String value = values != null && i < values.size() ? values.get(i) : null;
+            buttons.add(value != null ? value : "");
+        }
+        return buttons;
+    }
+
+    private PortalSettings loadLegacy(PluginSettings settings) {
+        String jql = (String) settings.get(LEGACY_JQL_KEY);
+
+        List<String> labels = new ArrayList<>();
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i <= PortalSettings.BUTTON_COUNT; i++) {
+            String label = (String) settings.get(LEGACY_BUTTON_PREFIX + i + ".label");
+            String url = (String) settings.get(LEGACY_BUTTON_PREFIX + i + ".url");
+            labels.add(label != null ? label : "");
+            urls.add(url != null ? url : "");
+        }
+
+        List<String> confluenceSpaces = Collections.emptyList();
+        String confluenceSpacesJson = (String) settings.get(LEGACY_CONFLUENCE_SPACES_KEY);
+        if (confluenceSpacesJson != null && !confluenceSpacesJson.trim().isEmpty()) {
+            try {
+                List<String> parsed = gson.fromJson(confluenceSpacesJson, List.class);
+                if (parsed != null) {
+                    confluenceSpaces = parsed;
+                }
+            } catch (Exception e) {
+                log.warn("Failed to parse confluence spaces JSON: {}", e.getMessage());
+            }
+        }
+
+        PortalSettings.Builder builder = PortalSettings.builder()
+                .version(System.currentTimeMillis())
+                .jql(jql)
+                .buttonLabels(labels)
+                .buttonUrls(urls)
+                .confluenceSpaces(confluenceSpaces);
+
+        String maxPageSize = (String) settings.get(LEGACY_MAX_PAGE_SIZE_KEY);
+        if (maxPageSize != null) {
+            try {
+                builder.maxPageSize(Integer.parseInt(maxPageSize.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid max page size: {}", maxPageSize);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Drops the per-key entries once the default scope has been written as a document
+     */
+    private void removeLegacyEntries(PluginSettings settings) {
+        try {
+            settings.remove(LEGACY_JQL_KEY);
+            settings.remove(LEGACY_CONFLUENCE_SPACES_KEY);
+            settings.remove(LEGACY_MAX_PAGE_SIZE_KEY);
+            for (int i = 1; i <= PortalSettings.BUTTON_COUNT; i++) {
+                settings.remove(LEGACY_BUTTON_PREFIX + i + ".label");
+                settings.remove(LEGACY_BUTTON_PREFIX + i + ".url");
+            }
+            legacyDefaults = false;
+            log.info("Migrated portal settings to a single document");
+        } catch (RuntimeException e) {
+            // The document takes precedence, so leftovers are harmless; retried on the next save
+            log.warn("Failed to remove legacy portal settings: {}", e.getMessage());
+        }
+    }
+
+    private static long nextVersion(PortalSettings previous) {
+        return Math.max(previous.getVersion() + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Stored form of one scope's settings
+     */
+    private static final class Document {
+        int schema;
+        long version;
+        String jql;
+        List<String> buttonLabels;
+        List<String> buttonUrls;
+        List<String> confluenceSpaces;
+        Integer maxPageSize;
+        List<String> portalIds;
+        Integer requestsPerMinute;
+        Integer requestBurst;
+        Integer maxConcurrentSearches;
+    }
+}
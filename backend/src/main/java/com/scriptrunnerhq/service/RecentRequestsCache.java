@@ -0,0 +1,219 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of /recent pages keyed by (user, query key), where the query key covers the JQL and paging.
+ * Entries are fresh until the TTL passes or an issue event marks them stale. Stale entries are kept as the last good
+ * result, served when a fresh search misses its deadline, until they are {@value #MAX_STALE_PROPERTY} seconds old.
+ * The least recently used entry is evicted once the size limit is reached.
+ * TTL and size are read from the system properties {@value #TTL_PROPERTY} and {@value #MAX_ENTRIES_PROPERTY}.
+ */
+@Named
+public class RecentRequestsCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentRequestsCache.class);
+
+    public static final String TTL_PROPERTY = "wmpr.recent.cache.ttlSeconds";
+    public static final String MAX_ENTRIES_PROPERTY = "wmpr.recent.cache.maxEntries";
+    private static final int DEFAULT_TTL_SECONDS = 30;
+    public static final String MAX_STALE_PROPERTY = "wmpr.recent.cache.maxStaleSeconds";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_MAX_STALE_SECONDS = 600;
+
+    private final long ttlMillis;
+    private final long maxStaleMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+
+    public RecentRequestsCache() {
+        this.ttlMillis = Math.max(0, Integer.getInteger(TTL_PROPERTY, DEFAULT_TTL_SECONDS)) * 1000L;
+        this.maxEntries = Math.max(1, Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+        this.maxStaleMillis = Math.max(ttlMillis,
+                Math.max(0, Integer.getInteger(MAX_STALE_PROPERTY, DEFAULT_MAX_STALE_SECONDS)) * 1000L);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        log.debug("Recent requests cache created with ttl={}ms maxStale={}ms maxEntries={}", ttlMillis, maxStaleMillis, maxEntries);
+    }
+
+    /**
+     * Returns the cached page for the user and query key, or null when there is no fresh entry.
+     */
+    public Entry get(ApplicationUser user, String queryKey) {
+        String key = cacheKey(user, queryKey);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(maxStaleMillis)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || entry.isStale() || entry.isExpired(ttlMillis)) {
+            entry = null;
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the last good page for the user and query key, fresh or not, or null when there is none younger than
+     * the maximum stale age.
+     */
+    public Entry getStale(ApplicationUser user, String queryKey) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(cacheKey(user, queryKey));
+        }
+        if (entry == null || entry.isExpired(maxStaleMillis)) {
+            return null;
+        }
+        staleHits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Stores the page with the {@link RequestChangeLog} version it reflects
+     */
+    public void put(ApplicationUser user, String queryKey, RequestsPage page, String etag, long version) {
+        if (ttlMillis == 0) {
+            return;
+        }
+        Entry entry = new Entry(page, etag, version);
+        synchronized (entries) {
+            entries.put(cacheKey(user, queryKey), entry);
+        }
+    }
+
+    /**
+     * Marks every entry whose result contains the given issue as stale.
+     */
+    public void invalidateIssue(String issueKey) {
+        int marked = 0;
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (entry.containsIssue(issueKey)) {
+                    entry.stale = true;
+                    marked++;
+                }
+            }
+        }
+        log.debug("Marked {} cached results containing {} as stale", marked, issueKey);
+    }
+
+    /**
+     * Marks every entry as stale.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                entry.stale = true;
+            }
+        }
+        log.debug("Marked all cached results as stale");
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Times a stale entry was handed out in place of a fresh search
+     */
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String cacheKey(ApplicationUser user, String queryKey) {
+        return user.getKey() + '\n' + queryKey;
+    }
+
+    /**
+     * Immutable cached page for a single (user, query key) pair.
+     */
+    public static final class Entry {
+        private final RequestsPage page;
+        private final Set<String> issueKeys;
+        private final String etag;
+        private final long version;
+        private final long createdAt;
+        private volatile boolean stale;
+
+        Entry(RequestsPage page, String etag, long version) {
+            this.page = page;
+            Set<String> keys = new HashSet<>();
+            for (ServiceDeskRequest request : page.getRequests()) {
+                keys.add(request.getKey());
+            }
+            this.issueKeys = keys;
+            this.etag = etag;
+            this.version = version;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        public RequestsPage getPage() {
+            return page;
+        }
+
+        /**
+         * Opaque value of the cached result's entity tag, computed once when the entry was stored
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Change log version taken before the page was read; later changes may or may not be part of it
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * True once an issue event may have changed the result
+         */
+        public boolean isStale() {
+            return stale;
+        }
+
+        boolean containsIssue(String issueKey) {
+            return issueKeys.contains(issueKey);
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - createdAt >= ttlMillis;
+        }
+    }
+}
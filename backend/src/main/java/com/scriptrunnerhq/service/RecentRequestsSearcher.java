@@ -0,0 +1,405 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueFieldConstants;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.issue.search.SearchProvider;
+import com.atlassian.jira.issue.search.SearchQuery;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.issue.search.constants.SystemSearchConstants;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.clause.AndClause;
+import com.atlassian.query.clause.Clause;
+import com.atlassian.query.clause.TerminalClauseImpl;
+import com.atlassian.query.operand.MultiValueOperand;
+import com.atlassian.query.operand.SingleValueOperand;
+import com.atlassian.query.operator.Operator;
+import com.atlassian.query.order.OrderBy;
+import com.atlassian.query.order.OrderByImpl;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.RequestSummary;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the portal search and maps the hits to {@link ServiceDeskRequest}s.
+ * By default only the needed fields are read from the index through {@link RequestRowCollector}, so per-row cost
+ * does not depend on issue size or custom field count. Setting {@value #PROJECTION_PROPERTY} to false falls back to
+ * loading full {@link Issue} objects, paged by offset.
+ */
+@Named
+public class RecentRequestsSearcher {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentRequestsSearcher.class);
+
+    public static final String PROJECTION_PROPERTY = "wmpr.recent.projection";
+    private static final String UNKNOWN_REPORTER = "Unknown";
+
+    @JiraImport
+    private final SearchService searchService;
+
+    @JiraImport
+    private final SearchProvider searchProvider;
+
+    private final UserDisplayNames userDisplayNames;
+
+    private final StatusTable statusTable;
+
+    private final PortalMetrics metrics;
+
+    @Inject
+    public RecentRequestsSearcher(SearchService searchService, SearchProvider searchProvider,
+                                  UserDisplayNames userDisplayNames, StatusTable statusTable, PortalMetrics metrics) {
+        this.searchService = searchService;
+        this.searchProvider = searchProvider;
+        this.userDisplayNames = userDisplayNames;
+        this.statusTable = statusTable;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns up to {@code limit} requests matching the query in the query's sort order, starting after the cursor
+     */
+    public RequestsPage searchPage(ApplicationUser user, Query query, int limit, PageCursor cursor) throws SearchException {
+        boolean projection = Boolean.parseBoolean(System.getProperty(PROJECTION_PROPERTY, "true"));
+        boolean keyset = projection && isKeysetSortable(query);
+        if (cursor != null && cursor.isKeyset() != keyset) {
+            throw new IllegalArgumentException("Cursor does not match the configured query");
+        }
+
+        if (!projection) {
+            return searchIssues(user, query, cursor != null ? cursor.getOffset() : 0, limit);
+        }
+
+        if (keyset) {
+            return searchKeyset(user, query, limit, cursor);
+        }
+
+        int offset = cursor != null ? cursor.getOffset() : 0;
+        List<RequestRow> rows = searchRows(user, query, new PagerFilter(offset, limit + 1));
+        boolean more = rows.size() > limit;
+        return toPage(more ? rows.subList(0, limit) : rows, more ? PageCursor.offset(offset + limit) : null);
+    }
+
+    /**
+     * Keyset page: bound the query by the cursor's created timestamp, then drop rows already returned that share the
+     * cursor's millisecond. The index orders rows of the same millisecond arbitrarily, so each window is sorted by
+     * {@link RequestRow#NEWEST_FIRST} and the rows of its last millisecond, which may continue past it, are left out;
+     * a window too small to fill the page that way is widened.
+     */
+    private RequestsPage searchKeyset(ApplicationUser user, Query query, int limit, PageCursor cursor) throws SearchException {
+        Query pageQuery = cursor != null ? keysetQuery(query, cursor.getCreatedMillis()) : query;
+        // Headroom for the rows of the cursor's millisecond skipped below and the window's last millisecond
+        int window = cursor != null ? 2 * limit + 2 : limit + 2;
+        while (true) {
+            List<RequestRow> rows = searchRows(user, pageQuery, new PagerFilter(0, window));
+            boolean last = rows.size() < window;
+            List<RequestRow> sorted = new ArrayList<>(rows.subList(0, last ? rows.size() : completeRows(rows)));
+            Collections.sort(sorted, RequestRow.NEWEST_FIRST);
+
+            List<RequestRow> page = new ArrayList<>(limit);
+            boolean more = false;
+            for (RequestRow row : sorted) {
+                if (cursor != null && cursor.isAtOrBefore(row)) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    more = true;
+                    break;
+                }
+                page.add(row);
+            }
+            if (!more && !last) {
+                window *= 2;
+                continue;
+            }
+
+            PageCursor next = null;
+            if (more) {
+                RequestRow lastRow = page.get(page.size() - 1);
+                next = PageCursor.keyset(lastRow.getCreatedMillis(), lastRow.getIssueId());
+            }
+            return toPage(page, next);
+        }
+    }
+
+    /**
+     * Number of leading rows of a full created-descending window that are known to be complete: rows sharing the
+     * window's last created timestamp may continue past it, so they are not counted
+     */
+    public static int completeRows(List<RequestRow> rows) {
+        int end = rows.size();
+        if (end == 0) {
+            return 0;
+        }
+        long boundary = rows.get(end - 1).getCreatedMillis();
+        while (end > 0 && rows.get(end - 1).getCreatedMillis() == boundary) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * True when the query's primary sort is created descending, which keyset paging relies on
+     */
+    static boolean isKeysetSortable(Query query) {
+        OrderBy orderBy = query.getOrderByClause();
+        if (orderBy == null || orderBy.getSearchSorts().isEmpty()) {
+            return false;
+        }
+        SearchSort primary = orderBy.getSearchSorts().get(0);
+        return primary.getSortOrder() == SortOrder.DESC
+                && SystemSearchConstants.forCreatedDate().getJqlClauseNames().contains(primary.getField());
+    }
+
+    private static Query keysetQuery(Query query, long createdMillis) {
+        Clause bound = new TerminalClauseImpl(IssueFieldConstants.CREATED, Operator.LESS_THAN_EQUALS,
+                new SingleValueOperand(createdMillis));
+        Clause where = query.getWhereClause() != null ? new AndClause(query.getWhereClause(), bound) : bound;
+        return new QueryImpl(where, query.getOrderByClause(), null);
+    }
+
+    private RequestsPage toPage(List<RequestRow> rows, PageCursor next) {
+        long start = System.nanoTime();
+        List<ServiceDeskRequest> requests = new ArrayList<>(rows.size());
+        for (RequestRow row : rows) {
+            requests.add(toRequest(row));
+        }
+        metrics.record(PortalMetrics.Stage.RECENT_MAPPING, start);
+        return new RequestsPage(requests, next != null ? next.encode() : null);
+    }
+
+    /**
+     * Collects index rows for the page of the sorted result
+     */
+    public List<RequestRow> searchRows(ApplicationUser user, Query query, PagerFilter pager) throws SearchException {
+        long start = System.nanoTime();
+        List<RequestRow> rows;
+        try {
+            rows = collectRows(user, query, pager);
+        } catch (SearchException | RuntimeException e) {
+            metrics.recordError(PortalMetrics.Stage.RECENT_SEARCH);
+            throw e;
+        }
+        metrics.record(PortalMetrics.Stage.RECENT_SEARCH, start);
+        return rows;
+    }
+
+    /**
+     * The search of {@link #searchRows} without recording it, for queries the portal does not serve
+     */
+    List<RequestRow> collectRows(ApplicationUser user, Query query, PagerFilter pager) throws SearchException {
+        RequestRowCollector collector = new RequestRowCollector();
+        searchProvider.searchAndSort(SearchQuery.create(query, user), collector, pager);
+        return collector.getRows();
+    }
+
+    /**
+     * Counts the requests matching the query per status, read from the index without sorting or loading issues
+     */
+    public RequestSummary summarize(ApplicationUser user, Query query) throws SearchException {
+        long start = System.nanoTime();
+        Map<String, Long> counts;
+        try {
+            StatusCountCollector collector = new StatusCountCollector();
+            searchProvider.search(SearchQuery.create(query, user), collector);
+            counts = collector.getCounts();
+        } catch (IOException e) {
+            metrics.recordError(PortalMetrics.Stage.SUMMARY_SEARCH);
+            throw new SearchException(e);
+        } catch (SearchException | RuntimeException e) {
+            metrics.recordError(PortalMetrics.Stage.SUMMARY_SEARCH);
+            throw e;
+        }
+        metrics.record(PortalMetrics.Stage.SUMMARY_SEARCH, start);
+
+        List<RequestSummary.StatusCount> statuses = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            String statusId = count.getKey().isEmpty() ? null : count.getKey();
+            StatusTable.StatusInfo status = statusTable.get(statusId);
+            statuses.add(new RequestSummary.StatusCount(statusId, status.getName(), status.getCategoryKey(),
+                    count.getValue()));
+        }
+        return new RequestSummary(statuses);
+    }
+
+    /**
+     * Receives the batches of {@link #scan}
+     */
+    public interface BatchHandler {
+        void handle(List<ServiceDeskRequest> batch) throws IOException;
+    }
+
+    /**
+     * Reads every request matching the query, newest first, in windows of {@code batchSize} rows, and hands each to
+     * the handler before the next is read; returns the number of requests read.
+     * The query's own order is replaced by created descending so that each window is bounded by created date instead
+     * of an offset, which keeps every window equally cheap however deep the scan is. Rows sharing the last created
+     * timestamp of a full window may continue past it, so they are left to the next window; a window holding a
+     * single timestamp is widened until the timestamp fits. Memory use is bounded by the window size.
+     * An exception from the handler, such as a closed connection, ends the scan.
+     */
+    public long scan(ApplicationUser user, Query query, int batchSize, BatchHandler handler) throws SearchException, IOException {
+        Query sorted = new QueryImpl(query.getWhereClause(),
+                new OrderByImpl(new SearchSort(IssueFieldConstants.CREATED, SortOrder.DESC)), null);
+        long total = 0;
+        long bound = -1;
+        int window = batchSize;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Scan interrupted after " + total + " requests");
+            }
+            long start = System.nanoTime();
+            List<RequestRow> rows;
+            try {
+                rows = collectRows(user, bound >= 0 ? keysetQuery(sorted, bound) : sorted, new PagerFilter(0, window));
+            } catch (SearchException | RuntimeException e) {
+                metrics.recordError(PortalMetrics.Stage.EXPORT_BATCH);
+                throw e;
+            }
+            metrics.record(PortalMetrics.Stage.EXPORT_BATCH, start);
+
+            boolean last = rows.size() < window;
+            int end = last ? rows.size() : completeRows(rows);
+            if (end == 0 && !last) {
+                window *= 2;
+                continue;
+            }
+
+            List<ServiceDeskRequest> batch = new ArrayList<>(Math.min(end, batchSize));
+            for (int i = 0; i < end; i++) {
+                batch.add(toRequest(rows.get(i)));
+                if (batch.size() == batchSize) {
+                    handler.handle(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                handler.handle(batch);
+            }
+            total += end;
+
+            if (last || rows.get(end - 1).getCreatedMillis() <= 0) {
+                return total;
+            }
+            bound = rows.get(end - 1).getCreatedMillis() - 1;
+            window = batchSize;
+        }
+    }
+
+    /**
+     * Collects up to {@code max} rows of the sorted result, ignoring permissions; callers restrict the query to what
+     * its readers may browse
+     */
+    public List<RequestRow> searchRowsIgnoringPermissions(Query query, int max) throws SearchException {
+        RequestRowCollector collector = new RequestRowCollector();
+        searchProvider.searchAndSort(SearchQuery.create(query, null).overrideSecurity(true), collector,
+                new PagerFilter(0, max));
+        return collector.getRows();
+    }
+
+    /**
+     * Returns the row for the issue when it matches the query, ignoring permissions; callers check visibility per user
+     */
+    public RequestRow findMatchingRow(Query query, String issueKey) throws SearchException {
+        List<RequestRow> rows = findMatchingRows(query, Collections.singletonList(issueKey));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    /**
+     * Returns the rows of the given issues that match the query, ignoring permissions; callers restrict the query to
+     * what its readers may browse
+     */
+    public List<RequestRow> findMatchingRows(Query query, Collection<String> issueKeys) throws SearchException {
+        Clause keysClause = new TerminalClauseImpl(IssueFieldConstants.ISSUE_KEY, Operator.IN,
+                new MultiValueOperand(issueKeys.toArray(new String[issueKeys.size()])));
+        Clause where = query.getWhereClause() != null ? new AndClause(query.getWhereClause(), keysClause) : keysClause;
+        RequestRowCollector collector = new RequestRowCollector();
+        searchProvider.search(SearchQuery.create(new QueryImpl(where), null).overrideSecurity(true), collector);
+        return collector.getRows();
+    }
+
+    /**
+     * Returns the rows of the given issues that match the query and that the user may see
+     */
+    public List<RequestRow> findVisibleRows(ApplicationUser user, Query query, Collection<String> issueKeys) throws SearchException {
+        Clause keysClause = new TerminalClauseImpl(IssueFieldConstants.ISSUE_KEY, Operator.IN,
+                new MultiValueOperand(issueKeys.toArray(new String[issueKeys.size()])));
+        Clause where = query.getWhereClause() != null ? new AndClause(query.getWhereClause(), keysClause) : keysClause;
+        RequestRowCollector collector = new RequestRowCollector();
+        searchProvider.search(SearchQuery.create(new QueryImpl(where), user), collector);
+        return collector.getRows();
+    }
+
+    public ServiceDeskRequest toRequest(RequestRow row) {
+        StatusTable.StatusInfo status = statusTable.get(row.getStatusId());
+        return new ServiceDeskRequest(row.getKey(), row.getSummary(), reporterName(row.getReporterKey()),
+                row.getCreatedMillis() >= 0 ? row.getCreatedMillis() : ServiceDeskRequest.UNKNOWN_CREATED,
+                status.getName(), status.getCategoryKey());
+    }
+
+    /**
+     * Maps a fully loaded issue, as used by the hydration fallback
+     */
+    public ServiceDeskRequest toRequest(Issue issue) {
+        StatusTable.StatusInfo status = issue.getStatus() != null
+                ? statusTable.get(issue.getStatus().getId()) : StatusTable.StatusInfo.UNKNOWN;
+        return new ServiceDeskRequest(issue.getKey(), issue.getSummary(), reporterName(issue.getReporterId()),
+                issue.getCreated() != null ? issue.getCreated().getTime() : ServiceDeskRequest.UNKNOWN_CREATED,
+                status.getName(), status.getCategoryKey());
+    }
+
+    private String reporterName(String reporterKey) {
+        if (reporterKey == null) {
+            return UNKNOWN_REPORTER;
+        }
+        String displayName = userDisplayNames.get(reporterKey);
+        return displayName != null ? displayName : UNKNOWN_REPORTER;
+    }
+
+    private RequestsPage searchIssues(ApplicationUser user, Query query, int offset, int limit) throws SearchException {
+        long start = System.nanoTime();
+        SearchResults<Issue> searchResults;
+        try {
+            searchResults = searchService.search(user, query, new PagerFilter(offset, limit));
+        } catch (SearchException | RuntimeException e) {
+            metrics.recordError(PortalMetrics.Stage.RECENT_SEARCH);
+            throw e;
+        }
+        metrics.record(PortalMetrics.Stage.RECENT_SEARCH, start);
+        List<Issue> issues = searchResults.getResults();
+
+        start = System.nanoTime();
+
+        List<ServiceDeskRequest> requests = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            try {
+                requests.add(toRequest(issue));
+            } catch (Exception e) {
+                log.warn("Error processing issue {}: {}", issue.getKey(), e.getMessage());
+            }
+        }
+        metrics.record(PortalMetrics.Stage.RECENT_MAPPING, start);
+        boolean more = offset + issues.size() < searchResults.getTotal();
+        return new RequestsPage(requests, more ? PageCursor.offset(offset + limit).encode() : null);
+    }
+}
@@ -0,0 +1,490 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.atlassian.query.Query;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.RequestsPage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Materialized top-N rows of each configured JQL, kept current from issue events so that /recent does not search.
+ * There is a view per JQL and {@link PermissionContext.Scope}, holding the newest {@value #SIZE_PROPERTY} matches
+ * (default {@value #DEFAULT_SIZE}) among the issues of the scope, so reads return its rows as they are. Issue events
+ * are collected and re-checked in batches, one search per view for the changed issues of its projects; events of
+ * other projects cost nothing. Only created-descending JQL that depends neither on the user nor on the clock
+ * qualifies, read by users who have a scope; anything else, or a page reaching past the end of a view, falls back to
+ * a search.
+ * <p>
+ * Views are built by their first read and updated on a single background thread. They are rebuilt every
+ * {@value #REBUILD_MINUTES_PROPERTY} minutes to bound drift from changes that raise no issue event, and when more than
+ * {@value #PENDING_UPDATES} issues change before a batch is re-checked.
+ */
+@Named
+public class RecentRequestsView implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RecentRequestsView.class);
+
+    public static final String ENABLED_PROPERTY = "wmpr.recent.view.enabled";
+    public static final String SIZE_PROPERTY = "wmpr.recent.view.size";
+    public static final String REBUILD_MINUTES_PROPERTY = "wmpr.recent.view.rebuildMinutes";
+    private static final int DEFAULT_SIZE = 200;
+    private static final int DEFAULT_REBUILD_MINUTES = 15;
+    private static final int MAX_VIEWS = 32;
+    private static final int PENDING_UPDATES = 1000;
+    // Issue keys per re-check search
+    private static final int BATCH_SIZE = 100;
+    private static final long RETRY_MILLIS = 60_000;
+    private static final Pattern CLOCK_RELATIVE = Pattern.compile(
+            "\\b(now|startOf\\w*|endOf\\w*)\\s*\\(|[-+]\\d+\\s*[wdhm]\\b", Pattern.CASE_INSENSITIVE);
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final PermissionContext permissionContext;
+    private final JqlQueryCache jqlQueryCache;
+    private final RecentRequestsSearcher recentRequestsSearcher;
+    private final PortalMetrics metrics;
+
+    private final boolean enabled;
+    private final int size;
+    private final long rebuildMillis;
+    private final Map<String, View> views;
+    private final ThreadPoolExecutor updater;
+    // Issue id to key of the issues changed since the last batch, null for a deleted issue; guarded by itself
+    private final Map<Long, String> changed = new LinkedHashMap<>();
+    private boolean overflowed;
+    private final AtomicBoolean batchPending = new AtomicBoolean();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @Inject
+    public RecentRequestsView(PermissionContext permissionContext, JiraThreadLocalUtil jiraThreadLocalUtil,
+                              JqlQueryCache jqlQueryCache, RecentRequestsSearcher recentRequestsSearcher,
+                              PortalMetrics metrics) {
+        this.permissionContext = permissionContext;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.jqlQueryCache = jqlQueryCache;
+        this.recentRequestsSearcher = recentRequestsSearcher;
+        this.metrics = metrics;
+        this.enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+        this.size = Math.max(1, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+        this.rebuildMillis = Math.max(1, Integer.getInteger(REBUILD_MINUTES_PROPERTY, DEFAULT_REBUILD_MINUTES)) * 60_000L;
+        this.views = new LinkedHashMap<String, View>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+                return size() > MAX_VIEWS;
+            }
+        };
+        // At most one batch and one build per view are queued at a time, so the queue stays short
+        this.updater = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-recent-requests-view");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        updater.shutdownNow();
+    }
+
+    /**
+     * Returns the page from the view of the JQL, or null when the view cannot answer and the caller must search
+     */
+    public RequestsPage read(ApplicationUser user, String jql, int limit, PageCursor cursor) {
+        if (!enabled || (cursor != null && !cursor.isKeyset()) || JqlQueryCache.isUserRelative(jql)) {
+            return null;
+        }
+        PermissionContext.Scope scope = permissionContext.scopeOf(user);
+        if (scope == null) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        View view = view(jql, scope);
+        Snapshot snapshot = view.snapshot;
+        if (snapshot == null) {
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() - snapshot.builtAt > rebuildMillis) {
+            schedule(view);
+        }
+
+        long start = System.nanoTime();
+        List<RequestRow> rows = new ArrayList<>(limit);
+        boolean more = false;
+        for (RequestRow row : snapshot.rows) {
+            if (cursor != null && cursor.isAtOrBefore(row)) {
+                continue;
+            }
+            if (rows.size() == limit) {
+                more = true;
+                break;
+            }
+            rows.add(row);
+        }
+        if (rows.size() < limit && !snapshot.complete) {
+            // The page reaches past the newest matches the view holds
+            fallbacks.incrementAndGet();
+            return null;
+        }
+        // A full page from a truncated view may have more matches beyond it
+        more = more || (!snapshot.complete && !rows.isEmpty());
+
+        List<ServiceDeskRequest> requests = new ArrayList<>(rows.size());
+        for (RequestRow row : rows) {
+            requests.add(recentRequestsSearcher.toRequest(row));
+        }
+        PageCursor next = null;
+        if (more) {
+            RequestRow last = rows.get(rows.size() - 1);
+            next = PageCursor.keyset(last.getCreatedMillis(), last.getIssueId());
+        }
+        metrics.record(PortalMetrics.Stage.RECENT_VIEW, start);
+        hits.incrementAndGet();
+        return new RequestsPage(requests, next != null ? next.encode() : null);
+    }
+
+    /**
+     * Queues a re-check of a created or updated issue against the views of its project
+     */
+    public void onIssueChanged(Issue issue) {
+        onIssueChanged(issue.getId(), issue.getKey());
+    }
+
+    /**
+     * Queues a re-check of an issue against the views of its project; an issue that no longer matches is removed
+     */
+    public void onIssueChanged(long issueId, String issueKey) {
+        if (covers(issueKey)) {
+            enqueue(issueId, issueKey);
+        }
+    }
+
+    /**
+     * Queues removal of a deleted issue from every view
+     */
+    public void onIssueDeleted(long issueId) {
+        if (hasViews()) {
+            enqueue(issueId, null);
+        }
+    }
+
+    /**
+     * Drops every view; each is rebuilt by its next read
+     */
+    public void invalidateAll() {
+        for (View view : views()) {
+            view.snapshot = null;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Reads that had to search because no view could answer them
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    private View view(String jql, PermissionContext.Scope scope) {
+        String key = jql + '\n' + scope.getFingerprint();
+        View view;
+        synchronized (views) {
+            view = views.get(key);
+            if (view == null) {
+                view = new View(jql, scope);
+                views.put(key, view);
+            }
+        }
+        if (view.snapshot == null && !view.ineligible
+                && System.currentTimeMillis() - view.failedAt > RETRY_MILLIS) {
+            schedule(view);
+        }
+        return view;
+    }
+
+    /**
+     * True when a view may hold the issue, judged by its project
+     */
+    private boolean covers(String issueKey) {
+        for (View view : views()) {
+            if (view.scope.mayContain(issueKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasViews() {
+        synchronized (views) {
+            return !views.isEmpty();
+        }
+    }
+
+    private List<View> views() {
+        synchronized (views) {
+            return new ArrayList<>(views.values());
+        }
+    }
+
+    private void enqueue(long issueId, String issueKey) {
+        synchronized (changed) {
+            if (changed.size() < PENDING_UPDATES || changed.containsKey(issueId)) {
+                changed.put(issueId, issueKey);
+            } else {
+                overflowed = true;
+            }
+        }
+        if (!batchPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            updater.execute(new Task() {
+                @Override
+                void runTask() {
+                    applyChanges();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batchPending.set(false);
+        }
+    }
+
+    /**
+     * Re-checks the issues changed since the last batch against every view
+     */
+    private void applyChanges() {
+        // Changes queued from here on are left to the next batch
+        batchPending.set(false);
+        Map<Long, String> batch;
+        boolean rebuild;
+        synchronized (changed) {
+            batch = new LinkedHashMap<>(changed);
+            changed.clear();
+            rebuild = overflowed;
+            overflowed = false;
+        }
+        if (rebuild) {
+            log.debug("More than {} issues changed at once, rebuilding recent requests views", PENDING_UPDATES);
+        }
+        for (View view : views()) {
+            if (rebuild) {
+                view.snapshot = null;
+                schedule(view);
+            } else {
+                refresh(view, batch);
+            }
+        }
+    }
+
+    private void schedule(final View view) {
+        if (!view.pending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            updater.execute(new Task() {
+                @Override
+                void runTask() {
+                    try {
+                        build(view);
+                    } finally {
+                        view.pending.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            view.pending.set(false);
+        }
+    }
+
+    private void build(View view) {
+        JqlQueryCache.ParsedJql parsed = jqlQueryCache.parse(null, view.jql);
+        boolean projection = Boolean.parseBoolean(System.getProperty(RecentRequestsSearcher.PROJECTION_PROPERTY, "true"));
+        if (!projection || !parsed.isValid() || parsed.isUserRelative()
+                || CLOCK_RELATIVE.matcher(view.jql).find()
+                || !RecentRequestsSearcher.isKeysetSortable(parsed.getQuery())) {
+            view.ineligible = true;
+            log.debug("JQL cannot be materialized, /recent will search: {}", view.jql);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            // The index orders rows of the same millisecond arbitrarily, so a truncated view leaves out the rows of
+            // its last millisecond, which may continue past it; a window of a single millisecond is widened
+            int window = size + 1;
+            List<RequestRow> rows;
+            boolean complete;
+            while (true) {
+                rows = new ArrayList<>(recentRequestsSearcher.searchRowsIgnoringPermissions(
+                        view.scope.restrict(parsed.getQuery()), window));
+                complete = rows.size() < window;
+                int end = complete ? rows.size() : RecentRequestsSearcher.completeRows(rows);
+                if (end > 0 || complete) {
+                    rows = new ArrayList<>(rows.subList(0, end));
+                    break;
+                }
+                window *= 2;
+            }
+            Collections.sort(rows, RequestRow.NEWEST_FIRST);
+            view.query = parsed;
+            view.snapshot = new Snapshot(rows, complete, start);
+            log.debug("Materialized {} rows for {} in {}ms", rows.size(), view.jql,
+                    System.currentTimeMillis() - start);
+        } catch (SearchException | RuntimeException e) {
+            view.failedAt = System.currentTimeMillis();
+            log.warn("Failed to materialize recent requests for {}: {}", view.jql, e.getMessage());
+        }
+    }
+
+    private void refresh(View view, Map<Long, String> batch) {
+        Snapshot snapshot = view.snapshot;
+        if (snapshot == null) {
+            return;
+        }
+        List<String> issueKeys = new ArrayList<>();
+        for (String issueKey : batch.values()) {
+            if (issueKey != null && view.scope.mayContain(issueKey)) {
+                issueKeys.add(issueKey);
+            }
+        }
+        try {
+            Query query = view.scope.restrict(view.query.getQuery());
+            Map<Long, RequestRow> matches = new HashMap<>();
+            for (int from = 0; from < issueKeys.size(); from += BATCH_SIZE) {
+                List<String> keys = issueKeys.subList(from, Math.min(issueKeys.size(), from + BATCH_SIZE));
+                for (RequestRow row : recentRequestsSearcher.findMatchingRows(query, keys)) {
+                    matches.put(row.getIssueId(), row);
+                }
+            }
+            // Deleted issues, and changed issues that no longer match or moved out of the scope, leave the view
+            Snapshot next = snapshot;
+            for (Long issueId : batch.keySet()) {
+                next = next.apply(issueId, matches.get(issueId), size);
+            }
+            view.snapshot = next;
+            if (!next.complete && next.rows.size() < size / 2) {
+                // Removals have eaten into the headroom; rows beyond the view may now belong in it
+                schedule(view);
+            }
+        } catch (SearchException | RuntimeException e) {
+            view.snapshot = null;
+            log.warn("Failed to update recent requests view for {}: {}", view.jql, e.getMessage());
+        }
+    }
+
+    /**
+     * Background work with Jira's thread-local state set up and released around it
+     */
+    private abstract class Task implements Runnable {
+        @Override
+        public final void run() {
+            jiraThreadLocalUtil.preCall();
+            try {
+                runTask();
+            } catch (RuntimeException e) {
+                log.warn("Recent requests view update failed: {}", e.getMessage());
+            } finally {
+                jiraThreadLocalUtil.postCall(log);
+            }
+        }
+
+        abstract void runTask();
+    }
+
+    /**
+     * The materialized rows of one JQL; written only by the updater thread
+     */
+    private static final class View {
+        private final String jql;
+        private final PermissionContext.Scope scope;
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private volatile JqlQueryCache.ParsedJql query;
+        private volatile Snapshot snapshot;
+        private volatile boolean ineligible;
+        private volatile long failedAt;
+
+        View(String jql, PermissionContext.Scope scope) {
+            this.jql = jql;
+            this.scope = scope;
+        }
+    }
+
+    /**
+     * Immutable rows of a view, newest first. A complete snapshot holds every match; otherwise it holds exactly the
+     * newest {@code rows.size()} matches.
+     */
+    private static final class Snapshot {
+        private final List<RequestRow> rows;
+        private final boolean complete;
+        private final long builtAt;
+
+        Snapshot(List<RequestRow> rows, boolean complete, long builtAt) {
+            this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+            this.complete = complete;
+            this.builtAt = builtAt;
+        }
+
+        /**
+         * Snapshot with the issue's row replaced, inserted or removed; a null row means the issue no longer matches
+         */
+        Snapshot apply(long issueId, RequestRow row, int size) {
+            List<RequestRow> next = new ArrayList<>(rows);
+            int index = -1;
+            for (int i = 0; i < next.size(); i++) {
+                if (next.get(i).getIssueId() == issueId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (row == null) {
+                if (index < 0) {
+                    return this;
+                }
+                next.remove(index);
+                return new Snapshot(next, complete, builtAt);
+            }
+            if (index >= 0) {
+                next.set(index, row);
+                return new Snapshot(next, complete, builtAt);
+            }
+
+            // Outside a truncated view a new match only belongs if it sorts before the oldest row held
+            if (!complete && !next.isEmpty() && RequestRow.NEWEST_FIRST.compare(row, next.get(next.size() - 1)) > 0) {
+                return this;
+            }
+            int insertAt = Collections.binarySearch(next, row, RequestRow.NEWEST_FIRST);
+            next.add(insertAt < 0 ? -insertAt - 1 : insertAt, row);
+            boolean stillComplete = complete;
+            if (next.size() > size) {
+                next.remove(next.size() - 1);
+                stillComplete = false;
+            }
+            return new Snapshot(next, stillComplete, builtAt);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.permission.ProjectPermissions;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes changes to the portal request list to open Server-Sent Events subscriptions.
+ * Each issue event is matched once per distinct JQL among the subscribers' portals, on a single background thread,
+ * and the result is fanned out to every subscriber of that JQL that may browse the issue. The number of open
+ * subscriptions per node is capped by {@value #MAX_CONNECTIONS_PROPERTY}.
+ */
+@Named
+public class RequestChangeBroadcaster implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestChangeBroadcaster.class);
+
+    public static final String MAX_CONNECTIONS_PROPERTY = "wmpr.sse.maxConnections";
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final int SUBSCRIPTION_QUEUE_CAPACITY = 100;
+    private static final int PENDING_EVALUATIONS = 1000;
+
+    @JiraImport
+    private final PermissionManager permissionManager;
+
+    @JiraImport
+    private final IssueManager issueManager;
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final PortalSettingsStore settingsStore;
+    private final JqlQueryCache jqlQueryCache;
+    private final RecentRequestsSearcher recentRequestsSearcher;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final int maxConnections;
+    private final ThreadPoolExecutor evaluator;
+    private final Gson gson = new Gson();
+
+    @Inject
+    public RequestChangeBroadcaster(PermissionManager permissionManager, IssueManager issueManager,
+                                    JiraThreadLocalUtil jiraThreadLocalUtil, PortalSettingsStore settingsStore,
+                                    JqlQueryCache jqlQueryCache, RecentRequestsSearcher recentRequestsSearcher) {
+        this.permissionManager = permissionManager;
+        this.issueManager = issueManager;
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.settingsStore = settingsStore;
+        this.jqlQueryCache = jqlQueryCache;
+        this.recentRequestsSearcher = recentRequestsSearcher;
+        this.maxConnections = Math.max(0, Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS));
+        this.evaluator = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(PENDING_EVALUATIONS), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-request-change-broadcaster");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                // Too far behind to deliver individual deltas; let every client reload instead
+                if (!executor.isShutdown()) {
+                    broadcast(Event.REFRESH);
+                }
+            }
+        });
+    }
+
+    /**
+     * Opens a subscription for the user on the portal's settings scope (see {@link PortalSettingsStore#forPortal}),
+     * or returns null when the per-node connection cap is reached
+     */
+    public Subscription subscribe(ApplicationUser user, String projectKey, String portalId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            log.debug("Rejected subscription for {}: {} connections open", user.getName(), maxConnections);
+            return null;
+        }
+        Subscription subscription = new Subscription(user, projectKey, portalId);
+        subscriptions.add(subscription);
+        log.debug("Subscription opened for {}, {} open", user.getName(), connections.get());
+        return subscription;
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Queues evaluation of a created issue or a status change; a no-op when nobody is subscribed
+     */
+    public void onIssueChanged(final Issue issue, final boolean created) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        evaluator.execute(new Task() {
+            @Override
+            void runTask() {
+                evaluate(issue, created);
+            }
+        });
+    }
+
+    /**
+     * Queues evaluation of an issue changed on another node, loaded on the evaluator thread; an issue that no longer
+     * exists is skipped
+     */
+    public void onIssueChanged(final long issueId, final boolean created) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        evaluator.execute(new Task() {
+            @Override
+            void runTask() {
+                Issue issue = issueManager.getIssueObject(issueId);
+                if (issue != null) {
+                    evaluate(issue, created);
+                }
+            }
+        });
+    }
+
+    private void evaluate(Issue issue, boolean created) {
+        // Portals configured with the same JQL share one evaluation
+        Map<String, List<Subscription>> byJql = new HashMap<>();
+        for (Subscription subscription : subscriptions) {
+            String jql;
+            try {
+                jql = settingsStore.forPortal(subscription.projectKey, subscription.portalId).getJql();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (jql == null) {
+                continue;
+            }
+            List<Subscription> group = byJql.get(jql);
+            if (group == null) {
+                group = new ArrayList<>();
+                byJql.put(jql, group);
+            }
+            group.add(subscription);
+        }
+        for (Map.Entry<String, List<Subscription>> entry : byJql.entrySet()) {
+            evaluate(issue, created, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void evaluate(Issue issue, boolean created, String jql, List<Subscription> group) {
+        try {
+            JqlQueryCache.ParsedJql parsed = jqlQueryCache.parse(null, jql);
+            if (parsed.isUserRelative()) {
+                // The match differs per user, so there is no single evaluation to share
+                for (Subscription subscription : group) {
+                    subscription.offer(Event.REFRESH);
+                }
+                return;
+            }
+            if (!parsed.isValid()) {
+                return;
+            }
+
+            RequestRow row = recentRequestsSearcher.findMatchingRow(parsed.getQuery(), issue.getKey());
+            Event event;
+            if (row != null) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("type", created ? "created" : "updated");
+                data.put("request", recentRequestsSearcher.toRequest(row));
+                event = new Event("request", gson.toJson(data));
+            } else if (!created) {
+                // No longer matches, e.g. transitioned out of the configured statuses
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("type", "removed");
+                data.put("key", issue.getKey());
+                event = new Event("request", gson.toJson(data));
+            } else {
+                return;
+            }
+
+            for (Subscription subscription : group) {
+                if (permissionManager.hasPermission(ProjectPermissions.BROWSE_PROJECTS, issue, subscription.user)) {
+                    subscription.offer(event);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to evaluate change to {}: {}", issue.getKey(), e.getMessage());
+        }
+    }
+
+    private void broadcast(Event event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        evaluator.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.queue.clear();
+            subscription.offer(Event.CLOSE);
+        }
+    }
+
+    /**
+     * Background work with Jira's thread-local state set up and released around it
+     */
+    private abstract class Task implements Runnable {
+        @Override
+        public final void run() {
+            jiraThreadLocalUtil.preCall();
+            try {
+                runTask();
+            } catch (RuntimeException e) {
+                log.warn("Request change evaluation failed: {}", e.getMessage());
+            } finally {
+                jiraThreadLocalUtil.postCall(log);
+            }
+        }
+
+        abstract void runTask();
+    }
+
+    /**
+     * One open event stream. Events are buffered per subscriber; a subscriber that falls behind gets a single
+     * refresh event in place of the backlog.
+     */
+    public final class Subscription {
+        private final ApplicationUser user;
+        private final String projectKey;
+        private final String portalId;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(SUBSCRIPTION_QUEUE_CAPACITY);
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscription(ApplicationUser user, String projectKey, String portalId) {
+            this.user = user;
+            this.projectKey = projectKey;
+            this.portalId = portalId;
+        }
+
+        /**
+         * Waits up to the timeout for the next event; returns null on timeout
+         */
+        public Event next(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        private void offer(Event event) {
+            if (!queue.offer(event)) {
+                queue.clear();
+                queue.offer(Event.REFRESH);
+            }
+        }
+
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                connections.decrementAndGet();
+                log.debug("Subscription closed for {}, {} open", user.getName(), connections.get());
+            }
+        }
+    }
+
+    /**
+     * A named event with a JSON data line
+     */
+    public static final class Event {
+        /** Tells the client to reload the list */
+        public static final Event REFRESH = new Event("refresh", "{}");
+        /** Tells the stream to end, e.g. on plugin shutdown */
+        public static final Event CLOSE = new Event("close", "{}");
+
+        private final String name;
+        private final String data;
+
+        Event(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+}
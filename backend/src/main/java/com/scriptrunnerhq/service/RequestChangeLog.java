@@ -0,0 +1,141 @@
+package com.scriptrunnerhq.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Numbered log of the issue changes seen by this node, behind the delta responses of /recent.
+ * Every change gets the next version, and each /recent response carries a token for the version it reflects. A
+ * client that sends the token back is told which issues changed since. Only the last {@value #SIZE_PROPERTY}
+ * changes are kept; a token that is older, that was issued by another node or before a restart, or that was issued
+ * for another JQL is not answered, and the client gets a full page instead.
+ */
+@Named
+public class RequestChangeLog {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestChangeLog.class);
+
+    public static final String SIZE_PROPERTY = "wmpr.recent.changeLog.size";
+    private static final int DEFAULT_SIZE = 10_000;
+
+    public enum ChangeType {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final int size;
+    private final String[] issueKeys;
+    private final ChangeType[] types;
+    // Tells tokens of this log apart from those of other nodes and earlier starts
+    private final String epoch;
+
+    private long version;
+    private long floor;
+
+    private final AtomicLong deltas = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public RequestChangeLog() {
+        this.size = Math.max(1, Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+        this.issueKeys = new String[size];
+        this.types = new ChangeType[size];
+        this.epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    }
+
+    /**
+     * Appends a change of the issue and returns its version
+     */
+    public synchronized long record(String issueKey, ChangeType type) {
+        version++;
+        int slot = (int) (version % size);
+        issueKeys[slot] = issueKey;
+        types[slot] = type;
+        return version;
+    }
+
+    /**
+     * Forgets every change recorded so far, for when changes were missed; all earlier tokens fall back to a full page
+     */
+    public synchronized void truncate() {
+        floor = version;
+        log.debug("Change log truncated at version {}", version);
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the latest change of each issue changed after the version, in the order of their first change, or null
+     * when the version is no longer covered or more than {@code maxIssues} issues changed
+     */
+    public Map<String, ChangeType> since(long since, int maxIssues) {
+        Map<String, ChangeType> changes = collect(since, maxIssues);
+        (changes != null ? deltas : fallbacks).incrementAndGet();
+        return changes;
+    }
+
+    private synchronized Map<String, ChangeType> collect(long since, int maxIssues) {
+        if (since < floor || since > version || version - since > size) {
+            return null;
+        }
+        Map<String, ChangeType> changes = new LinkedHashMap<>();
+        for (long v = since + 1; v <= version; v++) {
+            int slot = (int) (v % size);
+            ChangeType previous = changes.get(issueKeys[slot]);
+            // An issue created since the version stays new to the client whatever happened to it afterwards
+            ChangeType type = previous == ChangeType.CREATED && types[slot] == ChangeType.UPDATED
+                    ? ChangeType.CREATED : types[slot];
+            changes.put(issueKeys[slot], type);
+            if (changes.size() > maxIssues) {
+                return null;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Token handed to clients for the version of a response to the JQL
+     */
+    public String token(long version, String jql) {
+        return epoch + '.' + Long.toString(version, 36) + '.' + Integer.toString(jql.hashCode() & 0x7fffffff, 36);
+    }
+
+    /**
+     * Version of a token issued by {@link #token}, or -1 when the token is malformed or was issued by another log
+     * or for another JQL
+     */
+    public long parseToken(String token, String jql) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3 || !parts[0].equals(epoch)
+                || !parts[2].equals(Integer.toString(jql.hashCode() & 0x7fffffff, 36))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(parts[1], 36);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Delta requests answered from the log
+     */
+    public long getDeltas() {
+        return deltas.get();
+    }
+
+    /**
+     * Delta requests whose version was no longer covered, answered with a full page
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+}
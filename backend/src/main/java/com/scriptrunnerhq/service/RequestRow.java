@@ -0,0 +1,64 @@
+package com.scriptrunnerhq.service;
+
+import java.util.Comparator;
+
+/**
+ * The handful of index fields needed to render one portal request, read without loading the Issue.
+ */
+public final class RequestRow {
+
+    /**
+     * Newest first; rows created in the same millisecond are ordered by issue id, descending, as the keyset
+     * {@link PageCursor} expects
+     */
+    public static final Comparator<RequestRow> NEWEST_FIRST = new Comparator<RequestRow>() {
+        @Override
+        public int compare(RequestRow a, RequestRow b) {
+            int byCreated = Long.compare(b.getCreatedMillis(), a.getCreatedMillis());
+            return byCreated != 0 ? byCreated : Long.compare(b.getIssueId(), a.getIssueId());
+        }
+    };
+
+    private final long issueId;
+    private final String key;
+    private final String summary;
+    private final String reporterKey;
+    private final long createdMillis;
+    private final String statusId;
+
+    public RequestRow(long issueId, String key, String summary, String reporterKey, long createdMillis, String statusId) {
+        this.issueId = issueId;
+        this.key = key;
+        this.summary = summary;
+        this.reporterKey = reporterKey;
+        this.createdMillis = createdMillis;
+        this.statusId = statusId;
+    }
+
+    public long getIssueId() {
+        return issueId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getReporterKey() {
+        return reporterKey;
+    }
+
+    /**
+     * Created timestamp in epoch millis, or -1 when the index has none
+     */
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    public String getStatusId() {
+        return statusId;
+    }
+}
@@ -0,0 +1,71 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.issue.index.DocumentConstants;
+import com.atlassian.jira.issue.search.constants.SystemSearchConstants;
+import com.atlassian.jira.util.LuceneUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Lucene collector that reads only the stored fields behind a {@link RequestRow}.
+ * Documents are recorded in the order they are collected, which for a sorted search is the sort order.
+ */
+class RequestRowCollector extends SimpleCollector {
+
+    static final String KEY_FIELD = DocumentConstants.ISSUE_KEY;
+    static final String ID_FIELD = DocumentConstants.ISSUE_ID;
+    static final String SUMMARY_FIELD = SystemSearchConstants.forSummary().getIndexField();
+    static final String REPORTER_FIELD = SystemSearchConstants.forReporter().getIndexField();
+    static final String CREATED_FIELD = SystemSearchConstants.forCreatedDate().getIndexField();
+    static final String STATUS_FIELD = SystemSearchConstants.forStatus().getIndexField();
+
+    private static final Set<String> FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            KEY_FIELD, ID_FIELD, SUMMARY_FIELD, REPORTER_FIELD, CREATED_FIELD, STATUS_FIELD)));
+
+    private final List<RequestRow> rows = new ArrayList<>();
+    private LeafReader reader;
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) {
+        this.reader = context.reader();
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        Document document = reader.document(doc, FIELDS);
+        rows.add(new RequestRow(
+                parseLong(document.get(ID_FIELD)),
+                document.get(KEY_FIELD),
+                document.get(SUMMARY_FIELD),
+                document.get(REPORTER_FIELD),
+                parseDate(document.get(CREATED_FIELD)),
+                document.get(STATUS_FIELD)));
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    List<RequestRow> getRows() {
+        return rows;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long parseDate(String value) {
+        Date date = value != null ? LuceneUtils.stringToDate(value) : null;
+        return date != null ? date.getTime() : -1;
+    }
+}
@@ -0,0 +1,164 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.model.RequestSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of /recent/summary counts keyed by (user, JQL).
+ * Any issue event may move a request between statuses, so every event marks all entries stale. Stale entries are
+ * kept as the last good result, served when a fresh count misses its deadline, until they are
+ * {@value RecentRequestsCache#MAX_STALE_PROPERTY} seconds old.
+ * TTL and size are read from the system properties {@value #TTL_PROPERTY} and {@value #MAX_ENTRIES_PROPERTY}.
+ */
+@Named
+public class RequestSummaryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RequestSummaryCache.class);
+
+    public static final String TTL_PROPERTY = "wmpr.summary.cache.ttlSeconds";
+    public static final String MAX_ENTRIES_PROPERTY = "wmpr.summary.cache.maxEntries";
+    private static final int DEFAULT_TTL_SECONDS = 60;
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_MAX_STALE_SECONDS = 600;
+
+    private final long ttlMillis;
+    private final long maxStaleMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public RequestSummaryCache() {
+        this.ttlMillis = Math.max(0, Integer.getInteger(TTL_PROPERTY, DEFAULT_TTL_SECONDS)) * 1000L;
+        this.maxEntries = Math.max(1, Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+        this.maxStaleMillis = Math.max(ttlMillis, Math.max(0,
+                Integer.getInteger(RecentRequestsCache.MAX_STALE_PROPERTY, DEFAULT_MAX_STALE_SECONDS)) * 1000L);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        log.debug("Request summary cache created with ttl={}ms maxStale={}ms maxEntries={}", ttlMillis, maxStaleMillis, maxEntries);
+    }
+
+    /**
+     * Returns the cached summary for the user and JQL, or null when there is no fresh entry.
+     */
+    public Entry get(ApplicationUser user, String jql) {
+        String key = cacheKey(user, jql);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.isExpired(maxStaleMillis)) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || entry.isStale() || entry.isExpired(ttlMillis)) {
+            entry = null;
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the last good summary for the user and JQL, fresh or not, or null when there is none younger than the
+     * maximum stale age.
+     */
+    public Entry getStale(ApplicationUser user, String jql) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(cacheKey(user, jql));
+        }
+        return entry == null || entry.isExpired(maxStaleMillis) ? null : entry;
+    }
+
+    public void put(ApplicationUser user, String jql, RequestSummary summary, String etag) {
+        if (ttlMillis == 0) {
+            return;
+        }
+        Entry entry = new Entry(summary, etag);
+        synchronized (entries) {
+            entries.put(cacheKey(user, jql), entry);
+        }
+    }
+
+    /**
+     * Marks every entry as stale.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                entry.stale = true;
+            }
+        }
+        log.debug("Marked all cached summaries as stale");
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String cacheKey(ApplicationUser user, String jql) {
+        return user.getKey() + '\n' + jql;
+    }
+
+    /**
+     * Immutable cached summary for a single (user, JQL) pair.
+     */
+    public static final class Entry {
+        private final RequestSummary summary;
+        private final String etag;
+        private final long createdAt;
+        private volatile boolean stale;
+
+        Entry(RequestSummary summary, String etag) {
+            this.summary = summary;
+            this.etag = etag;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+        public RequestSummary getSummary() {
+            return summary;
+        }
+
+        /**
+         * Entity tag of the cached summary, computed once when the entry was stored
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * True once an issue event may have changed the counts
+         */
+        public boolean isStale() {
+            return stale;
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - createdAt >= ttlMillis;
+        }
+    }
+}
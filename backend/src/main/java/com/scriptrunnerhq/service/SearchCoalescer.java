@@ -0,0 +1,164 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.issue.search.SearchException;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight execution of identical searches on a bounded pool, so a slow index never blocks request threads.
+ * The first caller for a key submits the search; callers arriving while it is in flight wait for the same result.
+ * Every caller waits at most {@value #TIMEOUT_PROPERTY} milliseconds. A search that misses the deadline keeps
+ * running, so whatever it stores on completion refreshes the cache for later callers.
+ * Pool size and queue length are read from {@value #THREADS_PROPERTY} and {@value #QUEUE_SIZE_PROPERTY}.
+ */
+@Named
+public class SearchCoalescer implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchCoalescer.class);
+
+    public static final String TIMEOUT_PROPERTY = "wmpr.recent.search.timeoutMillis";
+    public static final String THREADS_PROPERTY = "wmpr.recent.search.threads";
+    public static final String QUEUE_SIZE_PROPERTY = "wmpr.recent.search.queueSize";
+    private static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_QUEUE_SIZE = 100;
+
+    @JiraImport
+    private final JiraThreadLocalUtil jiraThreadLocalUtil;
+
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor pool;
+    private final long timeoutMillis;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Inject
+    public SearchCoalescer(JiraThreadLocalUtil jiraThreadLocalUtil) {
+        this.jiraThreadLocalUtil = jiraThreadLocalUtil;
+        this.timeoutMillis = Math.max(1, Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_MILLIS));
+        int threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS));
+        int queueSize = Math.max(1, Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wmpr-recent-search-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the search, or joins an identical one already in flight. The key must cover everything the result
+     * depends on, including the caller's permissions. Throws TimeoutException when the result is not ready by the
+     * deadline or the pool is saturated.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final String key, final Callable<T> search) throws SearchException, TimeoutException {
+        FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                // Pool threads are not request threads; Jira's thread-local state must be set up and released
+                jiraThreadLocalUtil.preCall();
+                try {
+                    return search.call();
+                } finally {
+                    jiraThreadLocalUtil.postCall(log);
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                inFlight.remove(key, this);
+            }
+        };
+
+        FutureTask<T> future;
+        FutureTask<?> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                pool.execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(key, task);
+                rejected.incrementAndGet();
+                throw new TimeoutException("Search pool saturated");
+            }
+            executed.incrementAndGet();
+            future = task;
+        } else {
+            coalesced.incrementAndGet();
+            future = (FutureTask<T>) existing;
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timedOut.incrementAndGet();
+            log.debug("Search did not finish within {}ms, leaving it to complete in the background", timeoutMillis);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchException("Interrupted while waiting for search", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * Callers that were served by another caller's search
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Callers that stopped waiting at the deadline
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Searches not started because the pool queue was full
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private static SearchException unwrap(Throwable cause) {
+        if (cause instanceof SearchException) {
+            return (SearchException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new SearchException(cause);
+    }
+}
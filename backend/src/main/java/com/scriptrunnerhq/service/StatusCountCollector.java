@@ -0,0 +1,81 @@
+package com.scriptrunnerhq.service;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.SimpleCollector;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lucene collector that counts the matching documents per status id.
+ * Where a segment has doc values for the status field, each hit is one ordinal increment and the ordinals are
+ * resolved once per segment; otherwise only the stored status field of each hit is read.
+ */
+class StatusCountCollector extends SimpleCollector {
+
+    private static final Set<String> FIELDS = Collections.singleton(RequestRowCollector.STATUS_FIELD);
+
+    private final Map<String, Long> counts = new HashMap<>();
+    private LeafReader reader;
+    private SortedDocValues statusValues;
+    private int[] ordinalCounts;
+
+    @Override
+    protected void doSetNextReader(LeafReaderContext context) throws IOException {
+        flush();
+        reader = context.reader();
+        statusValues = reader.getSortedDocValues(RequestRowCollector.STATUS_FIELD);
+        ordinalCounts = statusValues != null ? new int[statusValues.getValueCount()] : null;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        if (statusValues != null) {
+            if (statusValues.advanceExact(doc)) {
+                ordinalCounts[statusValues.ordValue()]++;
+            } else {
+                add(null, 1);
+            }
+            return;
+        }
+        Document document = reader.document(doc, FIELDS);
+        add(document.get(RequestRowCollector.STATUS_FIELD), 1);
+    }
+
+    @Override
+    public boolean needsScores() {
+        return false;
+    }
+
+    /**
+     * Hits per status id; hits without a status are counted under the empty id
+     */
+    Map<String, Long> getCounts() throws IOException {
+        flush();
+        return counts;
+    }
+
+    private void flush() throws IOException {
+        if (ordinalCounts == null) {
+            return;
+        }
+        for (int ordinal = 0; ordinal < ordinalCounts.length; ordinal++) {
+            if (ordinalCounts[ordinal] > 0) {
+                add(statusValues.lookupOrd(ordinal).utf8ToString(), ordinalCounts[ordinal]);
+            }
+        }
+        ordinalCounts = null;
+    }
+
+    private void add(String statusId, long count) {
+        String key = statusId != null ? statusId : "";
+        Long current = counts.get(key);
+        counts.put(key, current != null ? current + count : count);
+    }
+}
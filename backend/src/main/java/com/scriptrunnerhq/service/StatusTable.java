@@ -0,0 +1,112 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.config.ConstantsManager;
+import com.atlassian.jira.issue.status.Status;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory lookup from status id to status name and status category key.
+ * The table is rebuilt from {@link ConstantsManager} at most once per refresh interval, and right away when
+ * workflows change. Rows of the same status share one {@link StatusInfo}, and an unchanged status keeps its instance
+ * across rebuilds, so mapped requests hold no status strings of their own.
+ */
+@Named
+public class StatusTable {
+
+    private static final Logger log = LoggerFactory.getLogger(StatusTable.class);
+
+    private static final long REFRESH_INTERVAL_MILLIS = 60 * 1000L;
+
+    public static final String UNKNOWN_STATUS = "Unknown";
+    public static final String UNKNOWN_CATEGORY = "unknown";
+
+    @JiraImport
+    private final ConstantsManager constantsManager;
+
+    private volatile Map<String, StatusInfo> statuses = Collections.emptyMap();
+    private volatile long loadedAt;
+
+    @Inject
+    public StatusTable(ConstantsManager constantsManager) {
+        this.constantsManager = constantsManager;
+    }
+
+    /**
+     * Returns the status for the id; unknown ids trigger a rebuild and otherwise resolve to {@link #UNKNOWN_STATUS}
+     */
+    public StatusInfo get(String statusId) {
+        if (statusId == null) {
+            return StatusInfo.UNKNOWN;
+        }
+        StatusInfo info = current().get(statusId);
+        if (info == null) {
+            info = rebuild().get(statusId);
+        }
+        return info != null ? info : StatusInfo.UNKNOWN;
+    }
+
+    public void invalidate() {
+        loadedAt = 0;
+    }
+
+    private Map<String, StatusInfo> current() {
+        if (System.currentTimeMillis() - loadedAt > REFRESH_INTERVAL_MILLIS) {
+            return rebuild();
+        }
+        return statuses;
+    }
+
+    private synchronized Map<String, StatusInfo> rebuild() {
+        Map<String, StatusInfo> previous = statuses;
+        Map<String, String> categories = new HashMap<>();
+        Map<String, StatusInfo> table = new HashMap<>();
+        for (Status status : constantsManager.getStatuses()) {
+            String category = status.getStatusCategory() != null ? status.getStatusCategory().getKey() : UNKNOWN_CATEGORY;
+            String shared = categories.get(category);
+            if (shared == null) {
+                categories.put(category, category);
+                shared = category;
+            }
+            StatusInfo info = previous.get(status.getId());
+            if (info == null || !info.name.equals(status.getName()) || !info.categoryKey.equals(shared)) {
+                info = new StatusInfo(status.getName(), shared);
+            }
+            table.put(status.getId(), info);
+        }
+        statuses = table;
+        loadedAt = System.currentTimeMillis();
+        log.debug("Loaded {} statuses", table.size());
+        return table;
+    }
+
+    /**
+     * Status name and category key
+     */
+    public static final class StatusInfo {
+        static final StatusInfo UNKNOWN = new StatusInfo(UNKNOWN_STATUS, UNKNOWN_CATEGORY);
+
+        private final String name;
+        private final String categoryKey;
+
+        StatusInfo(String name, String categoryKey) {
+            this.name = name;
+            this.categoryKey = categoryKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getCategoryKey() {
+            return categoryKey;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.user.util.UserManager;
+import com.atlassian.plugin.spring.scanner.annotation.imports.JiraImport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory lookup from user key to display name, so the reporters of a page are not looked up row by row.
+ * Unknown keys are cached as well. Entries are dropped on user and directory events and otherwise live for
+ * {@value #TTL_PROPERTY} seconds, which bounds staleness for changes made on other nodes; the least recently used
+ * entry is evicted beyond {@value #MAX_ENTRIES_PROPERTY} entries.
+ */
+@Named
+public class UserDisplayNames {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDisplayNames.class);
+
+    public static final String TTL_PROPERTY = "wmpr.users.cache.ttlSeconds";
+    public static final String MAX_ENTRIES_PROPERTY = "wmpr.users.cache.maxEntries";
+    private static final int DEFAULT_TTL_SECONDS = 600;
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    @JiraImport
+    private final UserManager userManager;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public UserDisplayNames(UserManager userManager) {
+        this.userManager = userManager;
+        this.ttlMillis = Math.max(0, Integer.getInteger(TTL_PROPERTY, DEFAULT_TTL_SECONDS)) * 1000L;
+        this.maxEntries = Math.max(1, Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES));
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the display name of the user, or null when there is no such user
+     */
+    public String get(String userKey) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(userKey);
+        }
+        if (entry != null && now - entry.loadedAt < ttlMillis) {
+            hits.incrementAndGet();
+            return entry.displayName;
+        }
+
+        misses.incrementAndGet();
+        ApplicationUser user = userManager.getUserByKey(userKey);
+        // The same name instance is handed out for every row of this reporter
+        String displayName = user != null ? user.getDisplayName() : null;
+        synchronized (entries) {
+            entries.put(userKey, new Entry(displayName, now));
+        }
+        return displayName;
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        log.debug("Cleared cached user display names");
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Entry {
+        private final String displayName;
+        private final long loadedAt;
+
+        Entry(String displayName, long loadedAt) {
+            this.displayName = displayName;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KnowledgeBaseIndexTest {
+
+    private static final List<String> ALL_SPACES = Arrays.asList("IT", "HR");
+
+    @Test
+    public void queryAndPagesAreStemmedAlike() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Password reset", "Use the self-service portal."),
+                page("2", "IT", "Printer setup", "Add a network printer."));
+
+        assertEquals(Collections.singletonList("1"), ids(index.search("resetting passwords", ALL_SPACES, 10)));
+        assertEquals(Collections.singletonList("2"), ids(index.search("PRINTERS", ALL_SPACES, 10)));
+    }
+
+    @Test
+    public void titleMatchOutranksExcerptMention() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Laptop replacement", "Order a new device when the vpn client stops working."),
+                page("2", "IT", "VPN access", "Order a new device when the laptop client stops working."));
+
+        assertEquals(Arrays.asList("2", "1"), ids(index.search("vpn", ALL_SPACES, 10)));
+        assertEquals(Arrays.asList("1", "2"), ids(index.search("laptop", ALL_SPACES, 10)));
+    }
+
+    @Test
+    public void rareTermWeighsMoreThanCommonTerm() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Request", "Request access."),
+                page("2", "IT", "Request", "Request hardware."),
+                page("3", "IT", "Request", "Request software."),
+                page("4", "IT", "Guide", "Request a token."),
+                page("5", "IT", "Guide", "Reset a token."));
+
+        List<String> hits = ids(index.search("request token", ALL_SPACES, 10));
+
+        assertEquals(5, hits.size());
+        assertEquals("4", hits.get(0));
+        assertEquals("a page with only the rare term beats pages with only the common one", "5", hits.get(1));
+    }
+
+    @Test
+    public void shorterPageRanksAboveLongerPageWithSameMatch() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Mailbox", "Quota limits, archive folders, shared calendars and delegate access."),
+                page("2", "IT", "Mailbox", "Quota limits."));
+
+        List<KnowledgeBaseIndex.Hit> hits = index.search("quota", ALL_SPACES, 10);
+
+        assertEquals(Arrays.asList("2", "1"), ids(hits));
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    public void equalScoresKeepIndexOrder() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Onboarding", ""),
+                page("2", "IT", "Onboarding", ""),
+                page("3", "IT", "Onboarding", ""));
+
+        assertEquals(Arrays.asList("1", "2", "3"), ids(index.search("onboarding", ALL_SPACES, 10)));
+        assertEquals(Arrays.asList("1", "2"), ids(index.search("onboarding", ALL_SPACES, 2)));
+    }
+
+    @Test
+    public void onlySearchesGivenSpaces() {
+        KnowledgeBaseIndex index = index(
+                page("1", "IT", "Holiday calendar", ""),
+                page("2", "HR", "Holiday allowance", ""));
+
+        assertEquals(Collections.singletonList("2"), ids(index.search("holiday", Collections.singletonList("HR"), 10)));
+        assertTrue(index.search("holiday", Collections.singletonList("OPS"), 10).isEmpty());
+        assertTrue(index.search("holiday", Collections.<String>emptyList(), 10).isEmpty());
+    }
+
+    @Test
+    public void stopWordsAndUnknownTermsMatchNothing() {
+        KnowledgeBaseIndex index = index(page("1", "IT", "How to connect to the VPN", ""));
+
+        assertTrue(index.search("how to the", ALL_SPACES, 10).isEmpty());
+        assertTrue(index.search("kubernetes", ALL_SPACES, 10).isEmpty());
+        assertTrue(index.search("", ALL_SPACES, 10).isEmpty());
+    }
+
+    @Test
+    public void nonPositiveLimitFindsNothing() {
+        KnowledgeBaseIndex index = index(page("1", "IT", "VPN", ""));
+
+        assertTrue(index.search("vpn", ALL_SPACES, 0).isEmpty());
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        assertEquals(0, KnowledgeBaseIndex.EMPTY.size());
+        assertTrue(KnowledgeBaseIndex.EMPTY.search("vpn", ALL_SPACES, 10).isEmpty());
+    }
+
+    private static KnowledgeBaseIndex index(KnowledgeBasePage... pages) {
+        List<KnowledgeBaseIndex.Document> documents = new ArrayList<>();
+        for (KnowledgeBasePage page : pages) {
+            documents.add(new KnowledgeBaseIndex.Document(page));
+        }
+        return KnowledgeBaseIndex.build(documents);
+    }
+
+    private static KnowledgeBasePage page(String id, String spaceKey, String title, String excerpt) {
+        return new KnowledgeBasePage(id, spaceKey, title, excerpt, null, 0L);
+    }
+
+    private static List<String> ids(List<KnowledgeBaseIndex.Hit> hits) {
+        List<String> ids = new ArrayList<>();
+        for (KnowledgeBaseIndex.Hit hit : hits) {
+            ids.add(hit.getPage().getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,108 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.model.ConfluenceSpace;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceIndexTest {
+
+    private static final SpaceIndex INDEX = SpaceIndex.build(Arrays.asList(
+            space("SUP", "Support Knowledge Base"),
+            space("HR", "Human Resources"),
+            space("DEV", "Developer Guides"),
+            space("KB", "Customer Knowledge"),
+            space("SUPERV", "Supervisor Handbook")), true);
+
+    @Test
+    public void matchesKeyPrefix() {
+        assertEquals(Arrays.asList("SUPERV", "SUP"), keys(INDEX.search("sup", 10)));
+        assertEquals(Collections.singletonList("HR"), keys(INDEX.search("HR", 10)));
+    }
+
+    @Test
+    public void matchesPrefixOfAnyNameWord() {
+        assertEquals(Arrays.asList("KB", "SUP"), keys(INDEX.search("know", 10)));
+        assertEquals(Collections.singletonList("HR"), keys(INDEX.search("reso", 10)));
+    }
+
+    @Test
+    public void searchIsCaseInsensitive() {
+        assertEquals(keys(INDEX.search("guides", 10)), keys(INDEX.search("GuIdEs", 10)));
+        assertEquals(Collections.singletonList("DEV"), keys(INDEX.search("GUIDES", 10)));
+    }
+
+    @Test
+    public void everyQueryWordMustMatch() {
+        assertEquals(Collections.singletonList("SUP"), keys(INDEX.search("know sup", 10)));
+        assertEquals(Collections.singletonList("KB"), keys(INDEX.search("customer, knowledge", 10)));
+        assertTrue(INDEX.search("know hr", 10).isEmpty());
+    }
+
+    @Test
+    public void unknownPrefixMatchesNothing() {
+        assertTrue(INDEX.search("xyz", 10).isEmpty());
+        assertTrue(INDEX.search("supportx", 10).isEmpty());
+    }
+
+    @Test
+    public void blankQueryListsSpacesInNameOrder() {
+        assertEquals(Arrays.asList("KB", "DEV", "HR"), keys(INDEX.search("", 3)));
+        assertEquals(Arrays.asList("KB", "DEV", "HR"), keys(INDEX.search(null, 3)));
+        assertEquals(5, INDEX.search("  ", 10).size());
+    }
+
+    @Test
+    public void resultsAreLimited() {
+        assertEquals(Collections.singletonList("SUPERV"), keys(INDEX.search("s", 1)));
+    }
+
+    @Test
+    public void prefixSharedByMoreSpacesThanANodeHoldsStillFindsAll() {
+        List<ConfluenceSpace> spaces = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            spaces.add(space(String.format("T%03d", i), String.format(i < 100 ? "Team %03d" : "Team %03d Docs", i)));
+        }
+        SpaceIndex index = SpaceIndex.build(spaces, true);
+
+        assertEquals(200, index.search("team", 500).size());
+        // Both words match more spaces than a node holds, so the matches past the node are scanned for
+        List<String> docs = keys(index.search("team docs", 500));
+        assertEquals(100, docs.size());
+        assertEquals("T100", docs.get(0));
+        assertEquals("T199", docs.get(99));
+        assertEquals(Arrays.asList("T150", "T151"), keys(index.search("t15", 2)));
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        assertEquals(0, SpaceIndex.EMPTY.size());
+        assertTrue(SpaceIndex.EMPTY.search("a", 10).isEmpty());
+        assertTrue(SpaceIndex.EMPTY.search("", 10).isEmpty());
+    }
+
+    @Test
+    public void reportsCompleteness() {
+        assertTrue(INDEX.isComplete());
+        assertFalse(SpaceIndex.build(Collections.singletonList(space("A", "A")), false).isComplete());
+    }
+
+    private static ConfluenceSpace space(String key, String name) {
+        return new ConfluenceSpace(key, name, "https://confluence.example.com/display/" + key);
+    }
+
+    private static List<String> keys(List<ConfluenceSpace> spaces) {
+        List<String> keys = new ArrayList<>();
+        for (ConfluenceSpace space : spaces) {
+            keys.add(space.getKey());
+        }
+        return keys;
+    }
+}
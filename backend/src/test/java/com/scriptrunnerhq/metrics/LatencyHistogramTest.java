@@ -0,0 +1,118 @@
+package com.scriptrunnerhq.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    // Each power of two is split into 8 buckets
+    private static final double BUCKET_ERROR = 1.0 / 8;
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMeanMicros());
+        assertEquals(0, snapshot.getP50Micros());
+        assertEquals(0, snapshot.getP99Micros());
+        assertEquals(0, snapshot.getMaxMicros());
+    }
+
+    @Test
+    public void percentilesOfUniformLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMeanMicros());
+        assertEquals(1_000_000, snapshot.getMaxMicros());
+        assertWithinBucket(500_000, snapshot.getP50Micros());
+        assertWithinBucket(950_000, snapshot.getP95Micros());
+        assertWithinBucket(990_000, snapshot.getP99Micros());
+    }
+
+    @Test
+    public void percentilesNeverExceedMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(1_000_001));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1_000_001, snapshot.getMaxMicros());
+        assertEquals(1_000_001, snapshot.getP50Micros());
+        assertEquals(1_000_001, snapshot.getP99Micros());
+    }
+
+    @Test
+    public void singleSlowCallOnlyMovesTheTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        histogram.record(TimeUnit.SECONDS.toNanos(5));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertWithinBucket(10_000, snapshot.getP50Micros());
+        assertWithinBucket(10_000, snapshot.getP99Micros());
+        assertEquals(5_000_000, snapshot.getMaxMicros());
+    }
+
+    @Test
+    public void bucketsBoundValuesWithinRelativeError() {
+        for (long micros = 0; micros < 5_000_000; micros = micros * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+
+            assertTrue(micros + " above its bucket bound " + upper, micros <= upper);
+            assertTrue(micros + " below the previous bucket",
+                    bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < micros);
+            assertTrue(micros + " bucket bound too wide: " + upper, upper - micros <= micros * BUCKET_ERROR);
+        }
+    }
+
+    @Test
+    public void hugeValuesLandInLastBucket() {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+
+        assertEquals(last, LatencyHistogram.bucketOf(1L << 50));
+        assertTrue(LatencyHistogram.bucketOf(1L << 30) < last);
+    }
+
+    @Test
+    public void errorsAreCountedApartFromLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        histogram.recordError();
+        histogram.recordError();
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(2, snapshot.getErrors());
+    }
+
+    @Test
+    public void resetStartsNewWindow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.SECONDS.toNanos(2));
+        histogram.recordError();
+        histogram.reset();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(0, snapshot.getErrors());
+        assertEquals(1000, snapshot.getMaxMicros());
+    }
+
+    private static void assertWithinBucket(long expectedMicros, long actualMicros) {
+        assertTrue("expected about " + expectedMicros + " but was " + actualMicros,
+                actualMicros >= expectedMicros && actualMicros - expectedMicros <= expectedMicros * BUCKET_ERROR);
+    }
+}
@@ -0,0 +1,155 @@
+package com.scriptrunnerhq.service;
+
+import com.atlassian.jira.user.ApplicationUser;
+import com.scriptrunnerhq.model.PortalSettings;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdmissionControlTest {
+
+    private PortalSettingsStore settingsStore;
+    private AdmissionControl admissionControl;
+
+    @Before
+    public void setUp() {
+        settingsStore = mock(PortalSettingsStore.class);
+        admissionControl = new AdmissionControl(settingsStore);
+    }
+
+    @Test
+    public void burstIsAdmittedThenRateLimited() {
+        limits(60, 20, 0);
+        ApplicationUser user = user("alice");
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue("call " + i + " of the burst", admissionControl.admit(user).isAdmitted());
+        }
+        AdmissionControl.Admission refused = admissionControl.admit(user);
+
+        assertFalse(refused.isAdmitted());
+        assertEquals(AdmissionControl.Limit.RATE, refused.getLimit());
+        // One token a second, so the next one is less than a second away
+        assertEquals(1, refused.getRetryAfterSeconds());
+        assertEquals(20, admissionControl.getAdmitted());
+        assertEquals(1, admissionControl.getRateLimited());
+    }
+
+    @Test
+    public void retryAfterCoversTheRefillInterval() {
+        limits(1, 1, 0);
+        ApplicationUser user = user("alice");
+
+        assertTrue(admissionControl.admit(user).isAdmitted());
+        int retryAfter = admissionControl.admit(user).getRetryAfterSeconds();
+
+        assertTrue("retry after " + retryAfter, retryAfter >= 59 && retryAfter <= 60);
+    }
+
+    @Test
+    public void usersHaveTheirOwnBuckets() {
+        limits(60, 1, 0);
+
+        assertTrue(admissionControl.admit(user("alice")).isAdmitted());
+        assertFalse(admissionControl.admit(user("alice")).isAdmitted());
+        assertTrue(admissionControl.admit(user("bob")).isAdmitted());
+    }
+
+    @Test
+    public void zeroRateDisablesRateLimit() {
+        limits(0, 1, 0);
+        ApplicationUser user = user("alice");
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(admissionControl.admit(user).isAdmitted());
+        }
+        assertEquals(0, admissionControl.getRateLimited());
+    }
+
+    @Test
+    public void savedLimitsApplyToTheNextCall() {
+        limits(60, 1, 0);
+        ApplicationUser user = user("alice");
+        assertTrue(admissionControl.admit(user).isAdmitted());
+        assertFalse(admissionControl.admit(user).isAdmitted());
+
+        limits(0, 1, 0);
+
+        assertTrue(admissionControl.admit(user).isAdmitted());
+    }
+
+    @Test
+    public void concurrentCallsAreShedOverTheLimit() {
+        limits(0, 1, 2);
+        ApplicationUser user = user("alice");
+
+        AdmissionControl.Admission first = admissionControl.admit(user);
+        AdmissionControl.Admission second = admissionControl.admit(user);
+        AdmissionControl.Admission shed = admissionControl.admit(user);
+
+        assertTrue(first.isAdmitted());
+        assertTrue(second.isAdmitted());
+        assertEquals(AdmissionControl.Limit.CONCURRENCY, shed.getLimit());
+        assertEquals(1, shed.getRetryAfterSeconds());
+        assertEquals(2, admissionControl.getRunning());
+        assertEquals(1, admissionControl.getConcurrencyLimited());
+    }
+
+    @Test
+    public void releaseFreesOnePlaceOnce() {
+        limits(0, 1, 1);
+        ApplicationUser user = user("alice");
+        AdmissionControl.Admission admission = admissionControl.admit(user);
+
+        admission.release();
+        admission.release();
+
+        assertEquals(0, admissionControl.getRunning());
+        AdmissionControl.Admission next = admissionControl.admit(user);
+        assertTrue(next.isAdmitted());
+        assertNull(next.getLimit());
+        assertFalse(admissionControl.admit(user).isAdmitted());
+    }
+
+    @Test
+    public void releasingRefusedCallDoesNothing() {
+        limits(0, 1, 1);
+        ApplicationUser user = user("alice");
+        assertTrue(admissionControl.admit(user).isAdmitted());
+
+        admissionControl.admit(user).release();
+
+        assertEquals(1, admissionControl.getRunning());
+    }
+
+    @Test
+    public void rateLimitedCallDoesNotTakeAConcurrencyPlace() {
+        limits(60, 1, 1);
+        ApplicationUser alice = user("alice");
+        admissionControl.admit(alice).release();
+
+        assertEquals(AdmissionControl.Limit.RATE, admissionControl.admit(alice).getLimit());
+        assertEquals(0, admissionControl.getRunning());
+        assertTrue(admissionControl.admit(user("bob")).isAdmitted());
+    }
+
+    private void limits(int requestsPerMinute, int requestBurst, int maxConcurrentSearches) {
+        when(settingsStore.get()).thenReturn(PortalSettings.builder()
+                .requestsPerMinute(requestsPerMinute)
+                .requestBurst(requestBurst)
+                .maxConcurrentSearches(maxConcurrentSearches)
+                .build());
+    }
+
+    private static ApplicationUser user(String key) {
+        ApplicationUser user = mock(ApplicationUser.class);
+        when(user.getKey()).thenReturn(key);
+        return user;
+    }
+}
@@ -0,0 +1,107 @@
+package com.scriptrunnerhq.service;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCursorTest {
+
+    @Test
+    public void keysetCursorSurvivesEncoding() {
+        PageCursor cursor = PageCursor.decode(PageCursor.keyset(1_600_000_000_123L, 10_042L).encode());
+
+        assertTrue(cursor.isKeyset());
+        assertEquals(1_600_000_000_123L, cursor.getCreatedMillis());
+        assertEquals(10_042L, cursor.getIssueId());
+    }
+
+    @Test
+    public void offsetCursorSurvivesEncoding() {
+        PageCursor cursor = PageCursor.decode(PageCursor.offset(40).encode());
+
+        assertFalse(cursor.isKeyset());
+        assertEquals(40, cursor.getOffset());
+    }
+
+    @Test
+    public void encodedCursorIsUrlSafe() {
+        String token = PageCursor.keyset(Long.MAX_VALUE, Long.MAX_VALUE).encode();
+
+        assertTrue(token, token.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void emptyTokenMeansFirstPage() {
+        assertNull(PageCursor.decode(null));
+        assertNull(PageCursor.decode(""));
+        assertNull(PageCursor.decode("  "));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokenThatIsNotBase64() {
+        PageCursor.decode("not a cursor!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownPrefix() {
+        PageCursor.decode(encode("x:1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeysetWithoutIssueId() {
+        PageCursor.decode(encode("k:1600000000000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonNumericKeyset() {
+        PageCursor.decode(encode("k:yesterday:1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeOffset() {
+        PageCursor.decode(encode("o:-10"));
+    }
+
+    @Test
+    public void newerRowsAreBeforeCursor() {
+        PageCursor cursor = PageCursor.keyset(1000, 50);
+
+        assertTrue(cursor.isAtOrBefore(row(1001, 1)));
+        assertFalse(cursor.isAtOrBefore(row(999, 99)));
+    }
+
+    @Test
+    public void tiesOnCreatedAreOrderedByIssueIdDescending() {
+        PageCursor cursor = PageCursor.keyset(1000, 50);
+
+        assertTrue("higher id in the same millisecond was already returned", cursor.isAtOrBefore(row(1000, 51)));
+        assertTrue("the cursor row itself was already returned", cursor.isAtOrBefore(row(1000, 50)));
+        assertFalse("lower id in the same millisecond comes next", cursor.isAtOrBefore(row(1000, 49)));
+    }
+
+    @Test
+    public void cursorOrderAgreesWithNewestFirst() {
+        RequestRow last = row(1000, 50);
+        PageCursor cursor = PageCursor.keyset(last.getCreatedMillis(), last.getIssueId());
+        RequestRow[] rows = {row(1001, 1), row(1000, 51), row(1000, 50), row(1000, 49), row(999, 99)};
+
+        for (RequestRow row : rows) {
+            boolean sortsAtOrBefore = RequestRow.NEWEST_FIRST.compare(row, last) <= 0;
+            assertEquals(row.getCreatedMillis() + "/" + row.getIssueId(), sortsAtOrBefore, cursor.isAtOrBefore(row));
+        }
+    }
+
+    private static RequestRow row(long createdMillis, long issueId) {
+        return new RequestRow(issueId, "SD-" + issueId, "Summary", "reporter", createdMillis, "1");
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
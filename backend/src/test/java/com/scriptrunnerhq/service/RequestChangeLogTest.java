@@ -0,0 +1,154 @@
+package com.scriptrunnerhq.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestChangeLogTest {
+
+    private static final String JQL = "project = SD ORDER BY created DESC";
+
+    @Test
+    public void reportsLatestChangeOfEachIssueInOrderOfFirstChange() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        long since = changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.record("SD-2", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.record("SD-3", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.record("SD-2", RequestChangeLog.ChangeType.DELETED);
+
+        Map<String, RequestChangeLog.ChangeType> changes = changeLog.since(since, 10);
+
+        assertEquals(Arrays.asList("SD-2", "SD-3"), keys(changes));
+        assertEquals(RequestChangeLog.ChangeType.DELETED, changes.get("SD-2"));
+        assertEquals(RequestChangeLog.ChangeType.UPDATED, changes.get("SD-3"));
+    }
+
+    @Test
+    public void createdIssueStaysCreatedWhenUpdatedAfterwards() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.CREATED);
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+
+        assertEquals(RequestChangeLog.ChangeType.CREATED, changeLog.since(0, 10).get("SD-1"));
+    }
+
+    @Test
+    public void createdIssueDeletedAfterwardsIsDeleted() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.CREATED);
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.DELETED);
+
+        assertEquals(RequestChangeLog.ChangeType.DELETED, changeLog.since(0, 10).get("SD-1"));
+    }
+
+    @Test
+    public void currentVersionHasNoChanges() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+
+        assertTrue(changeLog.since(changeLog.getVersion(), 10).isEmpty());
+        assertEquals(1, changeLog.getDeltas());
+    }
+
+    @Test
+    public void tooManyChangedIssuesFallBack() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.record("SD-2", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+
+        assertEquals(2, changeLog.since(0, 2).size());
+        assertNull(changeLog.since(0, 1));
+        assertEquals(1, changeLog.getFallbacks());
+    }
+
+    @Test
+    public void versionsOverwrittenByWraparoundFallBack() {
+        RequestChangeLog changeLog = withSize(4);
+        for (int i = 1; i <= 6; i++) {
+            changeLog.record("SD-" + i, RequestChangeLog.ChangeType.UPDATED);
+        }
+
+        assertNull(changeLog.since(1, 10));
+        assertEquals(Arrays.asList("SD-3", "SD-4", "SD-5", "SD-6"), keys(changeLog.since(2, 10)));
+    }
+
+    @Test
+    public void versionFromTheFutureFallsBack() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+
+        assertNull(changeLog.since(2, 10));
+    }
+
+    @Test
+    public void truncateDropsEarlierVersions() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        long before = changeLog.record("SD-1", RequestChangeLog.ChangeType.UPDATED);
+        changeLog.truncate();
+        long truncatedAt = changeLog.getVersion();
+        changeLog.record("SD-2", RequestChangeLog.ChangeType.UPDATED);
+
+        assertNull(changeLog.since(before - 1, 10));
+        assertEquals(Collections.singletonList("SD-2"), keys(changeLog.since(truncatedAt, 10)));
+    }
+
+    @Test
+    public void tokenRoundTripsForSameJql() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+
+        assertEquals(42, changeLog.parseToken(changeLog.token(42, JQL), JQL));
+    }
+
+    @Test
+    public void tokenForAnotherJqlIsRejected() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+
+        assertEquals(-1, changeLog.parseToken(changeLog.token(42, JQL), "project = HR"));
+    }
+
+    @Test
+    public void tokenOfAnotherLogIsRejected() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        RequestChangeLog restarted = new RequestChangeLog();
+
+        assertEquals(-1, restarted.parseToken(changeLog.token(42, JQL), JQL));
+    }
+
+    @Test
+    public void malformedTokenIsRejected() {
+        RequestChangeLog changeLog = new RequestChangeLog();
+        String[] parts = changeLog.token(42, JQL).split("\\.");
+
+        assertEquals(-1, changeLog.parseToken("", JQL));
+        assertEquals(-1, changeLog.parseToken("not-a-token", JQL));
+        assertEquals(-1, changeLog.parseToken(parts[0] + ".!!." + parts[2], JQL));
+        assertEquals(-1, changeLog.parseToken(parts[0] + "." + parts[1], JQL));
+    }
+
+    private static RequestChangeLog withSize(int size) {
+        String previous = System.getProperty(RequestChangeLog.SIZE_PROPERTY);
+        System.setProperty(RequestChangeLog.SIZE_PROPERTY, Integer.toString(size));
+        try {
+            return new RequestChangeLog();
+        } finally {
+            if (previous != null) {
+                System.setProperty(RequestChangeLog.SIZE_PROPERTY, previous);
+            } else {
+                System.clearProperty(RequestChangeLog.SIZE_PROPERTY);
+            }
+        }
+    }
+
+    private static List<String> keys(Map<String, RequestChangeLog.ChangeType> changes) {
+        return new ArrayList<>(changes.keySet());
+    }
+}
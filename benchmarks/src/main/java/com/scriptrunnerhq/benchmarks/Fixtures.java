@@ -0,0 +1,254 @@
+package com.scriptrunnerhq.benchmarks;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.config.ConstantsManager;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.status.Status;
+import com.atlassian.jira.issue.status.category.StatusCategory;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.user.util.UserManager;
+import com.scriptrunnerhq.confluence.SpaceSource;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.ConfluenceSpace;
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RequestRow;
+import com.scriptrunnerhq.service.StatusTable;
+import com.scriptrunnerhq.service.UserDisplayNames;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Synthetic Jira objects for benchmarks, built as JDK proxies so no Jira runtime is needed.
+ * Proxy getters are cheaper than a real {@link Issue}, whose getters may load from the database,
+ * so the hydration path measured here is a lower bound.
+ */
+public final class Fixtures {
+
+    private static final String[] STATUS_NAMES = {"Open", "In Progress", "Waiting for customer", "Resolved"};
+    private static final String[] CATEGORY_KEYS = {"new", "indeterminate", "indeterminate", "done"};
+    private static final int REPORTERS = 50;
+    private static final String[] SPACE_WORDS = {"Help", "Project", "Engineering", "Service", "Desk", "Platform",
+            "Marketing", "Finance", "Onboarding", "Release", "Support", "Knowledge", "Security", "Design", "Team"};
+    private static final String[] PAGE_WORDS = {"How", "to", "reset", "resetting", "password", "passwords", "VPN",
+            "connect", "connection", "printer", "laptop", "access", "request", "requesting", "onboarding", "new",
+            "starter", "email", "calendar", "licence", "software", "install", "installing", "upgrade", "error",
+            "login", "account", "accounts", "billing", "invoice", "refund", "the", "for", "with", "your", "remote",
+            "office", "network", "wifi", "troubleshooting", "guide", "policy", "approval", "manager", "hardware"};
+
+    private Fixtures() {
+    }
+
+    public static List<Issue> issues(int count) {
+        List<Issue> issues = new ArrayList<>(count);
+        List<Status> statuses = statuses();
+        long created = 1_600_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> values = new HashMap<>();
+            values.put("getKey", "HELP-" + (10_000 - i));
+            values.put("getSummary", summary(i));
+            values.put("getReporter", user("user" + (i % REPORTERS)));
+            values.put("getReporterId", "user" + (i % REPORTERS));
+            values.put("getCreated", new Timestamp(created - i * 60_000L));
+            values.put("getStatus", statuses.get(i % statuses.size()));
+            issues.add(stub(Issue.class, values));
+        }
+        return issues;
+    }
+
+    public static List<RequestRow> rows(int count) {
+        List<RequestRow> rows = new ArrayList<>(count);
+        long created = 1_600_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            rows.add(new RequestRow(20_000 - i, "HELP-" + (10_000 - i), summary(i), "user" + (i % REPORTERS),
+                    created - i * 60_000L, String.valueOf(i % STATUS_NAMES.length)));
+        }
+        return rows;
+    }
+
+    public static List<ServiceDeskRequest> requests(int count) {
+        RecentRequestsSearcher searcher = searcher();
+        List<ServiceDeskRequest> requests = new ArrayList<>(count);
+        for (RequestRow row : rows(count)) {
+            requests.add(searcher.toRequest(row));
+        }
+        return requests;
+    }
+
+    /**
+     * A searcher wired to in-memory users and statuses; only the mapping methods are usable
+     */
+    public static RecentRequestsSearcher searcher() {
+        return searcher(null, new PortalMetrics());
+    }
+
+    /**
+     * A searcher whose hydration path runs against the given search service
+     */
+    public static RecentRequestsSearcher searcher(SearchService searchService, PortalMetrics metrics) {
+        final Map<String, ApplicationUser> users = new HashMap<>();
+        for (int i = 0; i < REPORTERS; i++) {
+            users.put("user" + i, user("user" + i));
+        }
+        UserManager userManager = stub(UserManager.class, Collections.<String, Object>emptyMap(), new Answer() {
+            @Override
+            public Object answer(Method method, Object[] args) {
+                return "getUserByKey".equals(method.getName()) ? users.get((String) args[0]) : null;
+            }
+        });
+        ConstantsManager constantsManager = stub(ConstantsManager.class,
+                Collections.<String, Object>singletonMap("getStatuses", statuses()));
+        return new RecentRequestsSearcher(searchService, null, new UserDisplayNames(userManager),
+                new StatusTable(constantsManager), metrics);
+    }
+
+    public static List<ConfluenceSpace> spaces(int count) {
+        List<ConfluenceSpace> spaces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = SPACE_WORDS[i % SPACE_WORDS.length] + " " + SPACE_WORDS[(i / SPACE_WORDS.length) % SPACE_WORDS.length]
+                    + " " + i;
+            spaces.add(new ConfluenceSpace("SP" + i, name, "https://confluence.example.com/display/SP" + i));
+        }
+        return spaces;
+    }
+
+    /**
+     * Local stand-in for Confluence, paging over the given spaces
+     */
+    public static SpaceSource spaceSource(final List<ConfluenceSpace> spaces) {
+        return new SpaceSource() {
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public Page fetch(int start, int limit) {
+                int from = Math.min(start, spaces.size());
+                int to = Math.min(from + limit, spaces.size());
+                return new Page(spaces.subList(from, to), to < spaces.size());
+            }
+        };
+    }
+
+    /**
+     * Help pages spread over the spaces SP0 to SP{spaceCount - 1}, with titles and excerpts drawn from a small
+     * support vocabulary so that common words match many pages
+     */
+    public static List<KnowledgeBasePage> pages(int count, int spaceCount) {
+        Random random = new Random(count);
+        List<KnowledgeBasePage> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 4; w++) {
+                title.append(PAGE_WORDS[random.nextInt(PAGE_WORDS.length)]).append(' ');
+            }
+            StringBuilder excerpt = new StringBuilder();
+            for (int w = 0; w < 40; w++) {
+                excerpt.append(PAGE_WORDS[random.nextInt(PAGE_WORDS.length)]).append(' ');
+            }
+            pages.add(new KnowledgeBasePage(String.valueOf(i), "SP" + (i % spaceCount), title.toString().trim(),
+                    excerpt.toString().trim(), "https://confluence.example.com/pages/viewpage.action?pageId=" + i,
+                    i * 1000L));
+        }
+        return pages;
+    }
+
+    private static String summary(int i) {
+        return "Synthetic request " + i + ": cannot access the VPN from the \"remote\" office - please help";
+    }
+
+    private static List<Status> statuses() {
+        List<Status> statuses = new ArrayList<>();
+        for (int i = 0; i < STATUS_NAMES.length; i++) {
+            StatusCategory category = stub(StatusCategory.class,
+                    Collections.<String, Object>singletonMap("getKey", CATEGORY_KEYS[i]));
+            Map<String, Object> values = new HashMap<>();
+            values.put("getId", String.valueOf(i));
+            values.put("getName", STATUS_NAMES[i]);
+            values.put("getStatusCategory", category);
+            statuses.add(stub(Status.class, values));
+        }
+        return statuses;
+    }
+
+    public static ApplicationUser user(String key) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("getKey", key);
+        values.put("getName", key);
+        values.put("getDisplayName", "Display Name " + key);
+        return stub(ApplicationUser.class, values);
+    }
+
+    /**
+     * Answers calls that are not simple getters
+     */
+    public interface Answer {
+        Object answer(Method method, Object[] args);
+    }
+
+    public static <T> T stub(Class<T> type, Map<String, Object> values) {
+        return stub(type, values, null);
+    }
+
+    /**
+     * Proxy answering no-argument getters from the map, other calls from the fallback, and defaults otherwise
+     */
+    public static <T> T stub(final Class<T> type, final Map<String, Object> values, final Answer fallback) {
+        return type.cast(Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[]{type},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if (values.containsKey(name) && (args == null || args.length == 0)) {
+                            return values.get(name);
+                        }
+                        switch (name) {
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return type.getSimpleName() + values;
+                            default:
+                                break;
+                        }
+                        Object answer = fallback != null ? fallback.answer(method, args) : null;
+                        return answer != null ? answer : defaultValue(method.getReturnType());
+                    }
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
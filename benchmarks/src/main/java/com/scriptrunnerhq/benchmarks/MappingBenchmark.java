@@ -0,0 +1,56 @@
+package com.scriptrunnerhq.benchmarks;
+
+import com.atlassian.jira.issue.Issue;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RequestRow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping one page of hits to {@link ServiceDeskRequest}s: from loaded issues (hydration fallback)
+ * and from index rows (default projection path).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    private RecentRequestsSearcher searcher;
+    private List<Issue> issues;
+    private List<RequestRow> requestRows;
+
+    @Setup
+    public void setUp() {
+        searcher = Fixtures.searcher();
+        issues = Fixtures.issues(rows);
+        requestRows = Fixtures.rows(rows);
+    }
+
+    @Benchmark
+    public List<ServiceDeskRequest> fromIssues() {
+        List<ServiceDeskRequest> requests = new ArrayList<>(issues.size());
+        for (Issue issue : issues) {
+            requests.add(searcher.toRequest(issue));
+        }
+        return requests;
+    }
+
+    @Benchmark
+    public List<ServiceDeskRequest> fromIndexRows() {
+        List<ServiceDeskRequest> requests = new ArrayList<>(requestRows.size());
+        for (RequestRow row : requestRows) {
+            requests.add(searcher.toRequest(row));
+        }
+        return requests;
+    }
+}
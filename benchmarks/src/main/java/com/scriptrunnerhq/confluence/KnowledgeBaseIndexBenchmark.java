@@ -0,0 +1,72 @@
+package com.scriptrunnerhq.confluence;
+
+import com.scriptrunnerhq.benchmarks.Fixtures;
+import com.scriptrunnerhq.model.KnowledgeBasePage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Footer searches against the knowledge base index, and a rebuild of the index from analysed pages as done after a
+ * pass that changed them. The portal searches {@value #PORTAL_SPACES} of the {@value #SPACES} indexed spaces.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class KnowledgeBaseIndexBenchmark {
+
+    private static final int SPACES = 10;
+    private static final int PORTAL_SPACES = 3;
+
+    @Param({"1000", "20000"})
+    public int pages;
+
+    private List<KnowledgeBaseIndex.Document> documents;
+    private KnowledgeBaseIndex index;
+    private List<String> portalSpaces;
+
+    @Setup
+    public void setUp() {
+        documents = new ArrayList<>(pages);
+        for (KnowledgeBasePage page : Fixtures.pages(pages, SPACES)) {
+            documents.add(new KnowledgeBaseIndex.Document(page));
+        }
+        index = KnowledgeBaseIndex.build(documents);
+        portalSpaces = new ArrayList<>();
+        for (int i = 0; i < PORTAL_SPACES; i++) {
+            portalSpaces.add("SP" + i);
+        }
+    }
+
+    @Benchmark
+    public List<KnowledgeBaseIndex.Hit> question() {
+        return index.search("How do I reset my VPN password when working remotely?", portalSpaces, 5);
+    }
+
+    @Benchmark
+    public List<KnowledgeBaseIndex.Hit> commonWords() {
+        // Matches most pages, so the heap and not the postings dominate
+        return index.search("request access account guide", portalSpaces, 5);
+    }
+
+    @Benchmark
+    public List<KnowledgeBaseIndex.Hit> noMatch() {
+        return index.search("kubernetes", portalSpaces, 5);
+    }
+
+    @Benchmark
+    public String[] analyze() {
+        return TextAnalyzer.analyze("How do I reset my VPN password when working remotely?");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public KnowledgeBaseIndex rebuild() {
+        return KnowledgeBaseIndex.build(documents);
+    }
+}
@@ -0,0 +1,64 @@
+package com.scriptrunnerhq.confluence;
+
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.scriptrunnerhq.benchmarks.Fixtures;
+import com.scriptrunnerhq.model.ConfluenceSpace;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typeahead queries against the space index, and a full directory pass that lists the spaces and builds it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class SpaceIndexBenchmark {
+
+    @Param({"1000", "10000"})
+    public int spaces;
+
+    private List<ConfluenceSpace> listing;
+    private SpaceIndex index;
+
+    @Setup
+    public void setUp() {
+        listing = Fixtures.spaces(spaces);
+        index = SpaceIndex.build(listing, true);
+    }
+
+    @Benchmark
+    public List<ConfluenceSpace> oneWord() {
+        return index.search("pro", 10);
+    }
+
+    @Benchmark
+    public List<ConfluenceSpace> twoWords() {
+        return index.search("support rel", 10);
+    }
+
+    @Benchmark
+    public List<ConfluenceSpace> key() {
+        return index.search("sp12", 10);
+    }
+
+    @Benchmark
+    public List<ConfluenceSpace> noMatch() {
+        return index.search("zzz", 10);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SpaceIndex directoryPass() {
+        SpaceDirectory directory = new SpaceDirectory(Fixtures.spaceSource(listing),
+                Fixtures.stub(JiraThreadLocalUtil.class, Collections.<String, Object>emptyMap()));
+        directory.refresh();
+        return directory.getIndex();
+    }
+}
@@ -0,0 +1,98 @@
+package com.scriptrunnerhq.loadtest;
+
+import com.scriptrunnerhq.cluster.ClusterBus;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for Jira's cluster messaging: each node gets its own {@link ClusterBus}, and a message sent on
+ * one node reaches the receivers of every other node after the delivery delay, on a single thread, the way Jira
+ * delivers the messages it polls from the database.
+ */
+final class InMemoryCluster {
+
+    private final long deliveryDelayMillis;
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService delivery;
+    private final AtomicLong delivered = new AtomicLong();
+
+    InMemoryCluster(long deliveryDelayMillis) {
+        this.deliveryDelayMillis = deliveryDelayMillis;
+        this.delivery = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "in-memory-cluster");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    ClusterBus node(String nodeId) {
+        Node node = new Node(nodeId);
+        nodes.add(node);
+        return node;
+    }
+
+    long getDelivered() {
+        return delivered.get();
+    }
+
+    void shutdown() {
+        delivery.shutdownNow();
+    }
+
+    private final class Node implements ClusterBus {
+        private final String nodeId;
+        private final ConcurrentMap<String, List<Receiver>> receivers = new ConcurrentHashMap<>();
+
+        Node(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void register(String channel, Receiver receiver) {
+            List<Receiver> list = receivers.get(channel);
+            if (list == null) {
+                receivers.putIfAbsent(channel, new CopyOnWriteArrayList<Receiver>());
+                list = receivers.get(channel);
+            }
+            list.add(receiver);
+        }
+
+        @Override
+        public void unregister(String channel, Receiver receiver) {
+            List<Receiver> list = receivers.get(channel);
+            if (list != null) {
+                list.remove(receiver);
+            }
+        }
+
+        @Override
+        public void send(final String channel, final String message) {
+            if (channel.length() > MAX_CHANNEL_LENGTH || message.length() > MAX_MESSAGE_LENGTH) {
+                throw new IllegalArgumentException("Cluster message too long: " + message);
+            }
+            for (final Node node : nodes) {
+                if (node == this) {
+                    continue;
+                }
+                delivery.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Receiver> list = node.receivers.get(channel);
+                        if (list == null) {
+                            return;
+                        }
+                        for (Receiver receiver : list) {
+                            receiver.receive(channel, message, nodeId);
+                            delivered.incrementAndGet();
+                        }
+                    }
+                }, deliveryDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.scriptrunnerhq.loadtest;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.Issue;
+import com.atlassian.jira.issue.search.SearchResults;
+import com.atlassian.jira.issue.security.IssueSecurityLevelManager;
+import com.atlassian.jira.issue.security.IssueSecuritySchemeManager;
+import com.atlassian.jira.permission.PermissionSchemeManager;
+import com.atlassian.jira.project.Project;
+import com.atlassian.jira.security.GlobalPermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.user.ApplicationUser;
+import com.atlassian.jira.util.MessageSetImpl;
+import com.atlassian.jira.web.bean.PagerFilter;
+import com.atlassian.query.QueryImpl;
+import com.atlassian.query.order.OrderByImpl;
+import com.atlassian.query.order.SearchSort;
+import com.atlassian.query.order.SortOrder;
+import com.atlassian.sal.api.pluginsettings.PluginSettings;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.scriptrunnerhq.benchmarks.Fixtures;
+import com.scriptrunnerhq.service.PermissionContext;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory stand-ins for the Jira and SAL services the REST resources use.
+ * The calling user is taken from the {@value #USER_HEADER} request header by {@link UserFilter}.
+ */
+final class InMemoryJira {
+
+    static final String USER_HEADER = "X-Load-User";
+
+    private static final ThreadLocal<ApplicationUser> CURRENT_USER = new ThreadLocal<>();
+
+    private InMemoryJira() {
+    }
+
+    static JiraAuthenticationContext authenticationContext() {
+        return Fixtures.stub(JiraAuthenticationContext.class, Collections.<String, Object>emptyMap(), new Fixtures.Answer() {
+            @Override
+            public Object answer(Method method, Object[] args) {
+                return "getLoggedInUser".equals(method.getName()) ? CURRENT_USER.get() : null;
+            }
+        });
+    }
+
+    /**
+     * Every load user is a Jira administrator, so the settings writes of the run are allowed
+     */
+    static GlobalPermissionManager globalPermissionManager() {
+        return Fixtures.stub(GlobalPermissionManager.class, Collections.<String, Object>emptyMap(), new Fixtures.Answer() {
+            @Override
+            public Object answer(Method method, Object[] args) {
+                return "hasPermission".equals(method.getName()) ? Boolean.TRUE : null;
+            }
+        });
+    }
+
+    /**
+     * Permissions under which every load user may browse one project, granted by group and without security levels
+     */
+    static PermissionContext permissionContext() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("getId", 10000L);
+        values.put("getKey", "HELP");
+        final Project project = Fixtures.stub(Project.class, values);
+        PermissionManager permissionManager = Fixtures.stub(PermissionManager.class, Collections.<String, Object>emptyMap(),
+                new Fixtures.Answer() {
+                    @Override
+                    public Object answer(Method method, Object[] args) {
+                        return "getProjects".equals(method.getName()) ? Collections.singletonList(project) : null;
+                    }
+                });
+        // Without permission or security schemes there is no grant through the issue
+        return new PermissionContext(permissionManager,
+                Fixtures.stub(PermissionSchemeManager.class, Collections.<String, Object>emptyMap()),
+                Fixtures.stub(IssueSecuritySchemeManager.class, Collections.<String, Object>emptyMap()),
+                Fixtures.stub(IssueSecurityLevelManager.class, Collections.<String, Object>emptyMap()));
+    }
+
+    /**
+     * Search service returning {@code resultSize} synthetic issues, sleeping {@code latencyMillis} per search.
+     * Every JQL parses to a created DESC query.
+     */
+    static SearchService searchService(final long latencyMillis, final int resultSize) {
+        final List<Issue> issues = Fixtures.issues(resultSize);
+        return Fixtures.stub(SearchService.class, Collections.<String, Object>emptyMap(), new Fixtures.Answer() {
+            @Override
+            public Object answer(Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "parseQuery":
+                        return new SearchService.ParseResult(new QueryImpl(null,
+                                new OrderByImpl(new SearchSort("created", SortOrder.DESC)), (String) args[1]),
+                                new MessageSetImpl());
+                    case "validateQuery":
+                        return new MessageSetImpl();
+                    case "search":
+                        return search((PagerFilter) args[2]);
+                    default:
+                        return null;
+                }
+            }
+
+            private SearchResults<Issue> search(PagerFilter pager) {
+                if (latencyMillis > 0) {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                int from = Math.min(pager.getStart(), issues.size());
+                int to = Math.min(from + pager.getMax(), issues.size());
+                return new SearchResults<>(new ArrayList<>(issues.subList(from, to)), issues.size(), pager.getMax(), from);
+            }
+        });
+    }
+
+    static PluginSettingsFactory pluginSettingsFactory() {
+        final PluginSettings global = new MapPluginSettings();
+        final ConcurrentMap<String, PluginSettings> byKey = new ConcurrentHashMap<>();
+        return new PluginSettingsFactory() {
+            @Override
+            public PluginSettings createSettingsForKey(String key) {
+                if (key == null) {
+                    return global;
+                }
+                PluginSettings settings = byKey.get(key);
+                if (settings == null) {
+                    byKey.putIfAbsent(key, new MapPluginSettings());
+                    settings = byKey.get(key);
+                }
+                return settings;
+            }
+
+            @Override
+            public PluginSettings createGlobalSettings() {
+                return global;
+            }
+        };
+    }
+
+    private static final class MapPluginSettings implements PluginSettings {
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>();
+
+        @Override
+        public Object get(String key) {
+            return values.get(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            return value != null ? values.put(key, value) : values.remove(key);
+        }
+
+        @Override
+        public Object remove(String key) {
+            return values.remove(key);
+        }
+    }
+
+    /**
+     * Binds the user named in the request header to the worker thread for the duration of the request
+     */
+    static final class UserFilter implements ContainerRequestFilter, ContainerResponseFilter {
+        private final ConcurrentMap<String, ApplicationUser> users = new ConcurrentHashMap<>();
+
+        @Override
+        public ContainerRequest filter(ContainerRequest request) {
+            String name = request.getHeaderValue(USER_HEADER);
+            if (name != null) {
+                ApplicationUser user = users.get(name);
+                if (user == null) {
+                    users.putIfAbsent(name, Fixtures.user(name));
+                    user = users.get(name);
+                }
+                CURRENT_USER.set(user);
+            } else {
+                CURRENT_USER.remove();
+            }
+            return request;
+        }
+
+        @Override
+        public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+            CURRENT_USER.remove();
+            return response;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.scriptrunnerhq.loadtest;
+
+import com.atlassian.jira.bc.issue.search.SearchService;
+import com.atlassian.jira.issue.CustomFieldManager;
+import com.atlassian.jira.issue.IssueManager;
+import com.atlassian.jira.issue.search.managers.SearchHandlerManager;
+import com.atlassian.jira.project.ProjectManager;
+import com.atlassian.jira.security.PermissionManager;
+import com.atlassian.jira.security.JiraAuthenticationContext;
+import com.atlassian.jira.util.thread.JiraThreadLocalUtil;
+import com.atlassian.sal.api.pluginsettings.PluginSettingsFactory;
+import com.scriptrunnerhq.benchmarks.Fixtures;
+import com.scriptrunnerhq.cluster.ClusterInvalidator;
+import com.scriptrunnerhq.metrics.LatencyHistogram;
+import com.scriptrunnerhq.metrics.PortalMetrics;
+import com.scriptrunnerhq.model.PortalSettings;
+import com.scriptrunnerhq.rest.PortalRequestsRestResource;
+import com.scriptrunnerhq.rest.PortalSettingsRestResource;
+import com.scriptrunnerhq.rest.RecentRequestsLoader;
+import com.scriptrunnerhq.service.AdmissionControl;
+import com.scriptrunnerhq.service.JqlProfiler;
+import com.scriptrunnerhq.service.JqlQueryCache;
+import com.scriptrunnerhq.service.PermissionContext;
+import com.scriptrunnerhq.service.PortalSettingsStore;
+import com.scriptrunnerhq.service.RecentRequestsCache;
+import com.scriptrunnerhq.service.RecentRequestsSearcher;
+import com.scriptrunnerhq.service.RecentRequestsView;
+import com.scriptrunnerhq.service.RequestChangeBroadcaster;
+import com.scriptrunnerhq.service.RequestChangeLog;
+import com.scriptrunnerhq.service.RequestSummaryCache;
+import com.scriptrunnerhq.service.SearchCoalescer;
+import com.sun.jersey.api.container.grizzly2.GrizzlyServerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline load test for the /recent and /settings resources.
+ * The resources run in Jersey on Grizzly against in-memory Jira services, and N virtual users call them in a
+ * closed loop. With several nodes, each node serves its own port with its own caches over shared plugin settings,
+ * linked by an {@link InMemoryCluster}; virtual users are spread over the nodes and server stages are aggregated.
+ * Arguments are {@code key=value} pairs:
+ * <ul>
+ *     <li>users (20): concurrent virtual users</li>
+ *     <li>distinctUsers (same as users): Jira identities the virtual users spread over</li>
+ *     <li>duration (30) and warmup (5): seconds</li>
+ *     <li>searchLatencyMs (20): time spent in each stubbed search</li>
+ *     <li>resultSize (200): issues matched by the configured JQL</li>
+ *     <li>pageSize (10): limit passed to /recent</li>
+ *     <li>settingsEvery (20): every Nth call is GET /settings; writeEvery (0): every Nth call is POST /settings</li>
+ *     <li>thinkMs (0): pause between calls of one virtual user</li>
+ *     <li>cacheTtl (30): result cache TTL in seconds, 0 disables the cache</li>
+ *     <li>nodes (1): cluster nodes; clusterDelayMs (1000): delivery delay of cluster messages</li>
+ *     <li>requestsPerMinute (0), requestBurst (20) and maxConcurrentSearches (0): admission limits, 0 disables them;
+ *     refused calls count as errors and are also reported as throttled</li>
+ * </ul>
+ */
+public final class LoadTestHarness {
+
+    private static final String BASE_PATH = "/rest/portal-requests/1.0";
+    private static final String JQL = "project = HELP ORDER BY created DESC";
+    private static final AtomicLong THROTTLED = new AtomicLong();
+
+    private final Map<String, String> options;
+
+    private LoadTestHarness(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new LoadTestHarness(options).run();
+    }
+
+    private int option(String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private void run() throws Exception {
+        int users = option("users", 20);
+        int distinctUsers = option("distinctUsers", users);
+        int duration = option("duration", 30);
+        int warmup = option("warmup", 5);
+        int pageSize = option("pageSize", 10);
+        int settingsEvery = option("settingsEvery", 20);
+        int writeEvery = option("writeEvery", 0);
+        int thinkMs = option("thinkMs", 0);
+        int nodes = Math.max(1, option("nodes", 1));
+
+        // The stand-in SearchService serves loaded issues, so use the hydration path
+        System.setProperty(RecentRequestsSearcher.PROJECTION_PROPERTY, "false");
+        System.setProperty(RecentRequestsCache.TTL_PROPERTY, String.valueOf(option("cacheTtl", 30)));
+
+        PortalMetrics metrics = new PortalMetrics();
+        SearchService searchService = InMemoryJira.searchService(option("searchLatencyMs", 20), option("resultSize", 200));
+        PluginSettingsFactory pluginSettingsFactory = InMemoryJira.pluginSettingsFactory();
+        // Limits are off unless asked for, so runs measure the search path
+        final int requestsPerMinute = option("requestsPerMinute", 0);
+        final int requestBurst = option("requestBurst", PortalSettings.DEFAULT_REQUEST_BURST);
+        final int maxConcurrentSearches = option("maxConcurrentSearches", 0);
+        new PortalSettingsStore(pluginSettingsFactory).save(null, new PortalSettingsStore.Change() {
+            @Override
+            public void apply(PortalSettings current, PortalSettings.Builder next) {
+                next.jql(JQL)
+                        .requestsPerMinute(requestsPerMinute)
+                        .requestBurst(requestBurst)
+                        .maxConcurrentSearches(maxConcurrentSearches);
+            }
+        });
+        InMemoryCluster cluster = new InMemoryCluster(option("clusterDelayMs", 1000));
+
+        List<Node> clusterNodes = new ArrayList<>();
+        List<String> baseUrls = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            Node node = new Node("node" + (i + 1), searchService, pluginSettingsFactory, cluster, metrics);
+            clusterNodes.add(node);
+            baseUrls.add(node.baseUrl);
+        }
+
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        histograms.put("GET /recent", new LatencyHistogram());
+        histograms.put("GET /settings", new LatencyHistogram());
+        histograms.put("POST /settings", new LatencyHistogram());
+
+        System.out.printf("Running %d virtual users (%d identities) for %ds after %ds warmup against %s%n",
+                users, distinctUsers, duration, warmup, baseUrls);
+
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        long warmupEnd = System.currentTimeMillis() + warmup * 1000L;
+        long end = warmupEnd + duration * 1000L;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            futures.add(pool.submit(new VirtualUser("load" + (i % Math.max(1, distinctUsers)), baseUrls.get(i % nodes),
+                    pageSize, settingsEvery, writeEvery, thinkMs, end, histograms)));
+        }
+
+        Thread.sleep(Math.max(0, warmupEnd - System.currentTimeMillis()));
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        metrics.reset();
+        THROTTLED.set(0);
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+        for (Node node : clusterNodes) {
+            node.stop();
+        }
+        cluster.shutdown();
+
+        report("Client latency", histograms);
+        report("Server stages", metrics.getStages());
+        if (THROTTLED.get() > 0) {
+            System.out.printf("%nThrottled calls (429): %d%n", THROTTLED.get());
+        }
+        if (nodes > 1) {
+            System.out.printf("%nCluster messages delivered: %d%n", cluster.getDelivered());
+        }
+    }
+
+    private static void report(String title, Map<String, ?> histograms) {
+        System.out.println();
+        System.out.println(title);
+        System.out.printf("%-22s %9s %7s %7s %9s %9s %9s %9s %9s%n",
+                "", "requests", "errors", "err %", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, ?> entry : histograms.entrySet()) {
+            Object value = entry.getValue();
+            LatencyHistogram.Snapshot s = value instanceof LatencyHistogram
+                    ? ((LatencyHistogram) value).snapshot() : (LatencyHistogram.Snapshot) value;
+            if (s.getCount() == 0 && s.getErrors() == 0) {
+                continue;
+            }
+            double errorRate = 100.0 * s.getErrors() / (s.getCount() + s.getErrors());
+            System.out.printf("%-22s %9d %7d %7.2f %9.1f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), s.getCount(),
+                    s.getErrors(), errorRate, s.getThroughputPerSecond(), s.getP50Micros() / 1000.0, s.getP95Micros() / 1000.0,
+                    s.getP99Micros() / 1000.0, s.getMaxMicros() / 1000.0);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * One server with its own settings snapshots, caches and search pool, as a Data Center node has
+     */
+    private static final class Node {
+        private final HttpServer server;
+        private final String baseUrl;
+        private final SearchCoalescer searchCoalescer;
+        private final RecentRequestsView recentRequestsView;
+        private final ClusterInvalidator clusterInvalidator;
+        private final RequestChangeBroadcaster requestChangeBroadcaster;
+
+        Node(String nodeId, SearchService searchService, PluginSettingsFactory pluginSettingsFactory,
+             InMemoryCluster cluster, PortalMetrics metrics) throws IOException {
+            JiraAuthenticationContext authenticationContext = InMemoryJira.authenticationContext();
+            JiraThreadLocalUtil jiraThreadLocalUtil = Fixtures.stub(JiraThreadLocalUtil.class, Collections.<String, Object>emptyMap());
+            PortalSettingsStore settingsStore = new PortalSettingsStore(pluginSettingsFactory);
+            JqlQueryCache jqlQueryCache = new JqlQueryCache(searchService);
+            RecentRequestsCache recentRequestsCache = new RecentRequestsCache();
+            RequestSummaryCache requestSummaryCache = new RequestSummaryCache();
+            RequestChangeLog changeLog = new RequestChangeLog();
+            RecentRequestsSearcher searcher = Fixtures.searcher(searchService, metrics);
+            AdmissionControl admissionControl = new AdmissionControl(settingsStore);
+            searchCoalescer = new SearchCoalescer(jiraThreadLocalUtil);
+            // Every load user may browse the same project, so their identical searches are shared
+            PermissionContext permissionContext = InMemoryJira.permissionContext();
+            // Without projection the view does not apply, so every read is a coalesced search
+            recentRequestsView = new RecentRequestsView(permissionContext, jiraThreadLocalUtil, jqlQueryCache, searcher,
+                    metrics);
+            // Nobody subscribes to the event stream, so forwarded changes are dropped at once
+            requestChangeBroadcaster = new RequestChangeBroadcaster(
+                    Fixtures.stub(PermissionManager.class, Collections.<String, Object>emptyMap()),
+                    Fixtures.stub(IssueManager.class, Collections.<String, Object>emptyMap()),
+                    jiraThreadLocalUtil, settingsStore, jqlQueryCache, searcher);
+            clusterInvalidator = new ClusterInvalidator(cluster.node(nodeId), settingsStore, recentRequestsCache,
+                    recentRequestsView, requestSummaryCache, changeLog, requestChangeBroadcaster,
+                    jiraThreadLocalUtil);
+            clusterInvalidator.afterPropertiesSet();
+
+            RecentRequestsLoader recentRequestsLoader = new RecentRequestsLoader(recentRequestsCache, jqlQueryCache,
+                    searcher, recentRequestsView, permissionContext, searchCoalescer, changeLog, metrics);
+
+            DefaultResourceConfig config = new DefaultResourceConfig();
+            config.getSingletons().add(new PortalRequestsRestResource(authenticationContext, settingsStore,
+                    recentRequestsLoader, jqlQueryCache, searcher, requestSummaryCache, searchCoalescer,
+                    admissionControl, metrics));
+            // The harness always saves the configured JQL, which is never profiled
+            JqlProfiler jqlProfiler = new JqlProfiler(searchService,
+                    Fixtures.stub(SearchHandlerManager.class, Collections.<String, Object>emptyMap()),
+                    Fixtures.stub(CustomFieldManager.class, Collections.<String, Object>emptyMap()), searcher);
+            config.getSingletons().add(new PortalSettingsRestResource(searchService, authenticationContext,
+                    InMemoryJira.globalPermissionManager(),
+                    Fixtures.stub(PermissionManager.class, Collections.<String, Object>emptyMap()),
+                    Fixtures.stub(ProjectManager.class, Collections.<String, Object>emptyMap()),
+                    settingsStore, jqlQueryCache, jqlProfiler, clusterInvalidator, admissionControl, metrics));
+            InMemoryJira.UserFilter userFilter = new InMemoryJira.UserFilter();
+            config.getProperties().put(ResourceConfig.PROPERTY_CONTAINER_REQUEST_FILTERS, Collections.singletonList(userFilter));
+            config.getProperties().put(ResourceConfig.PROPERTY_CONTAINER_RESPONSE_FILTERS, Collections.singletonList(userFilter));
+
+            int port = freePort();
+            server = GrizzlyServerFactory.createHttpServer(URI.create("http://localhost:" + port + "/"), config);
+            baseUrl = "http://localhost:" + port + BASE_PATH;
+        }
+
+        void stop() {
+            server.stop();
+            clusterInvalidator.destroy();
+            requestChangeBroadcaster.destroy();
+            searchCoalescer.destroy();
+            recentRequestsView.destroy();
+        }
+    }
+
+    /**
+     * Closed-loop client: one call at a time, each recorded in the endpoint's histogram
+     */
+    private static final class VirtualUser implements Runnable {
+        private final String user;
+        private final String baseUrl;
+        private final int pageSize;
+        private final int settingsEvery;
+        private final int writeEvery;
+        private final int thinkMs;
+        private final long end;
+        private final Map<String, LatencyHistogram> histograms;
+        private final byte[] readBuffer = new byte[8192];
+
+        VirtualUser(String user, String baseUrl, int pageSize, int settingsEvery, int writeEvery, int thinkMs,
+                    long end, Map<String, LatencyHistogram> histograms) {
+            this.user = user;
+            this.baseUrl = baseUrl;
+            this.pageSize = pageSize;
+            this.settingsEvery = settingsEvery;
+            this.writeEvery = writeEvery;
+            this.thinkMs = thinkMs;
+            this.end = end;
+            this.histograms = histograms;
+        }
+
+        @Override
+        public void run() {
+            long calls = 0;
+            while (System.currentTimeMillis() < end) {
+                calls++;
+                if (writeEvery > 0 && calls % writeEvery == 0) {
+                    call("POST /settings", baseUrl + "/settings", "{\"jql\":\"" + JQL + "\"}");
+                } else if (settingsEvery > 0 && calls % settingsEvery == 0) {
+                    call("GET /settings", baseUrl + "/settings", null);
+                } else {
+                    call("GET /recent", baseUrl + "/recent?limit=" + pageSize, null);
+                }
+                if (thinkMs > 0) {
+                    try {
+                        Thread.sleep(thinkMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void call(String name, String url, String body) {
+            LatencyHistogram histogram = histograms.get(name);
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+                connection.setRequestProperty(InMemoryJira.USER_HEADER, user);
+                connection.setRequestProperty("Accept", "application/json");
+                if (body != null) {
+                    connection.setRequestMethod("POST");
+                    connection.setDoOutput(true);
+                    connection.setRequestProperty("Content-Type", "application/json");
+                    try (OutputStream out = connection.getOutputStream()) {
+                        out.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                int status = connection.getResponseCode();
+                // Drain the body so the keep-alive connection is reused
+                try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    if (in != null) {
+                        while (in.read(readBuffer) >= 0) {
+                            // discard
+                        }
+                    }
+                }
+                if (status == 429) {
+                    THROTTLED.incrementAndGet();
+                }
+                if (status >= 400) {
+                    histogram.recordError();
+                } else {
+                    histogram.record(System.nanoTime() - start);
+                }
+            } catch (IOException e) {
+                histogram.recordError();
+            }
+        }
+    }
+}
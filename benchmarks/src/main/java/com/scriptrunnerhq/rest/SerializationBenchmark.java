@@ -0,0 +1,75 @@
+package com.scriptrunnerhq.rest;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.scriptrunnerhq.benchmarks.Fixtures;
+import com.scriptrunnerhq.model.ServiceDeskRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the /recent body for one page: the original HashMap plus {@code Gson.toJson} string, and the
+ * {@link JsonResponseWriter} path that streams into a reused UTF-8 buffer. Lives in the rest package to reach the
+ * package-private writer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int rows;
+
+    private final Gson gson = new Gson();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8 * 1024);
+    private List<ServiceDeskRequest> requests;
+
+    @Setup
+    public void setUp() {
+        requests = Fixtures.requests(rows);
+    }
+
+    @Benchmark
+    public byte[] hashMapGson() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("data", requests);
+        response.put("diagnostics", diagnostics());
+        return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public int streamingWriter() throws IOException {
+        buffer.reset();
+        JsonWriter out = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        out.beginObject();
+        out.name("data");
+        JsonResponseWriter.writeRequests(out, requests);
+        out.name("nextCursor").value("a2Ox");
+        out.name("diagnostics");
+        JsonResponseWriter.writeMap(out, diagnostics());
+        out.endObject();
+        out.flush();
+        return buffer.size();
+    }
+
+    private Map<String, Object> diagnostics() {
+        Map<String, Object> diagnostics = new HashMap<>();
+        diagnostics.put("requestId", "PORTAL-kf2x9a1c-42");
+        diagnostics.put("timestamp", "Thu Sep 17 12:00:00 UTC 2020");
+        diagnostics.put("duration", 12L);
+        diagnostics.put("user", "user1");
+        diagnostics.put("jql", "project = HELP ORDER BY created DESC");
+        diagnostics.put("resultCount", rows);
+        diagnostics.put("version", "1.0.0-simplified");
+        return diagnostics;
+    }
+}
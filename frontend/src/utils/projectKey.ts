@@ -20,4 +20,19 @@ export const getBaseUrl = (): string => {
     console.error('Error constructing base URL:', e);
     return window.location.origin;
   }
-}; 
\ No newline at end of file
+}; 
+/**
+ * Gets the customer portal id from a /servicedesk/customer/portal/{id} URL, or null outside a portal
+ */
+export const getPortalId = (): string | null => {
+  const match = window.location.pathname.match(/\/portal\/(\d+)/);
+  return match ? match[1] : null;
+};
+
+/**
+ * Query string selecting the settings of the current portal's project, including the leading separator
+ */
+export const portalQuery = (separator: '?' | '&' = '?'): string => {
+  const portalId = getPortalId();
+  return portalId ? `${separator}portalId=${encodeURIComponent(portalId)}` : '';
+};
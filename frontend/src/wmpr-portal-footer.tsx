@@ -1,9 +1,9 @@
-import React, { useEffect, useState } from 'react';
+import React, { useEffect, useRef, useState } from 'react';
 import DynamicTable from '@atlaskit/dynamic-table';
 import Lozenge from '@atlaskit/lozenge';
 import Spinner from '@atlaskit/spinner';
 import Button from '@atlaskit/button';
-import { getBaseUrl } from './utils/projectKey';
+import { getBaseUrl, portalQuery } from './utils/projectKey';
 import { logger } from './utils/logger';
 import Textfield from '@atlaskit/textfield';
 import SectionMessage from '@atlaskit/section-message';
@@ -12,13 +12,15 @@ interface ServiceDeskRequest {
   key: string;
   summary: string;
   reporter: string;
-  created: string;
+  created: number;
   status: string;
   statusCategory: string;
 }
 
 interface ApiResponse {
   data: ServiceDeskRequest[];
+  nextCursor?: string | null;
+  version?: string;
   diagnostics?: {
     requestId: string;
     timestamp: string;
@@ -27,48 +29,248 @@ interface ApiResponse {
     jql: string;
     resultCount: number;
     version: string;
+    cacheHit?: boolean;
+    cacheHits?: number;
+    cacheMisses?: number;
+    coalescedSearches?: number;
+    stale?: boolean;
+    staleHits?: number;
   };
 }
 
+// Changes since the version token sent as `since`, returned instead of a full page when the server still knows them
+interface DeltaResponse {
+  delta: true;
+  added: ServiceDeskRequest[];
+  changed: ServiceDeskRequest[];
+  removed: string[];
+  version: string;
+}
+
 interface ButtonConfig {
   label: string;
   url: string;
 }
 
+interface RequestChangeEvent {
+  type: 'created' | 'updated' | 'removed';
+  request?: ServiceDeskRequest;
+  key?: string;
+}
+
+interface BootstrapResponse {
+  data: ServiceDeskRequest[];
+  nextCursor?: string | null;
+  version?: string;
+  stale?: boolean;
+  requestsError?: string;
+  buttons: ButtonConfig[];
+  confluenceSpaces: string[];
+  projectKey?: string | null;
+  settingsVersion: number;
+}
+
+interface KnowledgeBasePage {
+  id: string;
+  title: string;
+  excerpt: string;
+  url?: string;
+  space: string;
+}
+
+interface KnowledgeBaseResponse {
+  pages: KnowledgeBasePage[];
+  spaces: string[];
+  indexedPages: number;
+  indexedAt: number;
+}
+
+interface RequestSummary {
+  total: number;
+  categories: Record<string, number>;
+  statuses: { id: string | null; name: string; category: string; count: number }[];
+  stale?: boolean;
+}
+
+// Longest list of keys the server accepts with `since`; a longer list is reloaded in full
+const MAX_KNOWN_KEYS = 500;
+
+// Customer-facing names of Jira's status categories
+const CATEGORY_LABELS: Record<string, string> = {
+  new: 'open',
+  indeterminate: 'in progress',
+  done: 'done',
+};
+
 const PortalFooter: React.FC = () => {
   const [requests, setRequests] = useState<ServiceDeskRequest[]>([]);
   const [loading, setLoading] = useState<boolean>(true);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
+  const [loadingMore, setLoadingMore] = useState<boolean>(false);
   const [error, setError] = useState<string | null>(null);
+  const [stale, setStale] = useState<boolean>(false);
+  const [summary, setSummary] = useState<RequestSummary | null>(null);
+  // Read from stream handlers registered once, so kept outside of render state
+  const versionRef = useRef<string | null>(null);
+  const requestsRef = useRef<ServiceDeskRequest[]>([]);
   const [buttonConfigs, setButtonConfigs] = useState<ButtonConfig[]>([]);
+  const [confluenceSpaces, setConfluenceSpaces] = useState<string[]>([]);
   const [aiQuery, setAiQuery] = useState<string>('');
-  const [aiResults, setAiResults] = useState<{ response: string; pages: { id: string; title: string; url: string; space: string; }[] } | null>(null);
+  const [aiResults, setAiResults] = useState<{ response: string; pages: KnowledgeBasePage[] } | null>(null);
   const [aiLoading, setAiLoading] = useState<boolean>(false);
 
   useEffect(() => {
     initializeComponent();
   }, []);
 
+  useEffect(() => {
+    requestsRef.current = requests;
+  }, [requests]);
+
+  // Live updates pushed by the server; the browser reconnects on its own when the stream ends
+  useEffect(() => {
+    if (typeof EventSource === 'undefined') return;
+
+    const source = new EventSource(`${getBaseUrl()}/rest/portal-requests/1.0/recent/stream${portalQuery()}`, { withCredentials: true });
+
+    source.addEventListener('request', (e) => {
+      try {
+        applyChange(JSON.parse((e as MessageEvent).data) as RequestChangeEvent);
+      } catch (err) {
+        logger.warn('Ignoring malformed request event:', err);
+      }
+      fetchSummary(true);
+    });
+    source.addEventListener('refresh', () => {
+      fetchRequests(true);
+      fetchSummary(true);
+    });
+    source.onerror = () => {
+      logger.debug('Request stream interrupted, readyState:', source.readyState);
+    };
+
+    return () => source.close();
+  }, []);
+
+  const applyChange = (change: RequestChangeEvent) => {
+    setRequests(prev => {
+      if (change.type === 'removed') {
+        return prev.filter(r => r.key !== change.key);
+      }
+      const request = change.request;
+      if (!request) return prev;
+      const index = prev.findIndex(r => r.key === request.key);
+      if (index >= 0) {
+        const next = [...prev];
+        next[index] = request;
+        return next;
+      }
+      return change.type === 'created' ? [request, ...prev] : prev;
+    });
+  };
+
+  // Added requests go on top, changed ones are replaced in place, and pages loaded further down are kept
+  const applyDelta = (delta: DeltaResponse) => {
+    setRequests(prev => {
+      const removed = new Set(delta.removed);
+      // The stream may have added a request already, so added ones also replace in place
+      const updated = new Map(delta.added.concat(delta.changed).map(r => [r.key, r] as [string, ServiceDeskRequest]));
+      const kept = prev.filter(r => !removed.has(r.key)).map(r => updated.get(r.key) || r);
+      const added = delta.added.filter(r => !prev.some(p => p.key === r.key));
+      return [...added, ...kept];
+    });
+  };
+
   const initializeComponent = async () => {
     try {
       logger.info('Portal Footer initializing');
-      
-      await Promise.all([
-        fetchRequests(),
-        fetchButtonConfigs()
-      ]);
+      await Promise.all([fetchBootstrap(), fetchSummary()]);
     } catch (error) {
       logger.error('Error initializing Portal Footer:', error);
       setError(`Initialization error: ${error instanceof Error ? error.message : 'Unknown error'}`);
     }
   };
 
-  const fetchRequests = async () => {
+  // Requests, buttons and Confluence spaces in a single round trip
+  const fetchBootstrap = async () => {
+    try {
+      setLoading(true);
+      setError(null);
+
+      const apiUrl = `${getBaseUrl()}/rest/portal-requests/1.0/bootstrap${portalQuery()}`;
+      logger.debug('Fetching bootstrap data from:', apiUrl);
+
+      const response = await fetch(apiUrl, {
+        method: 'GET',
+        headers: {
+          'Accept': 'application/json',
+          'Content-Type': 'application/json',
+        },
+        credentials: 'same-origin'
+      });
+
+      if (!response.ok) {
+        const errorText = await response.text();
+        throw new Error(`HTTP ${response.status}: ${errorText || response.statusText}`);
+      }
+
+      const data: BootstrapResponse = await response.json();
+      setRequests(data.data || []);
+      setNextCursor(data.nextCursor || null);
+      versionRef.current = data.version || null;
+      setButtonConfigs(data.buttons || []);
+      setConfluenceSpaces(data.confluenceSpaces || []);
+      setStale(!!data.stale);
+      if (data.requestsError) {
+        setError(data.requestsError);
+      }
+      logger.debug('Bootstrap loaded:', data.data?.length || 0, 'requests,', data.buttons?.length || 0, 'buttons,',
+        data.confluenceSpaces?.length || 0, 'spaces');
+    } catch (err) {
+      logger.error('Error fetching bootstrap data:', err);
+      setError(err instanceof Error ? err.message : 'An unknown error occurred');
+    } finally {
+      setLoading(false);
+    }
+  };
+
+  // Counts per status category; a failure only hides the line, the request list stays usable
+  const fetchSummary = async (revalidate: boolean = false) => {
+    try {
+      const apiUrl = `${getBaseUrl()}/rest/portal-requests/1.0/recent/summary${portalQuery()}`;
+      const response = await fetch(apiUrl, {
+        method: 'GET',
+        headers: {
+          'Accept': 'application/json',
+        },
+        credentials: 'same-origin',
+        cache: revalidate ? 'no-cache' : 'default'
+      });
+      if (!response.ok) {
+        logger.debug('Summary unavailable:', response.status);
+        return;
+      }
+      setSummary(await response.json());
+    } catch (err) {
+      logger.debug('Error fetching summary:', err);
+    }
+  };
+
+  // Revalidate skips the browser's max-age window but still lets the server answer 304 via the ETag.
+  // With the version of the last full page the server only sends what changed since, when it still can.
+  // The keys shown are sent along, as the server only reports removals of requests the list holds.
+  const fetchRequests = async (revalidate: boolean = false) => {
     try {
       setLoading(true);
       setError(null);
       
       const baseUrl = getBaseUrl();
-      const apiUrl = `${baseUrl}/rest/portal-requests/1.0/recent`;
+      const known = requestsRef.current.map(r => r.key);
+      const since = known.length <= MAX_KNOWN_KEYS ? versionRef.current : null;
+      const apiUrl = since
+        ? `${baseUrl}/rest/portal-requests/1.0/recent?since=${encodeURIComponent(since)}`
+          + `&known=${encodeURIComponent(known.join(','))}${portalQuery('&')}`
+        : `${baseUrl}/rest/portal-requests/1.0/recent${portalQuery()}`;
       
       logger.debug('Fetching requests from:', apiUrl);
       
@@ -78,16 +280,35 @@ const PortalFooter: React.FC = () => {
           'Accept': 'application/json',
           'Content-Type': 'application/json',
         },
-        credentials: 'same-origin'
+        credentials: 'same-origin',
+        cache: revalidate ? 'no-cache' : 'default'
       });
 
+      // Throttled with nothing cached on the server: keep the list shown and try again on the next refresh
+      if (response.status === 429) {
+        logger.debug('Requests throttled, retry after', response.headers.get('Retry-After'), 's');
+        return;
+      }
+
       if (!response.ok) {
         const errorText = await response.text();
         throw new Error(`HTTP ${response.status}: ${errorText || response.statusText}`);
       }
 
-      const data: ApiResponse = await response.json();
+      const body: ApiResponse | DeltaResponse = await response.json();
+      if ('delta' in body) {
+        applyDelta(body);
+        versionRef.current = body.version;
+        logger.debug('Delta loaded:', body.added.length, 'added,', body.changed.length, 'changed,',
+          body.removed.length, 'removed');
+        return;
+      }
+
+      const data = body;
       setRequests(data.data || []);
+      setNextCursor(data.nextCursor || null);
+      setStale(!!data.diagnostics?.stale);
+      versionRef.current = data.version || null;
       logger.debug('Requests loaded:', data.data?.length || 0);
       
       // Log diagnostics if available
@@ -103,14 +324,16 @@ const PortalFooter: React.FC = () => {
     }
   };
 
-  const fetchButtonConfigs = async () => {
+  // Fetches the page after the last one shown; the cursor keeps each page equally cheap on the server
+  const fetchMoreRequests = async () => {
+    if (!nextCursor) return;
     try {
-      const baseUrl = getBaseUrl();
-      const url = `${baseUrl}/rest/portal-requests/1.0/settings`;
-      
-      logger.debug('Loading button configs from:', url);
-      
-      const response = await fetch(url, {
+      setLoadingMore(true);
+
+      const apiUrl = `${getBaseUrl()}/rest/portal-requests/1.0/recent?cursor=${encodeURIComponent(nextCursor)}${portalQuery('&')}`;
+      logger.debug('Fetching more requests from:', apiUrl);
+
+      const response = await fetch(apiUrl, {
         method: 'GET',
         headers: {
           'Accept': 'application/json',
@@ -119,39 +342,35 @@ const PortalFooter: React.FC = () => {
         credentials: 'same-origin'
       });
 
-      if (response.ok) {
-        const data = await response.json();
-        // Extract button configurations from settings
-        const buttons: ButtonConfig[] = [];
-        for (let i = 1; i <= 5; i++) {
-          const label = data[`button${i}Label`];
-          const url = data[`button${i}Url`];
-          if (label && url) {
-            buttons.push({ label, url });
-          }
-        }
-        setButtonConfigs(buttons);
-        logger.debug('Button configs loaded:', buttons.length);
-      } else {
-        logger.warn('Failed to load button configs:', response.status);
-        setButtonConfigs([]);
+      if (!response.ok) {
+        const errorText = await response.text();
+        throw new Error(`HTTP ${response.status}: ${errorText || response.statusText}`);
       }
-    } catch (error) {
-      logger.error('Error fetching button configs:', error);
-      setButtonConfigs([]);
+
+      const data: ApiResponse = await response.json();
+      setRequests(prev => [...prev, ...(data.data || [])]);
+      setNextCursor(data.nextCursor || null);
+    } catch (err) {
+      logger.error('Error fetching more requests:', err);
+      setError(err instanceof Error ? err.message : 'An unknown error occurred');
+    } finally {
+      setLoadingMore(false);
     }
   };
 
-  const formatDate = (dateString: string): string => {
+  const formatDate = (created: number): string => {
+    if (created < 0) {
+      return '';
+    }
     try {
-      const date = new Date(dateString);
+      const date = new Date(created);
       return date.toLocaleDateString('en-US', {
         year: 'numeric',
         month: 'short',
         day: 'numeric'
       });
     } catch (e) {
-      return dateString;
+      return '';
     }
   };
 
@@ -168,40 +387,42 @@ const PortalFooter: React.FC = () => {
     }
   };
 
+  // Ranked on the server from a local index of the configured Confluence spaces
   const handleAiQuery = async () => {
     if (!aiQuery.trim()) return;
     try {
       setAiLoading(true);
       setAiResults(null);
-      // Simulate AI response with Confluence pages
-      setTimeout(() => {
-        const mockResponse = {
-          response: `Based on your question "${aiQuery}", here are some relevant resources and recommendations for handling this type of request. The most common approach is to follow our standard escalation procedures and ensure proper documentation.`,
-          pages: [
-            {
-              id: '1',
-              title: 'Service Desk Escalation Procedures',
-              url: 'https://confluence.example.com/display/HELP/Escalation+Procedures',
-              space: 'HELP'
-            },
-            {
-              id: '2',
-              title: 'Request Handling Best Practices',
-              url: 'https://confluence.example.com/display/HELP/Request+Handling+Best+Practices',
-              space: 'HELP'
-            },
-            {
-              id: '3',
-              title: 'Customer Portal Configuration Guide',
-              url: 'https://confluence.example.com/display/HELP/Customer+Portal+Configuration',
-              space: 'HELP'
-            }
-          ]
-        };
-        setAiResults(mockResponse);
-        setAiLoading(false);
-      }, 2000);
-    } catch (error) {
+
+      const apiUrl = `${getBaseUrl()}/rest/portal-requests/1.0/kb/search?q=${encodeURIComponent(aiQuery.trim())}${portalQuery('&')}`;
+      const response = await fetch(apiUrl, {
+        method: 'GET',
+        headers: {
+          'Accept': 'application/json',
+        },
+        credentials: 'same-origin'
+      });
+
+      if (!response.ok) {
+        const errorText = await response.text();
+        throw new Error(`HTTP ${response.status}: ${errorText || response.statusText}`);
+      }
+
+      const data: KnowledgeBaseResponse = await response.json();
+      const pages = data.pages || [];
+      setAiResults({
+        response: pages.length > 0
+          ? `Found ${pages.length} page${pages.length === 1 ? '' : 's'} matching "${aiQuery.trim()}".`
+          : `No pages in the configured spaces match "${aiQuery.trim()}".`,
+        pages
+      });
+    } catch (err) {
+      logger.error('Error searching knowledge base:', err);
+      setAiResults({
+        response: err instanceof Error ? err.message : 'The knowledge base could not be searched',
+        pages: []
+      });
+    } finally {
       setAiLoading(false);
     }
   };
@@ -259,7 +480,7 @@ const PortalFooter: React.FC = () => {
           <p style={{ margin: '8px 0 0 0', color: '#6b778c' }}>{error}</p>
           <Button 
             appearance="link" 
-            onClick={fetchRequests}
+            onClick={() => fetchRequests(true)}
             style={{ marginTop: '8px', padding: '0' }}
           >
             Try again
@@ -354,6 +575,18 @@ const PortalFooter: React.FC = () => {
         <h3 style={{ margin: '0 0 10px 0', color: '#172b4d' }}>
           Recent Requests ({requests.length})
         </h3>
+        {summary && summary.total > 0 && (
+          <p style={{ margin: '0 0 10px 0', color: '#6b778c' }}>
+            {Object.keys(CATEGORY_LABELS)
+              .map(category => `${summary.categories[category] || 0} ${CATEGORY_LABELS[category]}`)
+              .join(' / ')}
+          </p>
+        )}
+        {stale && (
+          <SectionMessage appearance="warning">
+            <p>Showing the last available results while the request list is slow to refresh.</p>
+          </SectionMessage>
+        )}
         {requests.length === 0 && (
           <p style={{ color: '#6b778c', fontStyle: 'italic' }}>
             No recent requests found. Make sure a JQL query is configured in the settings.
@@ -373,6 +606,14 @@ const PortalFooter: React.FC = () => {
         />
       )}
 
+      {nextCursor && (
+        <div style={{ marginTop: '10px', textAlign: 'center' }}>
+          <Button appearance="subtle" onClick={fetchMoreRequests} isDisabled={loadingMore}>
+            {loadingMore ? 'Loading...' : 'Load more'}
+          </Button>
+        </div>
+      )}
+
       {buttonConfigs.length > 0 && (
         <div style={{ marginTop: '20px', paddingTop: '20px', borderTop: '1px solid #dfe1e6' }}>
           <h4 style={{ margin: '0 0 10px 0', color: '#172b4d' }}>Quick Actions</h4>
@@ -397,8 +638,11 @@ const PortalFooter: React.FC = () => {
         </h3>
         <SectionMessage appearance="information">
           <p>
-            Ask a question about request handling. This demo returns mock Confluence knowledge base results.
+            Ask a question about request handling. Answers come from the Confluence knowledge base of this portal.
           </p>
+          {confluenceSpaces.length > 0 && (
+            <p>Configured spaces: {confluenceSpaces.join(', ')}</p>
+          )}
         </SectionMessage>
         <div style={{ display: 'flex', gap: '12px', margin: '20px 0' }}>
           <Textfield
@@ -419,7 +663,7 @@ const PortalFooter: React.FC = () => {
           <div style={{ textAlign: 'center', padding: '40px' }}>
             <Spinner size="medium" />
             <p style={{ marginTop: '12px', color: '#6b778c' }}>
-              Searching knowledge base and generating response...
+              Searching knowledge base...
             </p>
           </div>
         )}
@@ -453,6 +697,11 @@ const PortalFooter: React.FC = () => {
                   <div style={{ fontWeight: '600', color: '#172b4d', marginBottom: '4px' }}>
                     {page.title}
                   </div>
+                  {page.excerpt && (
+                    <div style={{ fontSize: '13px', color: '#42526e', marginBottom: '4px', lineHeight: '1.4' }}>
+                      {page.excerpt}
+                    </div>
+                  )}
                   <div style={{ fontSize: '12px', color: '#6b778c' }}>
                     Space: {page.space} •
                     <a href={page.url} target="_blank" rel="noopener noreferrer" style={{ color: '#0052cc', marginLeft: '4px' }}>
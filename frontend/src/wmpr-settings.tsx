@@ -3,6 +3,7 @@ import Button, { ButtonGroup } from '@atlaskit/button';
 import Textfield from '@atlaskit/textfield';
 import Form, { Field, FormFooter, HelperMessage, ErrorMessage } from '@atlaskit/form';
 import Checkbox from '@atlaskit/checkbox';
+import { AsyncSelect } from '@atlaskit/select';
 import SectionMessage from '@atlaskit/section-message';
 import Spinner from '@atlaskit/spinner';
 import DynamicTable from '@atlaskit/dynamic-table';
@@ -29,12 +30,36 @@ interface SettingsData {
   button4Url: string;
   button5Label: string;
   button5Url: string;
+  maxPageSize: number;
+  requestsPerMinute: number;
+  requestBurst: number;
+  maxConcurrentSearches: number;
+  portalIds: string[];
+  confluenceSpaces: string[];
+  inherited?: boolean;
+}
+
+interface SpaceOption {
+  label: string;
+  value: string;
+}
+
+interface JqlProfile {
+  hits: number;
+  countMillis: number;
+  runMillis: number[];
+  medianMillis: number;
+  sorts: { [field: string]: 'index' | 'fieldValues' | 'unsortable' };
+  keysetPaging: boolean;
 }
 
 interface ValidationResult {
   valid: boolean;
   message?: string;
   errors?: string;
+  profile?: JqlProfile;
+  warnings?: string[];
+  blocked?: boolean;
 }
 
 interface ButtonData {
@@ -62,7 +87,13 @@ const WMPRSettings: React.FC = () => {
     button4Label: '',
     button4Url: '',
     button5Label: '',
-    button5Url: ''
+    button5Url: '',
+    maxPageSize: 50,
+    requestsPerMinute: 60,
+    requestBurst: 20,
+    maxConcurrentSearches: 8,
+    portalIds: [],
+    confluenceSpaces: []
   });
 
   const [loading, setLoading] = useState<boolean>(true);
@@ -88,13 +119,15 @@ const WMPRSettings: React.FC = () => {
       console.log('Loading settings for projectKey:', projectKey);
       console.log('GET URL:', url.toString());
 
+      // Always revalidate so a recent save is never hidden behind the browser cache
       const response = await fetch(url.toString(), {
         method: 'GET',
         headers: {
           'Accept': 'application/json',
           'Content-Type': 'application/json',
         },
-        credentials: 'same-origin'
+        credentials: 'same-origin',
+        cache: 'no-cache'
       });
 
       if (!response.ok) {
@@ -126,7 +159,7 @@ const WMPRSettings: React.FC = () => {
           'Content-Type': 'application/json',
         },
         credentials: 'same-origin',
-        body: JSON.stringify({ jql })
+        body: JSON.stringify({ jql, projectKey })
       });
 
       if (!response.ok) {
@@ -201,6 +234,83 @@ const WMPRSettings: React.FC = () => {
     }
   };
 
+  // Typeahead over the Confluence space directory; answered from the server's in-memory index
+  const loadSpaceOptions = async (query: string): Promise<SpaceOption[]> => {
+    const url = new URL(`${getBaseUrl()}/rest/portal-requests/1.0/confluence/spaces`);
+    url.searchParams.append('q', query);
+    url.searchParams.append('limit', '20');
+    const response = await fetch(url.toString(), {
+      headers: { 'Accept': 'application/json' },
+      credentials: 'same-origin'
+    });
+    if (!response.ok) {
+      return [];
+    }
+    const data = await response.json();
+    return (data.spaces || []).map((space: { key: string; name: string }) => ({
+      label: `${space.name} (${space.key})`,
+      value: space.key
+    }));
+  };
+
+  const handleAdvancedSubmit = async (data: any) => {
+    try {
+      setSaving(true);
+      setSaveMessage(null);
+
+      const payload = {
+        projectKey: projectKey,
+        maxPageSize: Number(data.maxPageSize),
+        confluenceSpaces: (data.confluenceSpaces || []).map((option: SpaceOption) => option.value),
+        portalIds: String(data.portalIds || '')
+          .split(',')
+          .map((id: string) => id.trim())
+          .filter((id: string) => id !== ''),
+        // Request limits apply to every portal and are only saved with the global settings
+        ...(projectKey === 'global' ? {
+          requestsPerMinute: Number(data.requestsPerMinute),
+          requestBurst: Number(data.requestBurst),
+          maxConcurrentSearches: Number(data.maxConcurrentSearches)
+        } : {})
+      };
+
+      const response = await fetch(`${getBaseUrl()}/rest/portal-requests/1.0/settings`, {
+        method: 'POST',
+        headers: {
+          'Accept': 'application/json',
+          'Content-Type': 'application/json',
+        },
+        credentials: 'same-origin',
+        body: JSON.stringify(payload)
+      });
+
+      if (!response.ok) {
+        const errorText = await response.text();
+        throw new Error(`Failed to save settings: ${response.status} - ${errorText}`);
+      }
+
+      const result = await response.json();
+      setSaveMessage({ type: 'success', text: result.message || 'Settings saved successfully!' });
+      setSettings(prev => ({ ...prev, ...payload }));
+    } catch (error) {
+      console.error('Error saving advanced settings:', error);
+      setSaveMessage({
+        type: 'error',
+        text: `Error saving settings: ${error instanceof Error ? error.message : 'Unknown error'}`
+      });
+    } finally {
+      setSaving(false);
+    }
+  };
+
+  const wholeNumberError = (value: string | undefined, min: number, max: number): string | undefined => {
+    const number = Number(value);
+    if (!Number.isInteger(number) || number < min || number > max) {
+      return `Enter a whole number between ${min} and ${max}`;
+    }
+    return undefined;
+  };
+
   const handleTabChange = (index: SelectedType) => {
     setSelectedTab(index);
 
@@ -530,13 +640,26 @@ const WMPRSettings: React.FC = () => {
 
                                     {validationResult && !validating && (
                                         <div style={{ marginTop: '8px' }}>
-                                          {validationResult.valid ? (
+                                          {validationResult.valid && validationResult.blocked ? (
+                                              <ErrorMessage>
+                                                ❌ {validationResult.message}
+                                              </ErrorMessage>
+                                          ) : validationResult.valid ? (
                                               <HelperMessage>✅ JQL is valid</HelperMessage>
                                           ) : (
                                               <ErrorMessage>
                                                 ❌ {validationResult.message || validationResult.errors}
                                               </ErrorMessage>
                                           )}
+                                          {validationResult.profile && (
+                                              <HelperMessage>
+                                                Matches {validationResult.profile.hits} issues; the first page takes {validationResult.profile.medianMillis} ms
+                                                (median of {validationResult.profile.runMillis.length} runs)
+                                              </HelperMessage>
+                                          )}
+                                          {(validationResult.warnings || []).map((warning, index) => (
+                                              <HelperMessage key={index}>⚠️ {warning}</HelperMessage>
+                                          ))}
                                         </div>
                                     )}
 
@@ -574,6 +697,21 @@ const WMPRSettings: React.FC = () => {
                         </form>
                     )}
                   </Form>
+
+                  {/* Downloads every request matching the saved JQL, streamed in batches by the server */}
+                  <div style={{ marginTop: '24px' }}>
+                    <p style={{ margin: '0 0 8px 0', color: '#6b778c' }}>
+                      Export every request matching the saved query:
+                    </p>
+                    <ButtonGroup>
+                      <Button href={`${getBaseUrl()}/rest/portal-requests/1.0/export?format=csv&projectKey=${encodeURIComponent(projectKey)}`}>
+                        Export CSV
+                      </Button>
+                      <Button href={`${getBaseUrl()}/rest/portal-requests/1.0/export?format=ndjson&projectKey=${encodeURIComponent(projectKey)}`}>
+                        Export NDJSON
+                      </Button>
+                    </ButtonGroup>
+                  </div>
                 </div>
               </div>
             </TabPanel>
@@ -769,7 +907,7 @@ const WMPRSettings: React.FC = () => {
               </div>
             </TabPanel>
 
-            {/* Advanced Settings Tab (Dummy) */}
+            {/* Advanced Settings Tab */}
             <TabPanel>
               <div style={tabPanelStyle}>
                 <div style={sectionStyle}>
@@ -783,20 +921,163 @@ const WMPRSettings: React.FC = () => {
                     </p>
                   </SectionMessage>
 
-                  <div style={{ marginTop: '24px' }}>
-                    <h3 style={{ color: '#172b4d', marginBottom: '16px' }}>Future Configuration Options</h3>
-                    <p style={{ color: '#5e6c84', lineHeight: '1.6' }}>
-                      Advanced settings will include:
-                    </p>
-                    <ul style={{ color: '#5e6c84', lineHeight: '1.6', marginLeft: '20px' }}>
-                      <li>Cache timeout and refresh intervals</li>
-                      <li>Permission-based filtering and access control</li>
-                      <li>Custom field mappings and display options</li>
-                      <li>Integration with external systems</li>
-                      <li>Custom CSS styling options</li>
-                      <li>API rate limiting and throttling</li>
-                    </ul>
-                  </div>
+                  <Form onSubmit={handleAdvancedSubmit}>
+                    {({ formProps }) => (
+                        <form {...formProps}>
+                          <div style={{ marginTop: '24px' }}>
+                            <Field
+                                name="maxPageSize"
+                                label="Maximum requests per page"
+                                defaultValue={String(settings.maxPageSize)}
+                                validate={(value) => {
+                                  const size = Number(value);
+                                  if (!Number.isInteger(size) || size < 1 || size > 500) {
+                                    return 'Enter a whole number between 1 and 500';
+                                  }
+                                  return undefined;
+                                }}
+                            >
+                              {({ fieldProps, error }) => (
+                                  <div>
+                                    <Textfield {...fieldProps} type="number" />
+                                    {error && <ErrorMessage>{error}</ErrorMessage>}
+                                    <HelperMessage>
+                                      Upper bound for the <code>limit</code> parameter of the portal requests API.
+                                    </HelperMessage>
+                                  </div>
+                              )}
+                            </Field>
+                          </div>
+
+                          <div style={{ marginTop: '24px' }}>
+                            <Field<SpaceOption[]>
+                                name="confluenceSpaces"
+                                label="Confluence spaces"
+                                defaultValue={(settings.confluenceSpaces || []).map(key => ({ label: key, value: key }))}
+                            >
+                              {({ fieldProps }) => (
+                                  <div>
+                                    <AsyncSelect
+                                        {...fieldProps}
+                                        inputId="confluenceSpaces"
+                                        isMulti
+                                        cacheOptions
+                                        defaultOptions
+                                        loadOptions={loadSpaceOptions}
+                                        placeholder="Search spaces by name or key"
+                                    />
+                                    <HelperMessage>
+                                      Spaces searched by the portal's knowledge base box. The list comes from the
+                                      primary Confluence application link and is refreshed in the background.
+                                    </HelperMessage>
+                                  </div>
+                              )}
+                            </Field>
+                          </div>
+
+                          {projectKey === 'global' && (
+                              <div style={{ marginTop: '24px' }}>
+                                <Field
+                                    name="requestsPerMinute"
+                                    label="Requests per minute per user"
+                                    defaultValue={String(settings.requestsPerMinute)}
+                                    validate={(value) => wholeNumberError(value, 0, 6000)}
+                                >
+                                  {({ fieldProps, error }) => (
+                                      <div>
+                                        <Textfield {...fieldProps} type="number" />
+                                        {error && <ErrorMessage>{error}</ErrorMessage>}
+                                        <HelperMessage>
+                                          Sustained rate of request list, summary and JQL validation calls allowed
+                                          per user on each node. <code>0</code> turns the limit off.
+                                        </HelperMessage>
+                                      </div>
+                                  )}
+                                </Field>
+                                <Field
+                                    name="requestBurst"
+                                    label="Burst per user"
+                                    defaultValue={String(settings.requestBurst)}
+                                    validate={(value) => wholeNumberError(value, 1, 1000)}
+                                >
+                                  {({ fieldProps, error }) => (
+                                      <div>
+                                        <Textfield {...fieldProps} type="number" />
+                                        {error && <ErrorMessage>{error}</ErrorMessage>}
+                                        <HelperMessage>
+                                          Calls a user may make back to back before the rate applies.
+                                        </HelperMessage>
+                                      </div>
+                                  )}
+                                </Field>
+                                <Field
+                                    name="maxConcurrentSearches"
+                                    label="Concurrent searches per node"
+                                    defaultValue={String(settings.maxConcurrentSearches)}
+                                    validate={(value) => wholeNumberError(value, 0, 256)}
+                                >
+                                  {({ fieldProps, error }) => (
+                                      <div>
+                                        <Textfield {...fieldProps} type="number" />
+                                        {error && <ErrorMessage>{error}</ErrorMessage>}
+                                        <HelperMessage>
+                                          Calls over either limit get the last cached result, or a 429 response
+                                          when there is none. <code>0</code> turns the limit off.
+                                        </HelperMessage>
+                                      </div>
+                                  )}
+                                </Field>
+                              </div>
+                          )}
+
+                          {projectKey !== 'global' && (
+                              <div style={{ marginTop: '24px' }}>
+                                <Field
+                                    name="portalIds"
+                                    label="Customer portal IDs"
+                                    defaultValue={(settings.portalIds || []).join(', ')}
+                                    validate={(value) => {
+                                      const ids = String(value || '').split(',').map(id => id.trim()).filter(id => id !== '');
+                                      if (ids.some(id => !/^\d+$/.test(id))) {
+                                        return 'Enter portal IDs as numbers separated by commas';
+                                      }
+                                      return undefined;
+                                    }}
+                                >
+                                  {({ fieldProps, error }) => (
+                                      <div>
+                                        <Textfield {...fieldProps} />
+                                        {error && <ErrorMessage>{error}</ErrorMessage>}
+                                        <HelperMessage>
+                                          Portals listed here show this project's requests, e.g. <code>3</code> for
+                                          <code> /servicedesk/customer/portal/3</code>. Other portals use the global settings.
+                                        </HelperMessage>
+                                      </div>
+                                  )}
+                                </Field>
+                              </div>
+                          )}
+
+                          <FormFooter>
+                            <ButtonGroup>
+                              <Button
+                                  type="submit"
+                                  appearance="primary"
+                                  isDisabled={saving}
+                              >
+                                {saving ? 'Saving...' : 'Save Advanced Settings'}
+                              </Button>
+                              <Button
+                                  onClick={loadSettings}
+                                  isDisabled={saving}
+                              >
+                                Reset
+                              </Button>
+                            </ButtonGroup>
+                          </FormFooter>
+                        </form>
+                    )}
+                  </Form>
                 </div>
               </div>
             </TabPanel>
@@ -884,7 +1165,8 @@ const WMPRSettings: React.FC = () => {
             }}>
               <div>
                 <p style={{ margin: '8px 0', color: '#5e6c84' }}>
-                  <strong style={{ color: '#172b4d' }}>Project:</strong> {settings.projectKey}
+                  <strong style={{ color: '#172b4d' }}>Project:</strong> {settings.projectKey || 'global'}
+                  {settings.inherited && ' (using the global settings until saved)'}
                 </p>
                 <p style={{ margin: '8px 0', color: '#5e6c84' }}>
                   <strong style={{ color: '#172b4d' }}>Custom JQL:</strong> {settings.useCustomJql ? 'Enabled' : 'Disabled'}